@@ -0,0 +1,111 @@
+package org.dragons.neo4j.benchmarks;
+
+import org.dragons.neo4j.config.GraphBatchWorkConfig;
+import org.dragons.neo4j.config.NodeBatchWorkConfig;
+import org.dragons.neo4j.config.NodeImportConfig;
+import org.dragons.neo4j.utils.ColumnPlan;
+import org.dragons.neo4j.utils.CsvTokenizer;
+import org.dragons.neo4j.utils.WorkFunctions;
+import org.neo4j.logging.NullLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing costs paid by every row before it reaches the database: the header, splitting a line into columns,
+ * and decoding the columns into typed property values.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvParsingBenchmark {
+
+    static final int LINES = 1024;
+
+    private static final String HEADER = "id:int,name:string,age:int,score:double,active:boolean,tags:string[],born:date";
+
+    /**
+     * "plain" lines have no quotes, "quoted" lines quote their strings and some contain delimiters and quotes.
+     */
+    @Param({"plain", "quoted"})
+    public String lines;
+
+    private String[] records;
+    private CsvTokenizer tokenizer;
+    private GraphBatchWorkConfig config;
+    private WorkFunctions.WorkFunc<String, GraphBatchWorkConfig, WorkFunctions.ParsedRow> parse;
+
+    @Setup
+    public void setup() {
+
+        Random random = new Random(42);
+        boolean quoted = lines.equals("quoted");
+        records = new String[LINES];
+        for (int i = 0; i < LINES; i++) {
+            String name = quoted ? "\"Doe, John \"\"" + random.nextInt(1000) + "\"\"\"" : "John" + random.nextInt(1000);
+            records[i] = String.format("%d,%s,%d,%.3f,%b,%s,%s",
+                    random.nextInt(Integer.MAX_VALUE),
+                    name,
+                    random.nextInt(100),
+                    random.nextDouble() * 100,
+                    random.nextBoolean(),
+                    "a;b;c",
+                    "1980-01-" + (10 + random.nextInt(18)));
+        }
+
+        NodeImportConfig importConfig = new NodeImportConfig();
+        importConfig.label = "person";
+        importConfig.header = HEADER;
+
+        config = new NodeBatchWorkConfig();
+        config.setBaseImportConfig(importConfig);
+        config.setPropertiesMap(ColumnPlan.parseHeader(HEADER, ','));
+        config.setLog(NullLog.getInstance());
+
+        tokenizer = new CsvTokenizer();
+        parse = new WorkFunctions().getParseFunction(NodeBatchWorkConfig.class);
+    }
+
+    @Benchmark
+    public Map<String, String> parseHeader() {
+        return ColumnPlan.parseHeader(HEADER, ',');
+    }
+
+    @Benchmark
+    public ColumnPlan compileHeader() {
+        return ColumnPlan.compile(ColumnPlan.parseHeader(HEADER, ','), false);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void tokenizeRows(Blackhole blackhole) {
+        for (String record : records) {
+            blackhole.consume(tokenizer.tokenize(record, ',', '"'));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void parseRows(Blackhole blackhole) {
+        for (String record : records) {
+            blackhole.consume(parse.apply(record, config));
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package org.dragons.neo4j.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.dragons.neo4j.config.ImportConfig;
+import org.dragons.neo4j.config.NodeImportConfig;
+import org.dragons.neo4j.config.RelationshipImportConfig;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Writes a synthetic graph of a given scale as CSV files, together with the import configuration that loads them.
+ *
+ * Every scale factor adds {@link #NODES_PER_SCALE} nodes, split evenly between the labels, and {@link #degree} times
+ * as many relationships. Label i is connected to label i + 1 (the last one to the first), by a relationships type per label.
+ * Endpoints are drawn with a power-law bias, so a few nodes have a very high degree while most have a small one;
+ * the high degree nodes are scattered over the keys rather than being the first ones.
+ */
+public class GraphGenerator {
+
+    public static final int NODES_PER_SCALE = 100000;
+
+    private static final long KEYS_PERMUTATION_PRIME = 1000000007L;
+
+    public double scaleFactor = 1;
+    public int labels = 2;
+    public int degree = 10;
+    //the endpoints are the nodes at u^skew of the nodes range, for a uniform u. 1 is a uniform distribution.
+    public double skew = 3;
+    public int nodeProperties = 3;
+    public boolean stringKeys;
+    public long seed = 42;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: GraphGenerator <output dir> [scale factor] [labels] [degree] [int|string keys]");
+            return;
+        }
+        GraphGenerator generator = new GraphGenerator();
+        if (args.length > 1) {
+            generator.scaleFactor = Double.parseDouble(args[1]);
+        }
+        if (args.length > 2) {
+            generator.labels = Integer.parseInt(args[2]);
+        }
+        if (args.length > 3) {
+            generator.degree = Integer.parseInt(args[3]);
+        }
+        if (args.length > 4) {
+            generator.stringKeys = args[4].equals("string");
+        }
+        File config = generator.generate(new File(args[0]));
+        System.out.println("Import configuration written to " + config.getAbsolutePath());
+    }
+
+    public long getNodesCount() {
+        return (long) (scaleFactor * NODES_PER_SCALE);
+    }
+
+    public long getRelationshipsCount() {
+        return getNodesCount() * degree;
+    }
+
+    /**
+     * @return the import configuration file, "import_config.json" in the given directory
+     */
+    public File generate(File dir) throws IOException {
+
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create directory " + dir);
+        }
+
+        Random random = new Random(seed);
+        long nodesPerLabel = Math.max(1, getNodesCount() / labels);
+
+        ImportConfig config = new ImportConfig();
+        for (int label = 0; label < labels; label++) {
+            writeNodes(new File(dir, String.format("nodes_%d.csv", label)), label, nodesPerLabel, random);
+            writeRelationships(new File(dir, String.format("rels_%d.csv", label)), label, nodesPerLabel, random);
+            config.nodes.add(nodesConfig(dir, label));
+            config.relationships.add(relationshipsConfig(dir, label));
+        }
+
+        File configFile = new File(dir, "import_config.json");
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(configFile, config);
+        return configFile;
+    }
+
+    public static String labelName(int label) {
+        return "label" + label;
+    }
+
+    private void writeNodes(File file, int label, long count, Random random) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+            writer.write(nodesHeader());
+            writer.newLine();
+            for (long i = 0; i < count; i++) {
+                StringBuilder line = new StringBuilder(key(label, i, count));
+                for (int p = 0; p < nodeProperties; p++) {
+                    line.append(',');
+                    switch (p % 3) {
+                        case 0:
+                            line.append(random.nextInt(100000));
+                            break;
+                        case 1:
+                            line.append("value-").append(Long.toHexString(random.nextLong()));
+                            break;
+                        default:
+                            line.append(random.nextInt(10000) / 100.0);
+                            break;
+                    }
+                }
+                writer.write(line.toString());
+                writer.newLine();
+            }
+        }
+    }
+
+    private void writeRelationships(File file, int label, long nodesPerLabel, Random random) throws IOException {
+        int endLabel = (label + 1) % labels;
+        long count = nodesPerLabel * degree;
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+            writer.write("start:" + keyType() + ",end:" + keyType() + ",weight:float");
+            writer.newLine();
+            for (long i = 0; i < count; i++) {
+                writer.write(key(label, endpoint(nodesPerLabel, random), nodesPerLabel));
+                writer.write(',');
+                writer.write(key(endLabel, endpoint(nodesPerLabel, random), nodesPerLabel));
+                writer.write(',');
+                writer.write(Double.toString(random.nextInt(1000) / 10.0));
+                writer.newLine();
+            }
+        }
+    }
+
+    private long endpoint(long nodes, Random random) {
+        return Math.min(nodes - 1, (long) (nodes * Math.pow(random.nextDouble(), skew)));
+    }
+
+    /**
+     * Keys are unique across labels. The i-th node of a label gets a key of a permutation of the label's range,
+     * so the most connected nodes (the first ones) are spread over the file.
+     */
+    private String key(int label, long i, long count) {
+        long permuted = count % KEYS_PERMUTATION_PRIME == 0 ? i : (i * KEYS_PERMUTATION_PRIME) % count;
+        long key = label * count + permuted;
+        return stringKeys ? "n" + key : Long.toString(key);
+    }
+
+    private String keyType() {
+        return stringKeys ? "string" : "int";
+    }
+
+    private String nodesHeader() {
+        StringBuilder header = new StringBuilder("id:").append(keyType());
+        String[] types = {"int", "string", "float"};
+        for (int p = 0; p < nodeProperties; p++) {
+            header.append(",p").append(p).append(':').append(types[p % 3]);
+        }
+        return header.toString();
+    }
+
+    private NodeImportConfig nodesConfig(File dir, int label) {
+        NodeImportConfig nodes = new NodeImportConfig();
+        nodes.rootDir = dir.getAbsolutePath();
+        nodes.namePattern = String.format("nodes_%d.csv", label);
+        nodes.label = labelName(label);
+        nodes.header = nodesHeader();
+        nodes.skipFirst = true;
+        return nodes;
+    }
+
+    private RelationshipImportConfig relationshipsConfig(File dir, int label) {
+        RelationshipImportConfig rels = new RelationshipImportConfig();
+        rels.rootDir = dir.getAbsolutePath();
+        rels.namePattern = String.format("rels_%d.csv", label);
+        rels.label = "rel" + label;
+        rels.startNodeLabel = labelName(label);
+        rels.startNodeMatchPropName = "id";
+        rels.endNodeLabel = labelName((label + 1) % labels);
+        rels.endNodeMatchPropName = "id";
+        rels.header = "start:" + keyType() + ",end:" + keyType() + ",weight:float";
+        rels.skipFirst = true;
+        return rels;
+    }
+}
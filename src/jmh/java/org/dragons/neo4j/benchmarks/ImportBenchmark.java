@@ -0,0 +1,215 @@
+package org.dragons.neo4j.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.dragons.neo4j.config.ImportConfig;
+import org.dragons.neo4j.config.NodeImportConfig;
+import org.dragons.neo4j.index.NodesIndexMngr;
+import org.dragons.neo4j.metrics.ImportMetrics;
+import org.dragons.neo4j.metrics.ImportStatus;
+import org.dragons.neo4j.procs.ImportProcedures;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.kernel.impl.proc.Procedures;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Imports a generated graph with every combination of the given nodes index types and parallelism levels,
+ * each one into a new embedded database, and writes the throughput, peak heap and GC time of every run
+ * to "import_benchmark.json" in the work directory.
+ *
+ * Usage: ImportBenchmark &lt;work dir&gt; [scale factor] [int|string keys] [nodes indexes] [parallelism levels] [batch size]
+ * where the nodes indexes and parallelism levels are comma separated, e.g. "none,off-heap,ignite" and "none,all,partitioned".
+ */
+public class ImportBenchmark {
+
+    private static final String ALL_INDEXES = "none,internal,off-heap,mmap,ignite";
+    private static final String ALL_LEVELS = "none,all,in-group,group,partitioned";
+
+    /**
+     * The measures of a single import.
+     */
+    public static class RunResult {
+        public String nodeIdsCache;
+        public String parallelLevel;
+        public long nodes;
+        public long relationships;
+        public long failed;
+        public long nodesMillis;
+        public long relationshipsMillis;
+        public double nodesPerSecond;
+        public double relationshipsPerSecond;
+        public long peakHeapBytes;
+        public long gcMillis;
+        public long gcCount;
+        public String error;
+    }
+
+    public static class Report {
+        public GraphGenerator graph;
+        public long batchSize;
+        public int processors = Runtime.getRuntime().availableProcessors();
+        public long maxHeapBytes = Runtime.getRuntime().maxMemory();
+        public List<RunResult> runs = new ArrayList<>();
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        if (args.length < 1) {
+            System.out.println("Usage: ImportBenchmark <work dir> [scale factor] [int|string keys] [nodes indexes] [parallelism levels] [batch size]");
+            return;
+        }
+
+        File workDir = new File(args[0]);
+        GraphGenerator generator = new GraphGenerator();
+        generator.scaleFactor = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+        generator.stringKeys = args.length > 2 && args[2].equals("string");
+        String[] indexes = (args.length > 3 ? args[3] : ALL_INDEXES).split(",");
+        String[] levels = (args.length > 4 ? args[4] : ALL_LEVELS).split(",");
+        long batchSize = args.length > 5 ? Long.parseLong(args[5]) : 10000;
+
+        File configFile = generator.generate(new File(workDir, "graph"));
+        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+        Report report = new Report();
+        report.graph = generator;
+        report.batchSize = batchSize;
+
+        int run = 0;
+        for (String index : indexes) {
+            for (String level : levels) {
+                System.out.printf("Importing with nodes index %s, parallelism %s...%n", index, level);
+                RunResult result = importGraph(workDir, mapper, mapper.readValue(configFile, ImportConfig.class), index, level, batchSize, run++);
+                System.out.printf("%d nodes/sec, %d edges/sec, peak heap %d MB, GC %d ms%s%n",
+                        (long) result.nodesPerSecond,
+                        (long) result.relationshipsPerSecond,
+                        result.peakHeapBytes >> 20,
+                        result.gcMillis,
+                        result.error == null ? "" : ", failed: " + result.error);
+                report.runs.add(result);
+                //written after every run, so an aborted benchmark still leaves its results
+                mapper.writeValue(new File(workDir, "import_benchmark.json"), report);
+            }
+        }
+
+        System.out.println("Report written to " + new File(workDir, "import_benchmark.json").getAbsolutePath());
+    }
+
+    private static RunResult importGraph(File workDir, ObjectMapper mapper, ImportConfig config, String index, String level,
+                                         long batchSize, int run) throws Exception {
+
+        RunResult result = new RunResult();
+        result.nodeIdsCache = index;
+        result.parallelLevel = level;
+
+        File storeDir = new File(workDir, "db-" + run);
+        File indexDir = new File(workDir, "index-" + run);
+        File runConfig = new File(workDir, "import_config-" + run + ".json");
+
+        config.nodeIdsCache = index.equals("none") ? null : index;
+        config.nodeIdsCacheDir = indexDir.getAbsolutePath();
+        config.nodesParallelLevel = level;
+        config.relsParallelLevel = level;
+        mapper.writeValue(runConfig, config);
+
+        //an index left from the previous run would be reused when this run has none
+        NodesIndexMngr.initNodesIndex("none");
+
+        GraphDatabaseService db = new GraphDatabaseFactory().newEmbeddedDatabase(storeDir);
+        try {
+            Procedures procedures = ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(Procedures.class);
+            procedures.registerProcedure(ImportProcedures.class);
+
+            //relationships endpoints missing from the nodes index (or with no index) are found through the schema index
+            for (NodeImportConfig nodes : config.nodes) {
+                execute(db, String.format("CREATE INDEX ON :%s(id)", nodes.label), null);
+            }
+            execute(db, "CALL db.awaitIndexes()", null);
+
+            List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    pool.resetPeakUsage();
+                    heapPools.add(pool);
+                }
+            }
+            long gcMillis = gcMillis();
+            long gcCount = gcCount();
+
+            Map<String, Object> params = new HashMap<>();
+            params.put("config", runConfig.getAbsolutePath());
+            params.put("batchSize", batchSize);
+            execute(db, "CALL org.dragons.neo4j.procs.loadWithConfiguration($config, $batchSize)", params);
+
+            //the peaks of the pools may be at different times, so their sum is an upper bound
+            for (MemoryPoolMXBean pool : heapPools) {
+                result.peakHeapBytes += pool.getPeakUsage().getUsed();
+            }
+            result.gcMillis = gcMillis() - gcMillis;
+            result.gcCount = gcCount() - gcCount;
+
+        } catch (Exception e) {
+            result.error = e.toString();
+        } finally {
+            db.shutdown();
+            //closes the run's nodes index
+            NodesIndexMngr.initNodesIndex("none");
+            delete(storeDir);
+            delete(indexDir);
+            runConfig.delete();
+        }
+
+        result.nodes = ImportMetrics.get().getNodes();
+        result.relationships = ImportMetrics.get().getRelationships();
+        result.failed = ImportMetrics.get().getFailed();
+        result.nodesMillis = ImportStatus.get().getPhaseMillis(ImportStatus.PHASE_NODES);
+        result.relationshipsMillis = ImportStatus.get().getPhaseMillis(ImportStatus.PHASE_RELATIONSHIPS);
+        result.nodesPerSecond = result.nodesMillis == 0 ? 0 : result.nodes * 1000.0 / result.nodesMillis;
+        result.relationshipsPerSecond = result.relationshipsMillis == 0 ? 0 : result.relationships * 1000.0 / result.relationshipsMillis;
+        return result;
+    }
+
+    private static void execute(GraphDatabaseService db, String query, Map<String, Object> params) {
+        try (Result result = params == null ? db.execute(query) : db.execute(query, params)) {
+            while (result.hasNext()) {
+                result.next();
+            }
+        }
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            Arrays.stream(children).forEach(ImportBenchmark::delete);
+        }
+        file.delete();
+    }
+}
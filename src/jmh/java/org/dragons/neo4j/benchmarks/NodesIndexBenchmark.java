@@ -0,0 +1,142 @@
+package org.dragons.neo4j.benchmarks;
+
+import org.dragons.neo4j.index.NodesIndexAPI;
+import org.dragons.neo4j.index.NodesIndexMngr;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Inserts and lookups of every nodes index, by several threads at once as in a parallel import.
+ * The "internal" index is not safe for concurrent inserts, run it with a single thread ("-t 1").
+ * The "redis" index requires a server at the "redisUri" parameter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Threads(4)
+public class NodesIndexBenchmark {
+
+    static final int KEYS = 1 << 20;
+    static final int LOOKUP_BATCH = 1000;
+    static final int INSERT_BATCH = 1000;
+
+    private static final String LABEL = "person";
+
+    @Param({"internal", "off-heap", "mmap", "ignite"})
+    public String index;
+
+    /**
+     * "long" for numeric id properties, "string" for any other.
+     */
+    @Param({"long", "string"})
+    public String keys;
+
+    @Param("redis://localhost:6379")
+    public String redisUri;
+
+    private NodesIndexAPI nodesIndex;
+    private Object[] indexedKeys;
+    private File dir;
+    private final AtomicInteger insertLabels = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+
+        dir = Files.createTempDirectory("nodes-index-benchmark").toFile();
+        NodesIndexMngr.initNodesIndex(index, dir.getAbsolutePath(), redisUri, 10000);
+        nodesIndex = NodesIndexMngr.getNodesIndex();
+        nodesIndex.prepareIndex(LABEL);
+
+        indexedKeys = new Object[KEYS];
+        Random random = new Random(42);
+        for (int i = 0; i < KEYS; i++) {
+            long id = random.nextLong() & Long.MAX_VALUE;
+            indexedKeys[i] = keys.equals("long") ? (Object) id : "person-" + id;
+            nodesIndex.addNodeToIndex(LABEL, indexedKeys[i], i);
+        }
+        nodesIndex.persist();
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        nodesIndex.close();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    /**
+     * The keys a single benchmark thread looks up or inserts.
+     */
+    @State(Scope.Thread)
+    public static class ThreadKeys {
+
+        Random random;
+        Object[] lookupBatch = new Object[LOOKUP_BATCH];
+        long nextInsert;
+        String insertLabel;
+
+        @Setup(Level.Iteration)
+        public void setup(NodesIndexBenchmark benchmark, ThreadParams threadParams) {
+            random = new Random(threadParams.getThreadIndex());
+            //inserts go to a fresh label every iteration, so they are never duplicates of earlier ones
+            insertLabel = LABEL + "-" + benchmark.insertLabels.incrementAndGet();
+            benchmark.nodesIndex.prepareIndex(insertLabel);
+            nextInsert = 0;
+        }
+    }
+
+    @Benchmark
+    public long getNodeId(ThreadKeys threadKeys) {
+        return nodesIndex.getNodeId(LABEL, indexedKeys[threadKeys.random.nextInt(KEYS)]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUP_BATCH)
+    public long[] getNodeIds(ThreadKeys threadKeys) {
+        for (int i = 0; i < LOOKUP_BATCH; i++) {
+            threadKeys.lookupBatch[i] = indexedKeys[threadKeys.random.nextInt(KEYS)];
+        }
+        return nodesIndex.getNodeIds(LABEL, threadKeys.lookupBatch);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSERT_BATCH)
+    public void addNodeToIndex(ThreadKeys threadKeys, Blackhole blackhole) {
+        boolean numeric = keys.equals("long");
+        for (int i = 0; i < INSERT_BATCH; i++) {
+            long id = threadKeys.nextInsert++;
+            nodesIndex.addNodeToIndex(threadKeys.insertLabel, numeric ? (Object) id : "person-" + id, id);
+        }
+        blackhole.consume(threadKeys.nextInsert);
+    }
+}
@@ -0,0 +1,162 @@
+package org.dragons.neo4j.benchmarks;
+
+import org.dragons.neo4j.config.BaseImportConfig;
+import org.dragons.neo4j.config.GraphBatchWorkConfig;
+import org.dragons.neo4j.config.NodeBatchWorkConfig;
+import org.dragons.neo4j.config.NodeImportConfig;
+import org.dragons.neo4j.config.RelationshipBatchWorkConfig;
+import org.dragons.neo4j.config.RelationshipImportConfig;
+import org.dragons.neo4j.index.NodesIndexMngr;
+import org.dragons.neo4j.utils.ColumnPlan;
+import org.dragons.neo4j.utils.WorkFunctions;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.logging.NullLog;
+import org.neo4j.test.TestGraphDatabaseFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes of parsed rows into an impermanent database, a batch per transaction as in an import.
+ * Relationships endpoints are resolved through the given nodes index, or found in the database when there is none.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class WriteFunctionsBenchmark {
+
+    static final int BATCH = 1000;
+
+    private static final int PERSONS = 100000;
+    private static final String NODES_HEADER = "id:int,name:string,age:int";
+    private static final String RELS_HEADER = "start:int,end:int,since:int";
+
+    @Param({"none", "off-heap"})
+    public String index;
+
+    private GraphDatabaseAPI db;
+    private GraphBatchWorkConfig nodesConfig;
+    private GraphBatchWorkConfig relsConfig;
+    private WorkFunctions.WorkFunc<WorkFunctions.ParsedRow, GraphBatchWorkConfig, WorkFunctions.FunctionResult> createNode;
+    private WorkFunctions.WorkFunc<WorkFunctions.ParsedRow, GraphBatchWorkConfig, WorkFunctions.FunctionResult> createRelationship;
+    private List<WorkFunctions.ParsedRow> nodeRows;
+    private List<WorkFunctions.ParsedRow> relRows;
+
+    @Setup(Level.Trial)
+    public void setup() {
+
+        db = (GraphDatabaseAPI) new TestGraphDatabaseFactory().newImpermanentDatabase();
+        NodesIndexMngr.initNodesIndex(index);
+        if (NodesIndexMngr.getNodesIndex() != null) {
+            NodesIndexMngr.getNodesIndex().prepareIndex("person");
+        } else {
+            db.execute("CREATE INDEX ON :person(id)");
+            db.execute("CALL db.awaitIndexes()");
+        }
+
+        NodeImportConfig nodesImportConfig = new NodeImportConfig();
+        nodesImportConfig.label = "person";
+        nodesConfig = newWorkConfig(new NodeBatchWorkConfig(), nodesImportConfig, NODES_HEADER);
+
+        RelationshipImportConfig relsImportConfig = new RelationshipImportConfig();
+        relsImportConfig.label = "knows";
+        relsImportConfig.startNodeLabel = "person";
+        relsImportConfig.startNodeMatchPropName = "id";
+        relsImportConfig.endNodeLabel = "person";
+        relsImportConfig.endNodeMatchPropName = "id";
+        relsConfig = newWorkConfig(new RelationshipBatchWorkConfig(), relsImportConfig, RELS_HEADER);
+
+        WorkFunctions wf = new WorkFunctions();
+        createNode = wf.getWriteFunction(NodeBatchWorkConfig.class);
+        createRelationship = wf.getWriteFunction(RelationshipBatchWorkConfig.class);
+
+        //the persons that relationships connect
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < PERSONS; i++) {
+            lines.add(String.format("%d,person %d,%d", i, i, i % 100));
+            if (lines.size() == BATCH) {
+                write(createNode, nodesConfig, wf.getBatchParseFunction(NodeBatchWorkConfig.class).apply(lines, nodesConfig));
+                lines.clear();
+            }
+        }
+
+        //rows are parsed once, so the benchmarks measure writing only
+        Random random = new Random(42);
+        lines.clear();
+        for (int i = 0; i < BATCH; i++) {
+            lines.add(String.format("%d,person %d,%d", PERSONS + i, PERSONS + i, i % 100));
+        }
+        nodeRows = wf.getBatchParseFunction(NodeBatchWorkConfig.class).apply(lines, nodesConfig);
+
+        lines.clear();
+        for (int i = 0; i < BATCH; i++) {
+            lines.add(String.format("%d,%d,%d", random.nextInt(PERSONS), random.nextInt(PERSONS), 1990 + i % 30));
+        }
+        relRows = wf.getBatchParseFunction(RelationshipBatchWorkConfig.class).apply(lines, relsConfig);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        if (NodesIndexMngr.getNodesIndex() != null) {
+            NodesIndexMngr.getNodesIndex().close();
+        }
+        db.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int createNodes() {
+        return write(createNode, nodesConfig, nodeRows);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int createRelationships() {
+        return write(createRelationship, relsConfig, relRows);
+    }
+
+    private int write(WorkFunctions.WorkFunc<WorkFunctions.ParsedRow, GraphBatchWorkConfig, WorkFunctions.FunctionResult> function,
+                      GraphBatchWorkConfig config, List<WorkFunctions.ParsedRow> rows) {
+        int written = 0;
+        try (Transaction tx = db.beginTx()) {
+            for (WorkFunctions.ParsedRow row : rows) {
+                if (function.apply(row, config) == WorkFunctions.FunctionResult.SUCCESS) {
+                    written++;
+                }
+            }
+            tx.success();
+        }
+        return written;
+    }
+
+    private GraphBatchWorkConfig newWorkConfig(GraphBatchWorkConfig workConfig,
+                                               BaseImportConfig importConfig, String header) {
+        importConfig.header = header;
+        workConfig.setBaseImportConfig(importConfig);
+        workConfig.setPropertiesMap(ColumnPlan.parseHeader(header, ','));
+        workConfig.setGraphDatabaseAPI(db);
+        workConfig.setLog(NullLog.getInstance());
+        workConfig.setBatchSize(BATCH);
+        return workConfig;
+    }
+}
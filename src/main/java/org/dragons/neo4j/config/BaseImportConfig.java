@@ -9,5 +9,8 @@ public abstract class BaseImportConfig {
     public String label;
     public String header;
     public boolean skipFirst;
+    public char delimiter = ',';
+    public char quote = '"';
+    public char arrayDelimiter = ';';
 
 }
@@ -0,0 +1,11 @@
+package org.dragons.neo4j.config;
+
+/**
+ * Bounds of the adaptive transactions size. The batch size given to the procedure is the initial size.
+ */
+public class BatchSizingConfig {
+    public int minBatchSize = 1000;
+    public int maxBatchSize = 1000000;
+    public long targetCommitMillis = 500;
+    public long maxTxStateBytes = 256L * 1024 * 1024;
+}
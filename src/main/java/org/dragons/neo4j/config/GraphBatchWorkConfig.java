@@ -1,5 +1,7 @@
 package org.dragons.neo4j.config;
 
+import org.dragons.neo4j.utils.ColumnPlan;
+import org.dragons.neo4j.utils.KernelTokens;
 import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.logging.Log;
 
@@ -12,7 +14,13 @@ public abstract class GraphBatchWorkConfig {
 
     private BaseImportConfig baseImportConfig;
     protected int batchSize;
+    protected int parserThreads;
+    protected int commitsInFlight;
+    protected BatchSizingConfig batchSizing;
+    protected boolean kernelWrites;
+    private volatile KernelTokens kernelTokens;
     protected Map<String, String> propertiesMap;
+    protected ColumnPlan columnPlan;
     protected GraphDatabaseAPI graphDatabaseAPI;
     protected Log log;
 
@@ -32,6 +40,59 @@ public abstract class GraphBatchWorkConfig {
         this.batchSize = batchSize;
     }
 
+    public int getParserThreads() {
+        return parserThreads;
+    }
+
+    public void setParserThreads(int parserThreads) {
+        this.parserThreads = parserThreads;
+    }
+
+    /**
+     * @return number of batches that may be committing while the next one is parsed, 0 to commit on the reading thread
+     */
+    public int getCommitsInFlight() {
+        return commitsInFlight;
+    }
+
+    public void setCommitsInFlight(int commitsInFlight) {
+        this.commitsInFlight = commitsInFlight;
+    }
+
+    /**
+     * @return bounds for adapting the batch size to the commits time, or null to keep the batch size fixed
+     */
+    public BatchSizingConfig getBatchSizing() {
+        return batchSizing;
+    }
+
+    public void setBatchSizing(BatchSizingConfig batchSizing) {
+        this.batchSizing = batchSizing;
+    }
+
+    /**
+     * @return whether rows are written through the kernel operations of the transaction, with pre-resolved tokens
+     */
+    public boolean isKernelWrites() {
+        return kernelWrites;
+    }
+
+    public void setKernelWrites(boolean kernelWrites) {
+        this.kernelWrites = kernelWrites;
+    }
+
+    /**
+     * @return the tokens of the current column plan, resolved on first use and shared by the config's writers
+     */
+    public KernelTokens getKernelTokens() {
+        KernelTokens tokens = kernelTokens;
+        if (tokens == null || !tokens.isFor(this)) {
+            tokens = KernelTokens.resolve(this);
+            kernelTokens = tokens;
+        }
+        return tokens;
+    }
+
     public GraphDatabaseAPI getGraphDatabaseAPI() {
         return graphDatabaseAPI;
     }
@@ -54,6 +115,11 @@ public abstract class GraphBatchWorkConfig {
 
     public void setPropertiesMap(Map<String, String> propertiesMap) {
         this.propertiesMap = propertiesMap;
+        this.columnPlan = ColumnPlan.compile(propertiesMap, false);
+    }
+
+    public ColumnPlan getColumnPlan() {
+        return columnPlan;
     }
 
     public String printPropMap() {
@@ -1,5 +1,6 @@
 package org.dragons.neo4j.config;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -9,7 +10,23 @@ public class ImportConfig {
     public String nodesParallelLevel;
     public String relsParallelLevel;
     public String nodeIdsCache;
+    public String nodeIdsCacheDir;
+    public String nodeIdsCacheUri;
+    public int nodeIdsCacheBatchSize;
+    public int nodeIdsNearCacheSize = 100000;
+    public long lookupCacheSize = 64L * 1024 * 1024;
     public int maxThreads;
-    public List<NodeImportConfig> nodes;
-    public List<RelationshipImportConfig> relationships;
+    public boolean overlapPhases;
+    public int parserThreads;
+    public int commitsInFlight;
+    public long fileChunkSize;
+    public int decompressionThreads = 1;
+    public int sortBufferSize = 1000000;
+    public String sortTempDir;
+    public BatchSizingConfig batchSizing;
+    public boolean kernelWrites;
+    public String checkpointFile;
+    public boolean resume;
+    public List<NodeImportConfig> nodes = new ArrayList<>();
+    public List<RelationshipImportConfig> relationships = new ArrayList<>();
 }
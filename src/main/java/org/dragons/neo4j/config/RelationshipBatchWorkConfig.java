@@ -1,5 +1,7 @@
 package org.dragons.neo4j.config;
 
+import org.dragons.neo4j.utils.ColumnPlan;
+
 import java.util.Map;
 
 /**
@@ -12,13 +14,9 @@ public class RelationshipBatchWorkConfig extends GraphBatchWorkConfig {
 
     public void setPropertiesMap(Map<String, String> propMap) {
         propertiesMap = propMap;
-        for (int i=0; i<propMap.size(); i++) {
-            if (propMap.keySet().toArray()[i].equals("start")) {
-                setStartMatchPropCol(i);
-            } else if (propMap.keySet().toArray()[i].equals("end")) {
-                setEndMatchPropCol(i);
-            }
-        }
+        columnPlan = ColumnPlan.compile(propMap, true);
+        setStartMatchPropCol(columnPlan.getStartColumn());
+        setEndMatchPropCol(columnPlan.getEndColumn());
         if(getStartMatchPropCol() < 0 || getEndMatchPropCol() < 0) {
             throw new RuntimeException("Invalid properties map for relationship. missing start+end columns.");
         }
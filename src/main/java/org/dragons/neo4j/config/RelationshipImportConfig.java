@@ -9,4 +9,5 @@ public class RelationshipImportConfig extends BaseImportConfig {
     public String startNodeMatchPropName;
     public String endNodeLabel;
     public String endNodeMatchPropName;
+    public boolean sortByStartNode;
 }
@@ -7,5 +7,6 @@ public enum ThreadsExecutionType {
     NONE,
     ALL,
     IN_GROUP,
-    GROUP
+    GROUP,
+    PARTITIONED
 }
@@ -6,7 +6,9 @@ import org.apache.ignite.IgniteDataStreamer;
 import org.apache.ignite.Ignition;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 public class IgniteComplexIndex implements NodesIndexAPI {
 
@@ -64,6 +66,25 @@ public class IgniteComplexIndex implements NodesIndexAPI {
         return nodeId.longValue();
     }
 
+    @Override
+    public long[] getNodeIds(String label, Object[] idPropertyValues) {
+        long[] ids = new long[idPropertyValues.length];
+        IgniteCache<String, Long> labelCache = ignite.getOrCreateCache(label);
+        Set<String> keys = new HashSet<>();
+        for (Object value : idPropertyValues) {
+            if (value != null) {
+                keys.add(value.toString());
+            }
+        }
+        //a single round trip per ignite node instead of one per key
+        Map<String, Long> found = labelCache == null ? new HashMap<>() : labelCache.getAll(keys);
+        for (int i = 0; i < idPropertyValues.length; i++) {
+            Long nodeId = idPropertyValues[i] == null ? null : found.get(idPropertyValues[i].toString());
+            ids[i] = nodeId == null ? -1 : nodeId;
+        }
+        return ids;
+    }
+
     @Override
     public void persist() {
         for (IgniteDataStreamer s :
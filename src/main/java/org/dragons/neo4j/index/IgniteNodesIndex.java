@@ -4,57 +4,155 @@ import org.apache.ignite.Ignite;
 import org.apache.ignite.IgniteCache;
 import org.apache.ignite.IgniteDataStreamer;
 import org.apache.ignite.Ignition;
+import org.apache.ignite.cache.CacheAtomicityMode;
+import org.apache.ignite.cache.CacheMode;
+import org.apache.ignite.configuration.CacheConfiguration;
+import org.apache.ignite.configuration.IgniteConfiguration;
+import org.apache.ignite.configuration.MemoryConfiguration;
+import org.apache.ignite.configuration.MemoryPolicyConfiguration;
+import org.apache.ignite.spi.discovery.tcp.TcpDiscoverySpi;
+import org.apache.ignite.spi.discovery.tcp.ipfinder.vm.TcpDiscoveryVmIpFinder;
 
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by Elad on 5/11/2017.
+ *
+ * Runs an ignite node bound to the local host, discovering only nodes of the same machine (no multicast),
+ * so the import works offline. Entries are kept in a dedicated off-heap memory policy of a bounded size.
+ * Numeric id properties are kept as Long keys, any other value by its string.
  */
 public class IgniteNodesIndex implements NodesIndexAPI {
 
-    Ignite ignite;
-    Map<String, IgniteDataStreamer<String, Long>> streamers;
+    public static final long DEFAULT_MEMORY_SIZE = 1L << 30;
+
+    private static final String INSTANCE_NAME = "nodes-index";
+    private static final String MEMORY_POLICY = "nodes-index-memory";
+
+    private final Ignite ignite;
+    private final Map<String, LabelCache> caches = new ConcurrentHashMap<>();
 
     public IgniteNodesIndex() {
-        ignite = Ignition.start();
-        streamers = new HashMap<>();
+        this(DEFAULT_MEMORY_SIZE);
+    }
+
+    /**
+     * Hot entries are not kept on heap here, NodesIndexMngr puts its own near cache in front of the index.
+     */
+    public IgniteNodesIndex(long memorySize) {
+        ignite = Ignition.start(localConfiguration(memorySize));
+    }
+
+    private static IgniteConfiguration localConfiguration(long memorySize) {
+
+        TcpDiscoveryVmIpFinder ipFinder = new TcpDiscoveryVmIpFinder();
+        ipFinder.setAddresses(Collections.singletonList("127.0.0.1:47500..47509"));
+        TcpDiscoverySpi discovery = new TcpDiscoverySpi();
+        discovery.setIpFinder(ipFinder);
+        discovery.setLocalAddress("127.0.0.1");
+
+        MemoryPolicyConfiguration memoryPolicy = new MemoryPolicyConfiguration();
+        memoryPolicy.setName(MEMORY_POLICY);
+        memoryPolicy.setSize(memorySize);
+        MemoryConfiguration memory = new MemoryConfiguration();
+        memory.setMemoryPolicies(memoryPolicy);
+
+        IgniteConfiguration config = new IgniteConfiguration();
+        config.setIgniteInstanceName(INSTANCE_NAME);
+        config.setLocalHost("127.0.0.1");
+        config.setDiscoverySpi(discovery);
+        config.setMemoryConfiguration(memory);
+        config.setMetricsLogFrequency(0);
+        return config;
     }
 
     @Override
-    public synchronized void prepareIndex(String label) {
-        if(!streamers.containsKey(label)) {
-            ignite.getOrCreateCache(label);
-            IgniteDataStreamer<String, Long> streamer = ignite.dataStreamer(label);
-            streamer.perNodeBufferSize(10000);
-            streamers.put(label, streamer);
-        }
+    public void prepareIndex(String label) {
+        labelCache(label);
     }
 
     @Override
     public void addNodeToIndex(String label, Object idPropertyValue, long id) {
         //add data to the relevant streamer
-        streamers.get(label).addData(idPropertyValue.toString(), id);
+        labelCache(label).streamer.addData(toKey(idPropertyValue), id);
     }
 
     @Override
     public long getNodeId(String label, Object idPropertyValue) {
-        IgniteCache<String, Long> labelCache = ignite.getOrCreateCache(label);
-        if(labelCache == null) {
-            return -1;
-        }
-        Long nodeId = labelCache.get(idPropertyValue.toString());
+        Long nodeId = labelCache(label).cache.get(toKey(idPropertyValue));
         if(nodeId == null) {
             return -1;
         }
         return nodeId.longValue();
     }
 
+    @Override
+    public long[] getNodeIds(String label, Object[] idPropertyValues) {
+        long[] ids = new long[idPropertyValues.length];
+        Set<Object> keys = new HashSet<>();
+        for (Object value : idPropertyValues) {
+            if (value != null) {
+                keys.add(toKey(value));
+            }
+        }
+        //a single round trip per ignite node instead of one per key
+        Map<Object, Long> found = labelCache(label).cache.getAll(keys);
+        for (int i = 0; i < idPropertyValues.length; i++) {
+            Long nodeId = idPropertyValues[i] == null ? null : found.get(toKey(idPropertyValues[i]));
+            ids[i] = nodeId == null ? -1 : nodeId;
+        }
+        return ids;
+    }
+
     @Override
     public void persist() {
-        for (IgniteDataStreamer s :
-                streamers.values()) {
-            s.flush();
+        for (LabelCache labelCache : caches.values()) {
+            labelCache.streamer.flush();
+        }
+    }
+
+    @Override
+    public void close() {
+        for (LabelCache labelCache : caches.values()) {
+            labelCache.streamer.close();
+        }
+        caches.clear();
+        ignite.close();
+    }
+
+    private static Object toKey(Object idPropertyValue) {
+        if (idPropertyValue instanceof Number) {
+            return ((Number) idPropertyValue).longValue();
+        }
+        return idPropertyValue.toString();
+    }
+
+    private LabelCache labelCache(String label) {
+        return caches.computeIfAbsent(label, LabelCache::new);
+    }
+
+    /**
+     * The cache handle and data streamer of a single label, created once.
+     */
+    private final class LabelCache {
+
+        final IgniteCache<Object, Long> cache;
+        final IgniteDataStreamer<Object, Long> streamer;
+
+        LabelCache(String label) {
+            CacheConfiguration<Object, Long> cacheConfig = new CacheConfiguration<>(label);
+            cacheConfig.setCacheMode(CacheMode.PARTITIONED);
+            cacheConfig.setAtomicityMode(CacheAtomicityMode.ATOMIC);
+            cacheConfig.setBackups(0);
+            cacheConfig.setMemoryPolicyName(MEMORY_POLICY);
+
+            cache = ignite.getOrCreateCache(cacheConfig);
+            streamer = ignite.dataStreamer(label);
+            streamer.perNodeBufferSize(10000);
         }
     }
 }
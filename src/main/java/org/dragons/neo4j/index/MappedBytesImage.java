@@ -0,0 +1,170 @@
+package org.dragons.neo4j.index;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Immutable open-addressing table of byte-slice keys to {@code long} values stored in two memory-mapped files.
+ *
+ * The slots file has a 48 bytes header (magic, capacity, size, keys file length) followed by 24 bytes slots holding
+ * the key hash, the position of the key in the keys file and the value plus one. The keys file holds length-prefixed
+ * key bytes, padded so that no key crosses a mapping window.
+ * The keys file is synced before the slots, and the magic is written and forced last, so an image with the magic
+ * has all its keys on disk.
+ */
+final class MappedBytesImage implements Closeable {
+
+    static final long MAGIC = 0x4e49445853545253L;
+    private static final int HEADER_SIZE = 48;
+    private static final int SLOT_SIZE = 24;
+
+    private final MappedRegion slots;
+    private final MappedRegion keys;
+    private final int mask;
+    private final long size;
+
+    private MappedBytesImage(MappedRegion slots, MappedRegion keys) {
+        this.slots = slots;
+        this.keys = keys;
+        this.mask = (int) slots.getLong(8) - 1;
+        this.size = slots.getLong(16);
+    }
+
+    /**
+     * @return the image stored in the files, or null if they were not completely written.
+     */
+    static MappedBytesImage open(Path slotsFile, Path keysFile) throws IOException {
+        if (!Files.exists(keysFile)) {
+            return null;
+        }
+        MappedRegion slots = MappedRegion.open(slotsFile);
+        if (slots.size() < HEADER_SIZE || slots.getLong(0) != MAGIC || Files.size(keysFile) < slots.getLong(24)) {
+            slots.close();
+            return null;
+        }
+        return new MappedBytesImage(slots, MappedRegion.open(keysFile));
+    }
+
+    /**
+     * Writes the entries of an image (may be null) and a table into new image files.
+     * The table is expected to hold only keys missing from the image.
+     */
+    static MappedBytesImage write(Path slotsFile, Path keysFile, MappedBytesImage image, OffHeapBytesTable table) throws IOException {
+        long entries = (image == null ? 0 : image.size) + (table == null ? 0 : table.size());
+        int capacity = MappedLongImage.capacityFor(entries);
+        MappedRegion region = MappedRegion.create(slotsFile, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+        long[] state = {0, 0}; //entries written, keys file position
+        try (FileChannel keysChannel = FileChannel.open(keysFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             DataOutputStream keysOut = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(keysChannel), 1 << 16))) {
+            OffHeapBytesTable.EntryConsumer writer = (bytes, length, value) -> {
+                long hash = OffHeapMemory.hash(bytes, 0, length);
+                int idx = (int) hash & (capacity - 1);
+                while (true) {
+                    long pos = HEADER_SIZE + (long) idx * SLOT_SIZE;
+                    if (region.getLong(pos + 16) == 0) {
+                        break;
+                    }
+                    idx = (idx + 1) & (capacity - 1);
+                }
+                try {
+                    long keyPos = state[1];
+                    long windowLeft = MappedRegion.WINDOW_SIZE - keyPos % MappedRegion.WINDOW_SIZE;
+                    if (windowLeft < length + 4) {
+                        keysOut.write(new byte[(int) windowLeft]);
+                        keyPos += windowLeft;
+                    }
+                    keysOut.writeInt(length);
+                    keysOut.write(bytes, 0, length);
+                    state[1] = keyPos + 4 + length;
+                    long pos = HEADER_SIZE + (long) idx * SLOT_SIZE;
+                    region.putLong(pos, hash);
+                    region.putLong(pos + 8, keyPos);
+                    region.putLong(pos + 16, value + 1);
+                    state[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+            if (image != null) {
+                image.forEach(writer);
+            }
+            if (table != null) {
+                table.forEach(writer);
+            }
+            keysOut.flush();
+            keysChannel.force(true);
+        } catch (UncheckedIOException e) {
+            region.close();
+            throw e.getCause();
+        } catch (IOException e) {
+            region.close();
+            throw e;
+        }
+        region.putLong(8, capacity);
+        region.putLong(16, state[0]);
+        region.putLong(24, state[1]);
+        region.force();
+        region.putLong(0, MAGIC);
+        region.force();
+        region.close();
+        return open(slotsFile, keysFile);
+    }
+
+    /**
+     * @return the value mapped to the key bytes, or -1 if there is none.
+     */
+    long get(byte[] bytes, int offset, int length) {
+        long hash = OffHeapMemory.hash(bytes, offset, length);
+        int idx = (int) hash & mask;
+        while (true) {
+            long pos = HEADER_SIZE + (long) idx * SLOT_SIZE;
+            long value = slots.getLong(pos + 16);
+            if (value == 0) {
+                return -1;
+            }
+            if (slots.getLong(pos) == hash) {
+                long keyPos = slots.getLong(pos + 8);
+                if (keys.getInt(keyPos) == length && keys.equals(keyPos + 4, bytes, offset, length)) {
+                    return value - 1;
+                }
+            }
+            idx = (idx + 1) & mask;
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    void forEach(OffHeapBytesTable.EntryConsumer consumer) {
+        byte[] buffer = new byte[64];
+        for (int i = 0; i <= mask; i++) {
+            long pos = HEADER_SIZE + (long) i * SLOT_SIZE;
+            long value = slots.getLong(pos + 16);
+            if (value != 0) {
+                long keyPos = slots.getLong(pos + 8);
+                int length = keys.getInt(keyPos);
+                if (buffer.length < length) {
+                    buffer = new byte[Math.max(length, buffer.length * 2)];
+                }
+                keys.get(keyPos + 4, buffer, length);
+                consumer.accept(buffer, length, value - 1);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        slots.close();
+        keys.close();
+    }
+}
@@ -0,0 +1,136 @@
+package org.dragons.neo4j.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Immutable open-addressing table of {@code long -> long} entries stored in a memory-mapped file.
+ *
+ * Layout: a 48 bytes header (magic, capacity, size) followed by 16 bytes slots holding the key and the value plus one.
+ * The magic is written and forced last, so a file without it was not completely written and is ignored.
+ */
+final class MappedLongImage implements Closeable {
+
+    static final long MAGIC = 0x4e4944584c4f4e47L;
+    private static final int HEADER_SIZE = 48;
+    private static final int SLOT_SIZE = 16;
+
+    private final MappedRegion region;
+    private final int mask;
+    private final long size;
+
+    private MappedLongImage(MappedRegion region) {
+        this.region = region;
+        this.mask = (int) region.getLong(8) - 1;
+        this.size = region.getLong(16);
+    }
+
+    /**
+     * @return the image stored in the file, or null if the file was not completely written.
+     */
+    static MappedLongImage open(Path file) throws IOException {
+        MappedRegion region = MappedRegion.open(file);
+        if (region.size() < HEADER_SIZE || region.getLong(0) != MAGIC) {
+            region.close();
+            return null;
+        }
+        return new MappedLongImage(region);
+    }
+
+    /**
+     * Writes the entries of an image (may be null) and a table into a new image file.
+     * Keys of the table that also appear in the image keep the image value.
+     */
+    static MappedLongImage write(Path file, MappedLongImage image, OffHeapLongTable table) throws IOException {
+        long entries = (image == null ? 0 : image.size) + (table == null ? 0 : table.size());
+        int capacity = capacityFor(entries);
+        MappedRegion region = MappedRegion.create(file, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+        long[] size = {0};
+        OffHeapLongTable.EntryConsumer writer = (key, value) -> {
+            if (insert(region, capacity - 1, key, value)) {
+                size[0]++;
+            }
+        };
+        if (image != null) {
+            image.forEach(writer);
+        }
+        if (table != null) {
+            table.forEach(writer);
+        }
+        region.putLong(8, capacity);
+        region.putLong(16, size[0]);
+        region.force();
+        region.putLong(0, MAGIC);
+        region.force();
+        region.close();
+        return open(file);
+    }
+
+    /**
+     * @return the value mapped to the key, or -1 if there is none.
+     */
+    long get(long key) {
+        int idx = (int) OffHeapMemory.mix(key) & mask;
+        while (true) {
+            long pos = HEADER_SIZE + (long) idx * SLOT_SIZE;
+            long value = region.getLong(pos + 8);
+            if (value == 0) {
+                return -1;
+            }
+            if (region.getLong(pos) == key) {
+                return value - 1;
+            }
+            idx = (idx + 1) & mask;
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    void forEach(OffHeapLongTable.EntryConsumer consumer) {
+        for (int i = 0; i <= mask; i++) {
+            long pos = HEADER_SIZE + (long) i * SLOT_SIZE;
+            long value = region.getLong(pos + 8);
+            if (value != 0) {
+                consumer.accept(region.getLong(pos), value - 1);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        region.close();
+    }
+
+    /**
+     * Power of two with a load factor of at most one half.
+     */
+    static int capacityFor(long entries) {
+        long capacity = 16;
+        while (capacity < entries * 2) {
+            capacity <<= 1;
+        }
+        if (capacity > 1 << 30) {
+            throw new IllegalStateException("Too many entries for a single image: " + entries);
+        }
+        return (int) capacity;
+    }
+
+    private static boolean insert(MappedRegion region, int mask, long key, long value) {
+        int idx = (int) OffHeapMemory.mix(key) & mask;
+        while (true) {
+            long pos = HEADER_SIZE + (long) idx * SLOT_SIZE;
+            if (region.getLong(pos + 8) == 0) {
+                region.putLong(pos, key);
+                region.putLong(pos + 8, value + 1);
+                return true;
+            }
+            if (region.getLong(pos) == key) {
+                return false;
+            }
+            idx = (idx + 1) & mask;
+        }
+    }
+}
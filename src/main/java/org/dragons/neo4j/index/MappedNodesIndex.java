@@ -0,0 +1,267 @@
+package org.dragons.neo4j.index;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Nodes index persisted as memory-mapped files, so it can be reused by later imports
+ * (e.g. loading relationships onto nodes imported by a previous run).
+ *
+ * Every label has an immutable image on disk ({@code <label>.longs.<generation>} for numeric ids,
+ * {@code <label>.strings.<generation>} and {@code <label>.keys.<generation>} for any other id) which is mapped when the
+ * label is first used, plus an off-heap table holding the nodes added since. {@link #persist()} merges both into a new
+ * generation of files and forces it to disk. It must not run concurrently with {@link #addNodeToIndex} for the same label.
+ */
+public class MappedNodesIndex implements NodesIndexAPI {
+
+    private final Path dir;
+    private final Map<String, LabelFiles> index = new ConcurrentHashMap<>();
+
+    public MappedNodesIndex(String dir) {
+        this.dir = Paths.get(dir);
+        try {
+            Files.createDirectories(this.dir);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed creating nodes index directory " + dir, e);
+        }
+    }
+
+    @Override
+    public void prepareIndex(String label) {
+        labelFiles(label);
+    }
+
+    @Override
+    public void addNodeToIndex(String label, Object idPropertyValue, long id) {
+        LabelFiles files = labelFiles(label);
+        if (idPropertyValue instanceof Number) {
+            long key = ((Number) idPropertyValue).longValue();
+            MappedLongImage image = files.longImage;
+            if (image == null || image.get(key) < 0) {
+                files.longTable().putIfAbsent(key, id);
+            }
+        } else {
+            byte[] bytes = idPropertyValue.toString().getBytes(StandardCharsets.UTF_8);
+            MappedBytesImage image = files.bytesImage;
+            if (image == null || image.get(bytes, 0, bytes.length) < 0) {
+                files.bytesTable().putIfAbsent(bytes, 0, bytes.length, id);
+            }
+        }
+    }
+
+    @Override
+    public long getNodeId(String label, Object idPropertyValue) {
+        return getNodeId(labelFiles(label), idPropertyValue);
+    }
+
+    @Override
+    public long[] getNodeIds(String label, Object[] idPropertyValues) {
+        long[] ids = new long[idPropertyValues.length];
+        LabelFiles files = labelFiles(label);
+        for (int i = 0; i < idPropertyValues.length; i++) {
+            ids[i] = idPropertyValues[i] == null ? -1 : getNodeId(files, idPropertyValues[i]);
+        }
+        return ids;
+    }
+
+    private static long getNodeId(LabelFiles files, Object idPropertyValue) {
+        if (idPropertyValue instanceof Number) {
+            long key = ((Number) idPropertyValue).longValue();
+            //the table is read before the image: persist() publishes a new image before it replaces the table
+            OffHeapLongTable table = files.longTable;
+            long id = table == null ? -1 : table.get(key);
+            MappedLongImage image = files.longImage;
+            return id < 0 && image != null ? image.get(key) : id;
+        }
+        byte[] bytes = idPropertyValue.toString().getBytes(StandardCharsets.UTF_8);
+        OffHeapBytesTable table = files.bytesTable;
+        long id = table == null ? -1 : table.get(bytes, 0, bytes.length);
+        MappedBytesImage image = files.bytesImage;
+        return id < 0 && image != null ? image.get(bytes, 0, bytes.length) : id;
+    }
+
+    @Override
+    public void persist() {
+        for (LabelFiles files : index.values()) {
+            try {
+                files.persist();
+            } catch (IOException e) {
+                throw new RuntimeException("Failed persisting nodes index of label " + files.label, e);
+            }
+        }
+    }
+
+    @Override
+    public void persist(String label) {
+        LabelFiles files = index.get(label);
+        if (files == null) {
+            return;
+        }
+        try {
+            files.persist();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed persisting nodes index of label " + label, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        index.values().forEach(LabelFiles::close);
+        index.clear();
+    }
+
+    private LabelFiles labelFiles(String label) {
+        return index.computeIfAbsent(label, l -> {
+            try {
+                return new LabelFiles(l);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed opening nodes index of label " + l, e);
+            }
+        });
+    }
+
+    private final class LabelFiles {
+
+        final String label;
+        volatile MappedLongImage longImage;
+        volatile MappedBytesImage bytesImage;
+        volatile OffHeapLongTable longTable;
+        volatile OffHeapBytesTable bytesTable;
+        long longsGeneration;
+        long stringsGeneration;
+        //tables replaced by persist(); a concurrent reader may still use them, so they are freed on close()
+        final List<Object> retired = new ArrayList<>();
+
+        LabelFiles(String label) throws IOException {
+            this.label = label;
+            //the latest generation may be incomplete if a previous persist() was interrupted
+            List<Long> generations = generations("longs");
+            longsGeneration = generations.isEmpty() ? -1 : generations.get(0);
+            for (long g : generations) {
+                longImage = MappedLongImage.open(file("longs", g));
+                if (longImage != null) {
+                    break;
+                }
+            }
+            generations = generations("strings");
+            stringsGeneration = generations.isEmpty() ? -1 : generations.get(0);
+            for (long g : generations) {
+                bytesImage = MappedBytesImage.open(file("strings", g), file("keys", g));
+                if (bytesImage != null) {
+                    break;
+                }
+            }
+        }
+
+        synchronized OffHeapLongTable longTable() {
+            if (longTable == null) {
+                longTable = new OffHeapLongTable();
+            }
+            return longTable;
+        }
+
+        synchronized OffHeapBytesTable bytesTable() {
+            if (bytesTable == null) {
+                bytesTable = new OffHeapBytesTable();
+            }
+            return bytesTable;
+        }
+
+        synchronized void persist() throws IOException {
+            if (longTable != null) {
+                MappedLongImage previous = longImage;
+                longsGeneration++;
+                longImage = MappedLongImage.write(file("longs", longsGeneration), previous, longTable);
+                retired.add(longTable);
+                longTable = null;
+                if (previous != null) {
+                    previous.close();
+                }
+                deleteOtherGenerations("longs", longsGeneration);
+            }
+            if (bytesTable != null) {
+                MappedBytesImage previous = bytesImage;
+                stringsGeneration++;
+                bytesImage = MappedBytesImage.write(file("strings", stringsGeneration), file("keys", stringsGeneration),
+                        previous, bytesTable);
+                retired.add(bytesTable);
+                bytesTable = null;
+                if (previous != null) {
+                    previous.close();
+                }
+                deleteOtherGenerations("strings", stringsGeneration);
+                deleteOtherGenerations("keys", stringsGeneration);
+            }
+        }
+
+        synchronized void close() {
+            try {
+                if (longImage != null) {
+                    longImage.close();
+                }
+                if (bytesImage != null) {
+                    bytesImage.close();
+                }
+            } catch (IOException e) {
+                //the mappings are released by the garbage collector anyway
+            }
+            retired.add(longTable);
+            retired.add(bytesTable);
+            for (Object table : retired) {
+                if (table instanceof OffHeapLongTable) {
+                    ((OffHeapLongTable) table).free();
+                } else if (table instanceof OffHeapBytesTable) {
+                    ((OffHeapBytesTable) table).free();
+                }
+            }
+            retired.clear();
+        }
+
+        private Path file(String kind, long generation) {
+            return dir.resolve(label + "." + kind + "." + generation);
+        }
+
+        /**
+         * @return the generations found on disk for the given kind of file, latest first.
+         */
+        private List<Long> generations(String kind) throws IOException {
+            List<Long> generations = new ArrayList<>();
+            String prefix = label + "." + kind + ".";
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, prefix + "*")) {
+                for (Path path : stream) {
+                    try {
+                        generations.add(Long.parseLong(path.getFileName().toString().substring(prefix.length())));
+                    } catch (NumberFormatException e) {
+                        //not an index file of this label
+                    }
+                }
+            }
+            generations.sort(Collections.reverseOrder());
+            return generations;
+        }
+
+        private void deleteOtherGenerations(String kind, long keep) throws IOException {
+            String prefix = label + "." + kind + ".";
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, prefix + "*")) {
+                for (Path path : stream) {
+                    if (!path.equals(file(kind, keep))) {
+                        try {
+                            Files.deleteIfExists(path);
+                        } catch (IOException e) {
+                            //still mapped (e.g. on windows), will be removed by a later persist
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
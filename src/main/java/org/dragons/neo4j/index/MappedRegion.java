@@ -0,0 +1,102 @@
+package org.dragons.neo4j.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file mapped into memory through {@link FileChannel#map}.
+ * Files larger than a single {@link MappedByteBuffer} can address are mapped as consecutive windows;
+ * callers keep fixed-size records aligned so that a record never crosses a window boundary.
+ */
+final class MappedRegion implements Closeable {
+
+    //divisible by both the 16 and 24 bytes slots of the images, and below the 2GB limit of a single mapping
+    static final long WINDOW_SIZE = 3L << 29;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] windows;
+    private final long size;
+
+    private MappedRegion(FileChannel channel, FileChannel.MapMode mode, long size) throws IOException {
+        this.channel = channel;
+        this.size = size;
+        windows = new MappedByteBuffer[(int) ((size + WINDOW_SIZE - 1) / WINDOW_SIZE)];
+        for (int i = 0; i < windows.length; i++) {
+            long start = i * WINDOW_SIZE;
+            windows[i] = channel.map(mode, start, Math.min(WINDOW_SIZE, size - start));
+        }
+    }
+
+    /**
+     * Creates (or truncates) the file with the given size, mapped for writing. The content is zeroed.
+     */
+    static MappedRegion create(Path file, long size) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new MappedRegion(channel, FileChannel.MapMode.READ_WRITE, size);
+    }
+
+    /**
+     * Maps an existing file for reading.
+     */
+    static MappedRegion open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        return new MappedRegion(channel, FileChannel.MapMode.READ_ONLY, channel.size());
+    }
+
+    long size() {
+        return size;
+    }
+
+    long getLong(long pos) {
+        return windows[(int) (pos / WINDOW_SIZE)].getLong((int) (pos % WINDOW_SIZE));
+    }
+
+    void putLong(long pos, long value) {
+        windows[(int) (pos / WINDOW_SIZE)].putLong((int) (pos % WINDOW_SIZE), value);
+    }
+
+    int getInt(long pos) {
+        return windows[(int) (pos / WINDOW_SIZE)].getInt((int) (pos % WINDOW_SIZE));
+    }
+
+    /**
+     * Compares the bytes stored at pos with the given slice.
+     */
+    boolean equals(long pos, byte[] bytes, int offset, int length) {
+        MappedByteBuffer window = windows[(int) (pos / WINDOW_SIZE)];
+        int start = (int) (pos % WINDOW_SIZE);
+        for (int i = 0; i < length; i++) {
+            if (window.get(start + i) != bytes[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void get(long pos, byte[] dest, int length) {
+        MappedByteBuffer window = windows[(int) (pos / WINDOW_SIZE)];
+        int start = (int) (pos % WINDOW_SIZE);
+        for (int i = 0; i < length; i++) {
+            dest[i] = window.get(start + i);
+        }
+    }
+
+    void force() {
+        for (MappedByteBuffer window : windows) {
+            window.force();
+        }
+    }
+
+    /**
+     * Closes the channel. The mapping itself stays valid until it is garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,140 @@
+package org.dragons.neo4j.index;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the node ids most often looked up in a remote index (redis, ignite) in the JVM,
+ * so endpoints shared by many relationships (e.g. countries, categories) are resolved without a round trip.
+ *
+ * Only found node ids are cached. The cache is emptied on persist(), after which lookups may see new nodes.
+ */
+public class NearCacheNodesIndex implements NodesIndexAPI {
+
+    private final NodesIndexAPI remote;
+    private final TinyLfuCache<NearKey> cache;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public NearCacheNodesIndex(NodesIndexAPI remote, int maxEntries) {
+        this.remote = remote;
+        this.cache = new TinyLfuCache<>(maxEntries);
+    }
+
+    @Override
+    public void prepareIndex(String label) {
+        remote.prepareIndex(label);
+    }
+
+    @Override
+    public void addNodeToIndex(String label, Object idPropertyValue, long id) {
+        remote.addNodeToIndex(label, idPropertyValue, id);
+    }
+
+    @Override
+    public long getNodeId(String label, Object idPropertyValue) {
+        NearKey key = new NearKey(label, idPropertyValue);
+        long id = cache.get(key);
+        if (id >= 0) {
+            hits.increment();
+            return id;
+        }
+        misses.increment();
+        id = remote.getNodeId(label, idPropertyValue);
+        if (id >= 0) {
+            cache.put(key, id);
+        }
+        return id;
+    }
+
+    /**
+     * Resolves the cached values locally, and the rest with a single bulk lookup in the remote index.
+     */
+    @Override
+    public long[] getNodeIds(String label, Object[] idPropertyValues) {
+
+        long[] ids = new long[idPropertyValues.length];
+        int[] missing = new int[idPropertyValues.length];
+        int missingCount = 0;
+
+        for (int i = 0; i < idPropertyValues.length; i++) {
+            ids[i] = idPropertyValues[i] == null ? -1 : cache.get(new NearKey(label, idPropertyValues[i]));
+            if (ids[i] < 0 && idPropertyValues[i] != null) {
+                missing[missingCount++] = i;
+            }
+        }
+        hits.add(idPropertyValues.length - missingCount);
+        misses.add(missingCount);
+
+        if (missingCount > 0) {
+            Object[] missingValues = new Object[missingCount];
+            for (int i = 0; i < missingCount; i++) {
+                missingValues[i] = idPropertyValues[missing[i]];
+            }
+            long[] found = remote.getNodeIds(label, missingValues);
+            for (int i = 0; i < missingCount; i++) {
+                ids[missing[i]] = found[i];
+                if (found[i] >= 0) {
+                    cache.put(new NearKey(label, missingValues[i]), found[i]);
+                }
+            }
+        }
+
+        return ids;
+    }
+
+    @Override
+    public void persist() {
+        remote.persist();
+        cache.clear();
+    }
+
+    @Override
+    public void persist(String label) {
+        remote.persist(label);
+        cache.clear();
+    }
+
+    @Override
+    public void close() {
+        cache.clear();
+        remote.close();
+    }
+
+    public NodesIndexAPI getRemote() {
+        return remote;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private static final class NearKey {
+
+        final String label;
+        final Object value;
+
+        NearKey(String label, Object value) {
+            this.label = label;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof NearKey)) {
+                return false;
+            }
+            NearKey other = (NearKey) o;
+            return label.equals(other.label) && value.equals(other.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(label, value);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package org.dragons.neo4j.index;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A bounded read-through cache of node ids found in the database by a property value, for relationship endpoints
+ * that are missing from the nodes index (or when there is no index at all).
+ *
+ * Entries are evicted in least recently used order once their estimated size exceeds the given number of bytes.
+ * Misses are cached as well (as -1), so rows pointing to a missing node seek the database only once.
+ * The cache is split into segments, each one locked on its own, so writer threads rarely wait for each other.
+ */
+public class NodeLookupCache {
+
+    private static final int SEGMENTS = 16;
+    //approximate heap size of an entry, excluding the key's value
+    private static final int ENTRY_OVERHEAD = 112;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public NodeLookupCache(long maxBytes) {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(Math.max(ENTRY_OVERHEAD, maxBytes / SEGMENTS));
+        }
+    }
+
+    /**
+     * @param loader finds the node id in the database on a miss, returning -1 if there is no such node
+     */
+    public long get(String label, String property, Object value, LongSupplier loader) {
+
+        LookupKey key = new LookupKey(label, property, value);
+        Segment segment = segments[(key.hashCode() & 0x7fffffff) % SEGMENTS];
+
+        Long nodeId;
+        synchronized (segment) {
+            nodeId = segment.get(key);
+        }
+        if (nodeId != null) {
+            hits.increment();
+            return nodeId;
+        }
+
+        //loaded outside of the lock, two threads may load the same key at once
+        misses.increment();
+        long loaded = loader.getAsLong();
+        synchronized (segment) {
+            segment.add(key, loaded);
+        }
+        return loaded;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    private static long weigh(LookupKey key) {
+        if (key.value instanceof String) {
+            return ENTRY_OVERHEAD + 40 + 2L * ((String) key.value).length();
+        }
+        return ENTRY_OVERHEAD + 24;
+    }
+
+    private final class Segment extends LinkedHashMap<LookupKey, Long> {
+
+        private final long maxBytes;
+        private long bytes;
+
+        Segment(long maxBytes) {
+            //access order makes the iteration order least recently used first
+            super(16, 0.75f, true);
+            this.maxBytes = maxBytes;
+        }
+
+        void add(LookupKey key, long nodeId) {
+            if (put(key, nodeId) == null) {
+                bytes += weigh(key);
+            }
+            Iterator<Map.Entry<LookupKey, Long>> eldest = entrySet().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                bytes -= weigh(eldest.next().getKey());
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    private static final class LookupKey {
+
+        final String label;
+        final String property;
+        final Object value;
+        final int hash;
+
+        LookupKey(String label, String property, Object value) {
+            this.label = label;
+            this.property = property;
+            this.value = value;
+            this.hash = Objects.hash(label, property, value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof LookupKey)) {
+                return false;
+            }
+            LookupKey other = (LookupKey) o;
+            return label.equals(other.label) && property.equals(other.property) && value.equals(other.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
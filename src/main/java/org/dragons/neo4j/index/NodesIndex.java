@@ -30,6 +30,17 @@ public class NodesIndex implements NodesIndexAPI{
         return index.get(label).get(property);
     }
 
+    @Override
+    public long[] getNodeIds(String label, Object[] properties) {
+        long[] ids = new long[properties.length];
+        Map<Object, Long> labelIndex = index.get(label);
+        for (int i = 0; i < properties.length; i++) {
+            Long id = labelIndex == null || properties[i] == null ? null : labelIndex.get(properties[i]);
+            ids[i] = id == null ? -1 : id;
+        }
+        return ids;
+    }
+
     @Override
     public void persist() {
         //nothing is needed here
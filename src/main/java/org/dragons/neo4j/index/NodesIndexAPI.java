@@ -7,5 +7,27 @@ public interface NodesIndexAPI {
     void prepareIndex(String label);
     void addNodeToIndex(String label, Object idPropertyValue, long id);
     long getNodeId(String label, Object idPropertyValue);
+
+    /**
+     * Resolves a batch of id property values of the same label at once.
+     * @return the node ids in the order of the given values, -1 for values that are null or not in the index.
+     */
+    default long[] getNodeIds(String label, Object[] idPropertyValues) {
+        long[] ids = new long[idPropertyValues.length];
+        for (int i = 0; i < idPropertyValues.length; i++) {
+            ids[i] = idPropertyValues[i] == null ? -1 : getNodeId(label, idPropertyValues[i]);
+        }
+        return ids;
+    }
     void persist();
+
+    /**
+     * Makes the nodes of the label added so far visible to lookups, while nodes of other labels may still be added.
+     */
+    default void persist(String label) {
+        persist();
+    }
+    default void close() {
+        //nothing to release by default
+    }
 }
@@ -1,7 +1,6 @@
 package org.dragons.neo4j.index;
 
-import java.util.HashMap;
-import java.util.Map;
+import org.dragons.neo4j.config.ImportConfig;
 
 /**
  * Created by Elad on 5/14/2017.
@@ -9,11 +8,37 @@ import java.util.Map;
 public class NodesIndexMngr {
 
     private static NodesIndexAPI index;
+    private static NodeLookupCache lookupCache;
 
     public static void initNodesIndex(String indexConfig) {
+        initNodesIndex(indexConfig, null);
+    }
+
+    public static void initNodesIndex(ImportConfig config) {
+        initNodesIndex(config.nodeIdsCache, config.nodeIdsCacheDir, config.nodeIdsCacheUri, config.nodeIdsCacheBatchSize);
+        if (config.nodeIdsNearCacheSize > 0 && (index instanceof RedisNodesIndex || index instanceof IgniteNodesIndex)) {
+            //saves the round trips of frequently looked up nodes
+            index = new NearCacheNodesIndex(index, config.nodeIdsNearCacheSize);
+        }
+    }
+
+    public static void initNodesIndex(String indexConfig, String indexDir) {
+        initNodesIndex(indexConfig, indexDir, null, 0);
+    }
+
+    /**
+     * @param indexDir directory of the persistent index files, used by the "mmap" index only.
+     * @param indexUri address of the index server, used by the "redis" index only.
+     * @param indexBatchSize number of nodes sent to the index server at once, used by the "redis" index only.
+     */
+    public static void initNodesIndex(String indexConfig, String indexDir, String indexUri, int indexBatchSize) {
+        if (index != null) {
+            //release resources held by an index from a previous import
+            index.close();
+        }
         switch(indexConfig) {
             case "redis":
-                index = new RedisNodesIndex();
+                index = new RedisNodesIndex(indexUri, indexBatchSize);
                 break;
             case "ignite":
                 index = new IgniteNodesIndex();
@@ -21,6 +46,16 @@ public class NodesIndexMngr {
             case "internal":
                 index = new NodesIndex();
                 break;
+            case "off-heap":
+                index = new OffHeapNodesIndex();
+                break;
+            case "mmap":
+                if (indexDir == null) {
+                    index = null;
+                    throw new RuntimeException("The mmap nodes index requires a nodeIdsCacheDir.");
+                }
+                index = new MappedNodesIndex(indexDir);
+                break;
             default:
                 //no indexing
                 index = null;
@@ -32,4 +67,20 @@ public class NodesIndexMngr {
         return index;
     }
 
+    /**
+     * Starts caching the endpoints found in the database, replacing the entries of a previous import.
+     * @param maxBytes approximate size of the cache, no caching if not positive.
+     */
+    public static void initLookupCache(long maxBytes) {
+        lookupCache = maxBytes > 0 ? new NodeLookupCache(maxBytes) : null;
+    }
+
+    public static void clearLookupCache() {
+        lookupCache = null;
+    }
+
+    public static NodeLookupCache getLookupCache() {
+        return lookupCache;
+    }
+
 }
@@ -0,0 +1,235 @@
+package org.dragons.neo4j.index;
+
+import sun.misc.Unsafe;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.dragons.neo4j.index.OffHeapMemory.UNSAFE;
+
+/**
+ * Off-heap open-addressing map of byte-slice keys (e.g. UTF-8 encoded strings) to non-negative {@code long} values.
+ *
+ * Same segmenting and publication scheme as {@link OffHeapLongTable}. The key bytes are copied into per-segment
+ * append-only chunks that are never moved, and a 24 bytes slot holds the key hash, a reference into the chunks
+ * (chunk number in the high 32 bits, offset in the low 32 bits) and the value plus one.
+ */
+final class OffHeapBytesTable {
+
+    private static final int SEGMENT_BITS = 6;
+    private static final int SLOT_SIZE = 24;
+    private static final int MIN_SEGMENT_CAPACITY = 1024;
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+
+    interface EntryConsumer {
+        /**
+         * @param bytes buffer holding the key in its first length bytes. It is reused between calls.
+         */
+        void accept(byte[] bytes, int length, long value);
+    }
+
+    OffHeapBytesTable() {
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Maps the key bytes to the value, unless the key is already mapped. The bytes are copied.
+     * @return false if the key was already present
+     */
+    boolean putIfAbsent(byte[] bytes, int offset, int length, long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative values cannot be indexed: " + value);
+        }
+        long hash = OffHeapMemory.hash(bytes, offset, length);
+        return segmentFor(hash).putIfAbsent(bytes, offset, length, value, hash);
+    }
+
+    /**
+     * @return the value mapped to the key bytes, or -1 if there is none.
+     */
+    long get(byte[] bytes, int offset, int length) {
+        long hash = OffHeapMemory.hash(bytes, offset, length);
+        Segment segment = segmentFor(hash);
+        Table table = segment.table;
+        int idx = (int) hash & table.mask;
+        while (true) {
+            long slot = table.address + (long) idx * SLOT_SIZE;
+            long value = UNSAFE.getLongVolatile(null, slot + 16);
+            if (value == 0) {
+                return -1;
+            }
+            if (UNSAFE.getLong(slot) == hash && segment.keyEquals(UNSAFE.getLong(slot + 8), bytes, offset, length)) {
+                return value - 1;
+            }
+            idx = (idx + 1) & table.mask;
+        }
+    }
+
+    long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Visits every entry. Entries added concurrently to a segment that was already visited are missed.
+     */
+    void forEach(EntryConsumer consumer) {
+        byte[] buffer = new byte[64];
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                Table t = segment.table;
+                for (int i = 0; i < t.capacity; i++) {
+                    long slot = t.address + (long) i * SLOT_SIZE;
+                    long value = UNSAFE.getLong(slot + 16);
+                    if (value != 0) {
+                        long ref = UNSAFE.getLong(slot + 8);
+                        long address = segment.chunks[(int) (ref >>> 32)] + (ref & 0xffffffffL);
+                        int length = UNSAFE.getInt(address);
+                        if (buffer.length < length) {
+                            buffer = new byte[Math.max(length, buffer.length * 2)];
+                        }
+                        UNSAFE.copyMemory(null, address + 4, buffer, Unsafe.ARRAY_BYTE_BASE_OFFSET, length);
+                        consumer.accept(buffer, length, value - 1);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases all off-heap memory. The table must not be used afterwards.
+     */
+    void free() {
+        for (Segment segment : segments) {
+            segment.free();
+        }
+    }
+
+    private Segment segmentFor(long hash) {
+        return segments[(int) (hash >>> (64 - SEGMENT_BITS))];
+    }
+
+    private static final class Table {
+        final long address;
+        final int capacity;
+        final int mask;
+
+        Table(int capacity) {
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+            this.address = OffHeapMemory.allocate((long) capacity * SLOT_SIZE);
+        }
+    }
+
+    private static final class Segment {
+
+        volatile Table table = new Table(MIN_SEGMENT_CAPACITY);
+        //chunk addresses, replaced (never mutated in place) when a chunk is added
+        volatile long[] chunks = new long[0];
+        int size;
+        int chunkUsed;
+        int chunkCapacity;
+        final List<Table> retired = new ArrayList<>();
+
+        synchronized boolean putIfAbsent(byte[] bytes, int offset, int length, long value, long hash) {
+            Table t = table;
+            int idx = (int) hash & t.mask;
+            while (true) {
+                long slot = t.address + (long) idx * SLOT_SIZE;
+                if (UNSAFE.getLong(slot + 16) == 0) {
+                    break;
+                }
+                if (UNSAFE.getLong(slot) == hash && keyEquals(UNSAFE.getLong(slot + 8), bytes, offset, length)) {
+                    return false;
+                }
+                idx = (idx + 1) & t.mask;
+            }
+            if ((size + 1) * 4L > t.capacity * 3L) {
+                t = resize(t);
+            }
+            insert(t, hash, storeKey(bytes, offset, length), value + 1);
+            size++;
+            return true;
+        }
+
+        boolean keyEquals(long ref, byte[] bytes, int offset, int length) {
+            long address = chunks[(int) (ref >>> 32)] + (ref & 0xffffffffL);
+            if (UNSAFE.getInt(address) != length) {
+                return false;
+            }
+            address += 4;
+            for (int i = 0; i < length; i++) {
+                if (UNSAFE.getByte(address + i) != bytes[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private long storeKey(byte[] bytes, int offset, int length) {
+            int needed = length + 4;
+            if (chunks.length == 0 || chunkCapacity - chunkUsed < needed) {
+                chunkCapacity = Math.max(CHUNK_SIZE, needed);
+                long[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+                grown[grown.length - 1] = OffHeapMemory.allocate(chunkCapacity);
+                chunks = grown;
+                chunkUsed = 0;
+            }
+            int chunk = chunks.length - 1;
+            long address = chunks[chunk] + chunkUsed;
+            UNSAFE.putInt(address, length);
+            UNSAFE.copyMemory(bytes, Unsafe.ARRAY_BYTE_BASE_OFFSET + offset, null, address + 4, length);
+            long ref = ((long) chunk << 32) | chunkUsed;
+            chunkUsed += needed;
+            return ref;
+        }
+
+        private Table resize(Table old) {
+            Table grown = new Table(old.capacity << 1);
+            for (int i = 0; i < old.capacity; i++) {
+                long slot = old.address + (long) i * SLOT_SIZE;
+                long value = UNSAFE.getLong(slot + 16);
+                if (value != 0) {
+                    insert(grown, UNSAFE.getLong(slot), UNSAFE.getLong(slot + 8), value);
+                }
+            }
+            retired.add(old);
+            table = grown;
+            return grown;
+        }
+
+        private static void insert(Table t, long hash, long ref, long storedValue) {
+            int idx = (int) hash & t.mask;
+            while (UNSAFE.getLong(t.address + (long) idx * SLOT_SIZE + 16) != 0) {
+                idx = (idx + 1) & t.mask;
+            }
+            long slot = t.address + (long) idx * SLOT_SIZE;
+            UNSAFE.putLong(slot, hash);
+            UNSAFE.putLong(slot + 8, ref);
+            UNSAFE.putOrderedLong(null, slot + 16, storedValue);
+        }
+
+        synchronized void free() {
+            for (Table t : retired) {
+                OffHeapMemory.free(t.address);
+            }
+            retired.clear();
+            OffHeapMemory.free(table.address);
+            for (long chunk : chunks) {
+                OffHeapMemory.free(chunk);
+            }
+            chunks = new long[0];
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package org.dragons.neo4j.index;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.dragons.neo4j.index.OffHeapMemory.UNSAFE;
+
+/**
+ * Off-heap open-addressing map of primitive {@code long} keys to non-negative {@code long} values.
+ *
+ * The table is split into segments selected by the high bits of the key hash. Inserts lock a single segment,
+ * lookups never lock: a slot is published by an ordered write of its value after the key has been written,
+ * and readers load the value first (volatile) and only then the key.
+ * Each slot is 16 bytes: the key followed by the value plus one, so a zero value marks an empty slot.
+ */
+final class OffHeapLongTable {
+
+    private static final int SEGMENT_BITS = 6;
+    private static final int SLOT_SIZE = 16;
+    private static final int MIN_SEGMENT_CAPACITY = 1024;
+
+    private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+
+    interface EntryConsumer {
+        void accept(long key, long value);
+    }
+
+    OffHeapLongTable() {
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Maps the key to the value, unless the key is already mapped.
+     * @return false if the key was already present
+     */
+    boolean putIfAbsent(long key, long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative values cannot be indexed: " + value);
+        }
+        long hash = OffHeapMemory.mix(key);
+        return segmentFor(hash).putIfAbsent(key, value, hash);
+    }
+
+    /**
+     * @return the value mapped to the key, or -1 if there is none.
+     */
+    long get(long key) {
+        long hash = OffHeapMemory.mix(key);
+        Table table = segmentFor(hash).table;
+        int idx = (int) hash & table.mask;
+        while (true) {
+            long slot = table.address + (long) idx * SLOT_SIZE;
+            long value = UNSAFE.getLongVolatile(null, slot + 8);
+            if (value == 0) {
+                return -1;
+            }
+            if (UNSAFE.getLong(slot) == key) {
+                return value - 1;
+            }
+            idx = (idx + 1) & table.mask;
+        }
+    }
+
+    long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Visits every entry. Entries added concurrently to a segment that was already visited are missed.
+     */
+    void forEach(EntryConsumer consumer) {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                Table t = segment.table;
+                for (int i = 0; i < t.capacity; i++) {
+                    long slot = t.address + (long) i * SLOT_SIZE;
+                    long value = UNSAFE.getLong(slot + 8);
+                    if (value != 0) {
+                        consumer.accept(UNSAFE.getLong(slot), value - 1);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases all off-heap memory. The table must not be used afterwards.
+     */
+    void free() {
+        for (Segment segment : segments) {
+            segment.free();
+        }
+    }
+
+    private Segment segmentFor(long hash) {
+        return segments[(int) (hash >>> (64 - SEGMENT_BITS))];
+    }
+
+    private static final class Table {
+        final long address;
+        final int capacity;
+        final int mask;
+
+        Table(int capacity) {
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+            this.address = OffHeapMemory.allocate((long) capacity * SLOT_SIZE);
+        }
+    }
+
+    private static final class Segment {
+
+        volatile Table table = new Table(MIN_SEGMENT_CAPACITY);
+        int size;
+        //tables replaced by a resize; a concurrent reader may still be probing them, so they are freed only with the segment.
+        final List<Table> retired = new ArrayList<>();
+
+        synchronized boolean putIfAbsent(long key, long value, long hash) {
+            Table t = table;
+            int idx = (int) hash & t.mask;
+            while (true) {
+                long slot = t.address + (long) idx * SLOT_SIZE;
+                if (UNSAFE.getLong(slot + 8) == 0) {
+                    break;
+                }
+                if (UNSAFE.getLong(slot) == key) {
+                    return false;
+                }
+                idx = (idx + 1) & t.mask;
+            }
+            if ((size + 1) * 4L > t.capacity * 3L) {
+                t = resize(t);
+            }
+            insert(t, key, value + 1, hash);
+            size++;
+            return true;
+        }
+
+        private Table resize(Table old) {
+            Table grown = new Table(old.capacity << 1);
+            for (int i = 0; i < old.capacity; i++) {
+                long slot = old.address + (long) i * SLOT_SIZE;
+                long value = UNSAFE.getLong(slot + 8);
+                if (value != 0) {
+                    long key = UNSAFE.getLong(slot);
+                    insert(grown, key, value, OffHeapMemory.mix(key));
+                }
+            }
+            retired.add(old);
+            table = grown;
+            return grown;
+        }
+
+        private static void insert(Table t, long key, long storedValue, long hash) {
+            int idx = (int) hash & t.mask;
+            while (UNSAFE.getLong(t.address + (long) idx * SLOT_SIZE + 8) != 0) {
+                idx = (idx + 1) & t.mask;
+            }
+            long slot = t.address + (long) idx * SLOT_SIZE;
+            UNSAFE.putLong(slot, key);
+            UNSAFE.putOrderedLong(null, slot + 8, storedValue);
+        }
+
+        synchronized void free() {
+            for (Table t : retired) {
+                OffHeapMemory.free(t.address);
+            }
+            retired.clear();
+            OffHeapMemory.free(table.address);
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.dragons.neo4j.index;
+
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+
+/**
+ * Thin wrapper around {@link Unsafe} used by the off-heap index tables.
+ * Memory returned by {@link #allocate(long)} is zeroed and must be released with {@link #free(long)}.
+ */
+final class OffHeapMemory {
+
+    static final Unsafe UNSAFE;
+
+    static {
+        try {
+            Field field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            UNSAFE = (Unsafe) field.get(null);
+        } catch (Exception e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private OffHeapMemory() {
+    }
+
+    static long allocate(long bytes) {
+        long address = UNSAFE.allocateMemory(bytes);
+        UNSAFE.setMemory(address, bytes, (byte) 0);
+        return address;
+    }
+
+    static void free(long address) {
+        UNSAFE.freeMemory(address);
+    }
+
+    /**
+     * murmur3 64-bit finalizer, spreads the bits of a key before it is masked into a slot.
+     */
+    static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    /**
+     * 64-bit FNV-1a over a byte slice, finalized with {@link #mix(long)}.
+     */
+    static long hash(byte[] bytes, int offset, int length) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = offset; i < offset + length; i++) {
+            h ^= bytes[i] & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+}
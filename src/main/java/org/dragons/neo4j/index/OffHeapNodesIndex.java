@@ -0,0 +1,98 @@
+package org.dragons.neo4j.index;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Nodes index kept outside of the java heap.
+ * Numeric id properties are stored in a primitive {@code long -> long} table, any other id property is
+ * stored by its UTF-8 bytes. Inserts may run concurrently from any number of threads, lookups are lock-free.
+ */
+public class OffHeapNodesIndex implements NodesIndexAPI {
+
+    private final Map<String, LabelTables> index = new ConcurrentHashMap<>();
+
+    @Override
+    public void prepareIndex(String label) {
+        index.computeIfAbsent(label, l -> new LabelTables());
+    }
+
+    @Override
+    public void addNodeToIndex(String label, Object idPropertyValue, long id) {
+        LabelTables tables = index.computeIfAbsent(label, l -> new LabelTables());
+        if (idPropertyValue instanceof Number) {
+            tables.longKeys.putIfAbsent(((Number) idPropertyValue).longValue(), id);
+        } else {
+            byte[] bytes = idPropertyValue.toString().getBytes(StandardCharsets.UTF_8);
+            tables.bytesKeys.putIfAbsent(bytes, 0, bytes.length, id);
+        }
+    }
+
+    @Override
+    public long getNodeId(String label, Object idPropertyValue) {
+        LabelTables tables = index.get(label);
+        if (tables == null) {
+            return -1;
+        }
+        return getNodeId(tables, idPropertyValue);
+    }
+
+    @Override
+    public long[] getNodeIds(String label, Object[] idPropertyValues) {
+        long[] ids = new long[idPropertyValues.length];
+        LabelTables tables = index.get(label);
+        for (int i = 0; i < idPropertyValues.length; i++) {
+            ids[i] = tables == null || idPropertyValues[i] == null ? -1 : getNodeId(tables, idPropertyValues[i]);
+        }
+        return ids;
+    }
+
+    private static long getNodeId(LabelTables tables, Object idPropertyValue) {
+        if (idPropertyValue instanceof Number) {
+            return tables.longKeys.get(((Number) idPropertyValue).longValue());
+        }
+        byte[] bytes = idPropertyValue.toString().getBytes(StandardCharsets.UTF_8);
+        return tables.bytesKeys.get(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Looks up a string id property by its UTF-8 bytes, without building a String.
+     */
+    public long getNodeId(String label, byte[] bytes, int offset, int length) {
+        LabelTables tables = index.get(label);
+        if (tables == null) {
+            return -1;
+        }
+        return tables.bytesKeys.get(bytes, offset, length);
+    }
+
+    public long size(String label) {
+        LabelTables tables = index.get(label);
+        if (tables == null) {
+            return 0;
+        }
+        return tables.longKeys.size() + tables.bytesKeys.size();
+    }
+
+    @Override
+    public void persist() {
+        //entries are visible to readers as soon as they are added
+    }
+
+    @Override
+    public void close() {
+        index.values().forEach(LabelTables::free);
+        index.clear();
+    }
+
+    private static final class LabelTables {
+        final OffHeapLongTable longKeys = new OffHeapLongTable();
+        final OffHeapBytesTable bytesKeys = new OffHeapBytesTable();
+
+        void free() {
+            longKeys.free();
+            bytesKeys.free();
+        }
+    }
+}
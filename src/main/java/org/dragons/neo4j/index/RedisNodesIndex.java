@@ -2,30 +2,65 @@ package org.dragons.neo4j.index;
 
 import com.lambdaworks.redis.*;
 import com.lambdaworks.redis.api.StatefulRedisConnection;
+import com.lambdaworks.redis.api.async.RedisAsyncCommands;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by Elad on 5/10/2017.
+ *
+ * Nodes are kept in a redis hash per label, mapping the id property value to the neo4j node id.
+ * Every thread buffers its inserts and sends them as a single HMSET per label once "batchSize" nodes were buffered.
+ * The commands are sent on lettuce's async API, so a thread doesn't wait for redis to answer before buffering the next batch.
+ * Buffered nodes are only visible to lookups after persist() was called.
  */
 public class RedisNodesIndex implements NodesIndexAPI {
 
+    public static final String DEFAULT_URI = "redis://127.0.0.1:6379";
+    public static final int DEFAULT_BATCH_SIZE = 10000;
+
+    //number of sent batches a thread may have in flight before waiting for redis to catch up
+    private static final int MAX_PENDING_BATCHES = 64;
+    private static final String HASH_KEY_FORMAT = "nodes_%s";
+
     private RedisClient redisClient;
     private StatefulRedisConnection<String, String> redisConnection;
-    private final String COMBINED_KEY_FORMAT = "%s_%s";
+    private RedisAsyncCommands<String, String> redisAsync;
+    private final int batchSize;
+
+    private final Queue<WriteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<WriteBuffer> threadBuffer = ThreadLocal.withInitial(this::newBuffer);
+    private final Queue<RedisFuture<String>> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
 
     public RedisNodesIndex() {
-        redisClient = RedisClient.create(RedisURI.create("redis://127.0.0.1:6379"));
+        this(DEFAULT_URI, DEFAULT_BATCH_SIZE);
+    }
+
+    public RedisNodesIndex(String uri, int batchSize) {
+        this.batchSize = batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+        redisClient = RedisClient.create(RedisURI.create(uri != null ? uri : DEFAULT_URI));
         redisConnection = redisClient.connect();
+        redisAsync = redisConnection.async();
     }
 
     @Override
     public void prepareIndex(String label) {
-        //nothing to do for redis (all labels are in the same index)
+        //nothing to do for redis (hashes are created by the first insert)
     }
 
     @Override
     public void addNodeToIndex(String label, Object idPropertyValue, long id) {
         if(redisConnection.isOpen()) {
-            redisConnection.sync().set(getCombinedKey(label, idPropertyValue), getValue(idPropertyValue));
+            threadBuffer.get().add(getHashKey(label), idPropertyValue.toString(), Long.toString(id));
         }
     }
 
@@ -34,32 +69,127 @@ public class RedisNodesIndex implements NodesIndexAPI {
         if(!redisConnection.isOpen()) {
             return -1;
         }
-        String nodeId = redisConnection.sync().get(getCombinedKey(label, idPropertyValue));
+        String nodeId = redisConnection.sync().hget(getHashKey(label), idPropertyValue.toString());
         if(nodeId != null) {
             return Long.parseLong(nodeId);
         }
         return -1;
     }
 
+    /**
+     * Resolves all the values with a single HMGET on the label's hash.
+     */
+    @Override
+    public long[] getNodeIds(String label, Object[] idPropertyValues) {
+        long[] ids = new long[idPropertyValues.length];
+        List<String> fields = new ArrayList<>(idPropertyValues.length);
+        for (Object value : idPropertyValues) {
+            if (value != null) {
+                fields.add(value.toString());
+            }
+        }
+        if (!redisConnection.isOpen() || fields.isEmpty()) {
+            Arrays.fill(ids, -1);
+            return ids;
+        }
+        List<KeyValue<String, String>> found = redisConnection.sync().hmget(getHashKey(label), fields.toArray(new String[fields.size()]));
+        //the reply has an entry per requested field, in order
+        int next = 0;
+        for (int i = 0; i < idPropertyValues.length; i++) {
+            if (idPropertyValues[i] == null) {
+                ids[i] = -1;
+                continue;
+            }
+            KeyValue<String, String> nodeId = found.get(next++);
+            ids[i] = nodeId.hasValue() ? Long.parseLong(nodeId.getValue()) : -1;
+        }
+        return ids;
+    }
+
+    /**
+     * Sends the nodes buffered by all threads, and waits until redis acknowledged every batch sent so far.
+     * Must not be called while other threads are still adding nodes.
+     */
     @Override
     public void persist() {
-        //TODO: wait for all data to flush
+        for (WriteBuffer buffer : buffers) {
+            buffer.flush();
+        }
+        RedisFuture<String> future;
+        while ((future = pending.poll()) != null) {
+            pendingCount.decrementAndGet();
+            await(future);
+        }
     }
 
-    private String getValue(Object value) {
-        return value.toString();
+    private WriteBuffer newBuffer() {
+        WriteBuffer buffer = new WriteBuffer();
+        buffers.add(buffer);
+        return buffer;
     }
 
-    private String getCombinedKey(String label, Object idPropertyValue) {
-        return String.format(COMBINED_KEY_FORMAT,label,idPropertyValue.toString());
+    private void send(String hashKey, Map<String, String> batch) {
+        pending.add(redisAsync.hmset(hashKey, batch));
+        //bounds the memory held by unacknowledged commands
+        int limit = MAX_PENDING_BATCHES * Math.max(1, buffers.size());
+        RedisFuture<String> oldest;
+        if (pendingCount.incrementAndGet() > limit) {
+            while (pendingCount.get() > limit && (oldest = pending.poll()) != null) {
+                pendingCount.decrementAndGet();
+                await(oldest);
+            }
+        }
+    }
+
+    private static void await(RedisFuture<String> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for redis.", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed writing nodes to redis: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private String getHashKey(String label) {
+        return String.format(HASH_KEY_FORMAT, label);
     }
 
     public boolean isOpen() {
         return redisConnection.isOpen();
     }
 
+    @Override
     public void close() {
         redisConnection.close();
         redisClient.shutdown();
     }
+
+    /**
+     * Nodes buffered by a single thread, grouped by hash key.
+     * Synchronized since persist() flushes the buffers of all threads.
+     */
+    private class WriteBuffer {
+
+        private final Map<String, Map<String, String>> batches = new HashMap<>();
+        private int count;
+
+        synchronized void add(String hashKey, String field, String value) {
+            batches.computeIfAbsent(hashKey, k -> new HashMap<>()).put(field, value);
+            if (++count >= batchSize) {
+                flush();
+            }
+        }
+
+        synchronized void flush() {
+            for (Map.Entry<String, Map<String, String>> batch : batches.entrySet()) {
+                if (!batch.getValue().isEmpty()) {
+                    send(batch.getKey(), batch.getValue());
+                }
+            }
+            batches.clear();
+            count = 0;
+        }
+    }
 }
@@ -0,0 +1,288 @@
+package org.dragons.neo4j.index;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A bounded map of keys to long values, admitting new entries by their estimated access frequency (W-TinyLFU).
+ *
+ * New entries enter a small LRU window. An entry leaving the window competes with the least recently used entry
+ * of the main space, and the one that was accessed more often (by a count-min sketch of 4-bit counters, halved
+ * periodically so that old popularity fades) stays. The main space is a segmented LRU: entries accessed again
+ * are promoted from its probation part into its protected part. This keeps hot keys cached even under
+ * long scans of keys that are seen only once.
+ *
+ * The cache is split into segments, each one locked on its own.
+ */
+class TinyLfuCache<K> {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments;
+
+    @SuppressWarnings("unchecked")
+    TinyLfuCache(int maxEntries) {
+        segments = new TinyLfuCache.Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(Math.max(2, maxEntries / SEGMENTS));
+        }
+    }
+
+    /**
+     * @return the value of the key, or -1 if it is not cached. Records an access of the key either way.
+     */
+    long get(K key) {
+        int hash = spread(key.hashCode());
+        Segment segment = segments[(hash >>> 28) & (SEGMENTS - 1)];
+        synchronized (segment) {
+            return segment.get(key, hash);
+        }
+    }
+
+    void put(K key, long value) {
+        int hash = spread(key.hashCode());
+        Segment segment = segments[(hash >>> 28) & (SEGMENTS - 1)];
+        synchronized (segment) {
+            segment.put(key, value, hash);
+        }
+    }
+
+    void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.data.size();
+            }
+        }
+        return size;
+    }
+
+    private static int spread(int hash) {
+        hash = (hash ^ (hash >>> 16)) * 0x45d9f3b;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private static final class Node<K> {
+        final K key;
+        final int hash;
+        long value;
+        int queue;
+        Node<K> prev;
+        Node<K> next;
+
+        Node(K key, int hash, long value) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+        }
+    }
+
+    /**
+     * A circular doubly linked list of nodes, least recently used first.
+     */
+    private static final class Queue<K> {
+        final Node<K> head = new Node<>(null, 0, 0);
+        int size;
+
+        Queue() {
+            head.prev = head;
+            head.next = head;
+        }
+
+        Node<K> first() {
+            return head.next == head ? null : head.next;
+        }
+
+        void addLast(Node<K> node) {
+            node.prev = head.prev;
+            node.next = head;
+            head.prev.next = node;
+            head.prev = node;
+            size++;
+        }
+
+        void remove(Node<K> node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = null;
+            node.next = null;
+            size--;
+        }
+
+        void clear() {
+            head.prev = head;
+            head.next = head;
+            size = 0;
+        }
+    }
+
+    private final class Segment {
+
+        final int maxEntries;
+        final int maxWindow;
+        final int maxProtected;
+        final Map<K, Node<K>> data = new HashMap<>();
+        final Queue<K> window = new Queue<>();
+        final Queue<K> probation = new Queue<>();
+        final Queue<K> protectedQueue = new Queue<>();
+        final FrequencySketch sketch;
+
+        Segment(int maxEntries) {
+            this.maxEntries = maxEntries;
+            this.maxWindow = Math.max(1, maxEntries / 100);
+            this.maxProtected = (maxEntries - maxWindow) * 4 / 5;
+            this.sketch = new FrequencySketch(maxEntries);
+        }
+
+        long get(K key, int hash) {
+            sketch.increment(hash);
+            Node<K> node = data.get(key);
+            if (node == null) {
+                return -1;
+            }
+            onAccess(node);
+            return node.value;
+        }
+
+        void put(K key, long value, int hash) {
+            Node<K> node = data.get(key);
+            if (node != null) {
+                node.value = value;
+                onAccess(node);
+                return;
+            }
+            node = new Node<>(key, hash, value);
+            node.queue = WINDOW;
+            data.put(key, node);
+            window.addLast(node);
+
+            if (window.size > maxWindow) {
+                //the window's eldest entry moves to the main space, where it has to earn its place
+                Node<K> candidate = window.first();
+                window.remove(candidate);
+                candidate.queue = PROBATION;
+                probation.addLast(candidate);
+                if (data.size() > maxEntries) {
+                    evict(candidate);
+                }
+            }
+        }
+
+        private void evict(Node<K> candidate) {
+            Node<K> victim = probation.first();
+            if (victim == candidate) {
+                victim = protectedQueue.first();
+            }
+            if (victim == null || sketch.frequency(candidate.hash) > sketch.frequency(victim.hash)) {
+                remove(victim == null ? candidate : victim);
+            } else {
+                remove(candidate);
+            }
+        }
+
+        private void onAccess(Node<K> node) {
+            if (node.queue == WINDOW) {
+                window.remove(node);
+                window.addLast(node);
+            } else if (node.queue == PROBATION) {
+                probation.remove(node);
+                node.queue = PROTECTED;
+                protectedQueue.addLast(node);
+                if (protectedQueue.size > maxProtected) {
+                    Node<K> demoted = protectedQueue.first();
+                    protectedQueue.remove(demoted);
+                    demoted.queue = PROBATION;
+                    probation.addLast(demoted);
+                }
+            } else {
+                protectedQueue.remove(node);
+                protectedQueue.addLast(node);
+            }
+        }
+
+        private void remove(Node<K> node) {
+            if (node.queue == WINDOW) {
+                window.remove(node);
+            } else if (node.queue == PROBATION) {
+                probation.remove(node);
+            } else {
+                protectedQueue.remove(node);
+            }
+            data.remove(node.key);
+        }
+
+        void clear() {
+            data.clear();
+            window.clear();
+            probation.clear();
+            protectedQueue.clear();
+        }
+    }
+
+    /**
+     * A count-min sketch of 4 rows of 4-bit counters, packed 16 per long.
+     * All counters are halved once the number of increments reaches 10 times the capacity.
+     */
+    private static final class FrequencySketch {
+
+        private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        private final long[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            int length = Integer.highestOneBit(Math.max(16, capacity) - 1) << 1;
+            table = new long[length];
+            mask = length - 1;
+            sampleSize = 10 * Math.max(16, capacity);
+        }
+
+        int frequency(int hash) {
+            int frequency = 15;
+            for (int i = 0; i < SEEDS.length; i++) {
+                long h = index(hash, i);
+                frequency = Math.min(frequency, (int) ((table[(int) (h >>> 4) & mask] >>> ((h & 15) << 2)) & 15));
+            }
+            return frequency;
+        }
+
+        void increment(int hash) {
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                long h = index(hash, i);
+                int slot = (int) (h >>> 4) & mask;
+                long shift = (h & 15) << 2;
+                if (((table[slot] >>> shift) & 15) < 15) {
+                    table[slot] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions == sampleSize) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (table[i] >>> 1) & RESET_MASK;
+                }
+                additions /= 2;
+            }
+        }
+
+        private static long index(int hash, int row) {
+            long h = (hash + SEEDS[row]) * SEEDS[row];
+            return h ^ (h >>> 32);
+        }
+    }
+}
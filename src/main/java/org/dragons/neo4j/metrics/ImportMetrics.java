@@ -0,0 +1,115 @@
+package org.dragons.neo4j.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and per-stage latency histograms of the current import, shared by all the import threads.
+ * Every stage is timed per batch, both overall and per group (the label of the nodes or relationships being imported).
+ * The metrics are reset when an import by configuration starts.
+ */
+public class ImportMetrics {
+
+    public enum Stage {
+        READ,       //reading the lines of a batch from the file
+        PARSE,      //tokenizing and decoding a batch
+        LOOKUP,     //resolving the relationship endpoints of a batch through the nodes index
+        WRITE,      //creating the nodes or relationships of a batch in its transaction
+        COMMIT      //committing the transaction of a batch
+    }
+
+    private static volatile ImportMetrics current = new ImportMetrics();
+
+    //added once per committed batch
+    private final AtomicLong nodes = new AtomicLong();
+    private final AtomicLong relationships = new AtomicLong();
+    private final LongAdder failed = new LongAdder();
+    private final Map<Stage, LatencyHistogram> stages = newStages();
+    private final Map<String, Map<Stage, LatencyHistogram>> groups = new ConcurrentHashMap<>();
+
+    public static ImportMetrics get() {
+        return current;
+    }
+
+    public static ImportMetrics reset() {
+        current = new ImportMetrics();
+        return current;
+    }
+
+    /**
+     * @return the nodes count, including the given ones
+     */
+    public long countNodes(long count) {
+        return nodes.addAndGet(count);
+    }
+
+    /**
+     * @return the relationships count, including the given ones
+     */
+    public long countRelationships(long count) {
+        return relationships.addAndGet(count);
+    }
+
+    public void countFailed() {
+        failed.increment();
+    }
+
+    public long getNodes() {
+        return nodes.get();
+    }
+
+    public long getRelationships() {
+        return relationships.get();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public void record(Stage stage, String group, long nanos) {
+        stages.get(stage).record(nanos);
+        groups.computeIfAbsent(group, g -> newStages()).get(stage).record(nanos);
+    }
+
+    public LatencyHistogram getStage(Stage stage) {
+        return stages.get(stage);
+    }
+
+    /**
+     * @return the counters, then every stage overall, then every stage of every group
+     */
+    public List<MetricsRow> rows() {
+        List<MetricsRow> rows = new ArrayList<>();
+        rows.add(MetricsRow.counter("nodes", getNodes()));
+        rows.add(MetricsRow.counter("relationships", getRelationships()));
+        rows.add(MetricsRow.counter("failed", getFailed()));
+        for (Stage stage : Stage.values()) {
+            rows.add(MetricsRow.stage(stage.name().toLowerCase(), "all", stages.get(stage)));
+        }
+        List<String> names = new ArrayList<>(groups.keySet());
+        Collections.sort(names);
+        for (String group : names) {
+            for (Stage stage : Stage.values()) {
+                LatencyHistogram histogram = groups.get(group).get(stage);
+                if (histogram.getCount() > 0) {
+                    rows.add(MetricsRow.stage(stage.name().toLowerCase(), group, histogram));
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static Map<Stage, LatencyHistogram> newStages() {
+        Map<Stage, LatencyHistogram> stages = new EnumMap<>(Stage.class);
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new LatencyHistogram());
+        }
+        return stages;
+    }
+}
@@ -0,0 +1,309 @@
+package org.dragons.neo4j.metrics;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Live progress of the current import, readable from other sessions while the import runs:
+ * the phase, the bytes and rows of every input file, the depths of the queues between stages,
+ * and throughput over the last 10 and 60 seconds (sampled once a second by a background thread).
+ * The estimated time to complete the phase is the bytes left in the phase's files divided by the bytes rate of the last minute.
+ */
+public class ImportStatus {
+
+    public static final String PHASE_IDLE = "idle";
+    public static final String PHASE_NODES = "nodes";
+    public static final String PHASE_RELATIONSHIPS = "relationships";
+    public static final String PHASE_DONE = "done";
+
+    private static final int SAMPLES = 61;
+
+    private static volatile ImportStatus current = new ImportStatus();
+
+    private volatile String phase = PHASE_IDLE;
+    private final long startMillis = System.currentTimeMillis();
+    private final Map<String, FileProgress> files = new ConcurrentHashMap<>();
+    private final Map<String, IntSupplier> queues = new ConcurrentHashMap<>();
+    private final AtomicLong queueIds = new AtomicLong();
+    //the start time of every phase, in the order the phases started
+    private final Map<String, Long> phaseStarts = new LinkedHashMap<>();
+
+    //a sample per second of the total rows and bytes, the latest one at sampleIndex
+    private final long[] sampleRows = new long[SAMPLES];
+    private final long[] sampleBytes = new long[SAMPLES];
+    private int sampleIndex = -1;
+    private int samplesCount;
+    private ScheduledExecutorService sampler;
+
+    public static ImportStatus get() {
+        return current;
+    }
+
+    /**
+     * Starts tracking a new import, sampling its throughput until {@link #finish}.
+     */
+    public static ImportStatus start() {
+        current.stopSampling();
+        ImportStatus status = new ImportStatus();
+        status.sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "import-status-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        status.sampler.scheduleAtFixedRate(status::sample, 0, 1, TimeUnit.SECONDS);
+        current = status;
+        return status;
+    }
+
+    public synchronized void setPhase(String phase) {
+        this.phase = phase;
+        phaseStarts.put(phase, System.currentTimeMillis());
+    }
+
+    public String getPhase() {
+        return phase;
+    }
+
+    /**
+     * @return how long the phase took (or has taken so far), 0 if it did not start
+     */
+    public synchronized long getPhaseMillis(String phase) {
+        Long start = phaseStarts.get(phase);
+        if (start == null) {
+            return 0;
+        }
+        long end = System.currentTimeMillis();
+        boolean next = false;
+        for (Map.Entry<String, Long> phaseStart : phaseStarts.entrySet()) {
+            if (next) {
+                end = phaseStart.getValue();
+                break;
+            }
+            next = phaseStart.getKey().equals(phase);
+        }
+        return end - start;
+    }
+
+    public void finish() {
+        setPhase(PHASE_DONE);
+        stopSampling();
+    }
+
+    private void stopSampling() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+        }
+    }
+
+    /**
+     * Registers a file before it is imported, so it counts in the phase's ETA while it waits for a thread.
+     */
+    public FileProgress addFile(String file, String kind) {
+        return files.computeIfAbsent(file, f -> new FileProgress(f, kind));
+    }
+
+    /**
+     * @return the progress of the file, or null if it is not a tracked file
+     */
+    public FileProgress getFile(String file) {
+        return files.get(file);
+    }
+
+    /**
+     * @return an id to remove the queue by
+     */
+    public String addQueue(String name, IntSupplier depth) {
+        String id = String.format("%s #%d", name, queueIds.incrementAndGet());
+        queues.put(id, depth);
+        return id;
+    }
+
+    public void removeQueue(String id) {
+        queues.remove(id);
+    }
+
+    private synchronized void sample() {
+        sampleIndex = (sampleIndex + 1) % SAMPLES;
+        sampleRows[sampleIndex] = ImportMetrics.get().getNodes() + ImportMetrics.get().getRelationships();
+        long bytes = 0;
+        for (FileProgress file : files.values()) {
+            bytes += file.getBytes();
+        }
+        sampleBytes[sampleIndex] = bytes;
+        samplesCount = Math.min(SAMPLES, samplesCount + 1);
+    }
+
+    /**
+     * @return the growth per second of the samples over the last seconds (or as many as were taken)
+     */
+    private synchronized double rate(long[] samples, int seconds) {
+        int span = Math.min(seconds, samplesCount - 1);
+        if (span <= 0) {
+            return 0;
+        }
+        return (samples[sampleIndex] - samples[(sampleIndex - span + SAMPLES) % SAMPLES]) / (double) span;
+    }
+
+    public List<StatusRow> rows() {
+
+        List<StatusRow> rows = new ArrayList<>();
+
+        StatusRow total = new StatusRow();
+        total.kind = "import";
+        total.name = String.format("started at %tF %<tT", startMillis);
+        total.state = phase;
+        total.rows = ImportMetrics.get().getNodes() + ImportMetrics.get().getRelationships();
+        total.rowsPerSecond10s = rate(sampleRows, 10);
+        total.rowsPerSecond60s = rate(sampleRows, 60);
+        long phaseBytesLeft = 0;
+        long activeParts = 0;
+        for (FileProgress file : files.values()) {
+            total.bytes += file.getBytes();
+            total.totalBytes += file.totalBytes;
+            activeParts += file.running.get();
+            if (file.kind.equals(phase)) {
+                phaseBytesLeft += Math.max(0, file.totalBytes - file.getBytes());
+            }
+        }
+        total.activeParts = activeParts;
+        double bytesRate = rate(sampleBytes, 60);
+        if (bytesRate > 0 && (PHASE_NODES.equals(phase) || PHASE_RELATIONSHIPS.equals(phase))) {
+            total.etaSeconds = (long) Math.ceil(phaseBytesLeft / bytesRate);
+        }
+        rows.add(total);
+
+        for (FileProgress file : files.values()) {
+            StatusRow row = new StatusRow();
+            row.kind = "file";
+            row.name = file.file;
+            row.state = file.getState();
+            row.rows = file.getRows();
+            row.bytes = file.getBytes();
+            row.totalBytes = file.totalBytes;
+            row.activeParts = (long) file.running.get();
+            rows.add(row);
+        }
+
+        for (Map.Entry<String, IntSupplier> queue : queues.entrySet()) {
+            StatusRow row = new StatusRow();
+            row.kind = "queue";
+            row.name = queue.getKey();
+            row.state = phase;
+            row.queueDepth = (long) queue.getValue().getAsInt();
+            rows.add(row);
+        }
+
+        return rows;
+    }
+
+    /**
+     * Progress of a single input file, possibly imported in several parts (ranges) at once.
+     */
+    public static class FileProgress {
+
+        final String file;
+        final String kind;
+        final long totalBytes;
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final AtomicInteger parts = new AtomicInteger(1);
+        private final AtomicInteger finished = new AtomicInteger();
+        private final AtomicInteger running = new AtomicInteger();
+        private volatile boolean failed;
+
+        FileProgress(String file, String kind) {
+            this.file = file;
+            this.kind = kind;
+            this.totalBytes = new File(file).length();
+        }
+
+        public void setParts(int parts) {
+            this.parts.set(parts);
+        }
+
+        public void partStarted() {
+            running.incrementAndGet();
+        }
+
+        public void partFinished(boolean failed) {
+            running.decrementAndGet();
+            finished.incrementAndGet();
+            this.failed |= failed;
+        }
+
+        public void countRows(long count) {
+            rows.add(count);
+        }
+
+        public long getRows() {
+            return rows.sum();
+        }
+
+        /**
+         * Counts bytes read without {@link #track}, e.g. by a decompressor.
+         */
+        public void countBytes(long read) {
+            bytes.add(read);
+        }
+
+        public long getBytes() {
+            return bytes.sum();
+        }
+
+        public String getState() {
+            if (failed) {
+                return "failed";
+            }
+            if (finished.get() >= parts.get()) {
+                return "done";
+            }
+            return running.get() > 0 ? "running" : "pending";
+        }
+
+        /**
+         * @return the stream, counting the bytes read from it as the file's progress
+         */
+        public InputStream track(InputStream in) {
+            return new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b >= 0) {
+                        bytes.increment();
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    int read = super.read(buffer, offset, length);
+                    if (read > 0) {
+                        bytes.add(read);
+                    }
+                    return read;
+                }
+
+                @Override
+                public long skip(long n) throws IOException {
+                    long skipped = super.skip(n);
+                    bytes.add(skipped);
+                    return skipped;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.dragons.neo4j.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts durations in buckets of a quarter of a power of two nanoseconds (so within 12.5% of the recorded values).
+ * Recording costs a few atomic increments and no allocation, so it can be called by many threads for every batch.
+ * Percentiles are approximated by the middle of their bucket.
+ */
+public class LatencyHistogram {
+
+    private final AtomicLongArray buckets = new AtomicLongArray(256);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        nanos = Math.max(1, nanos);
+        buckets.incrementAndGet(bucket(nanos));
+        count.increment();
+        totalNanos.add(nanos);
+        long max;
+        while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+            //retry until the maximum is at least this duration
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    public double getMeanNanos() {
+        long count = getCount();
+        return count == 0 ? 0 : getTotalNanos() / (double) count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     */
+    public double getPercentileNanos(double percentile) {
+        long[] counts = new long[buckets.length()];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0) {
+                return Math.min(middle(i), getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    private static int bucket(long nanos) {
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent < 2) {
+            return (int) nanos;
+        }
+        //the two bits after the highest one select the quarter
+        return exponent * 4 + (int) ((nanos >>> (exponent - 2)) & 3);
+    }
+
+    private static double middle(int bucket) {
+        if (bucket < 8) {
+            return bucket;
+        }
+        int exponent = bucket / 4;
+        long width = 1L << (exponent - 2);
+        return (4 + bucket % 4) * width + width / 2.0;
+    }
+}
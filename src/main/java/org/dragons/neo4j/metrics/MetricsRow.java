@@ -0,0 +1,36 @@
+package org.dragons.neo4j.metrics;
+
+/**
+ * A row of the import metrics procedure. Counters have only a count, stages also have the durations of their batches.
+ */
+public class MetricsRow {
+    public String metric;
+    public String group;
+    public long count;
+    public double totalMillis;
+    public double meanMillis;
+    public double p50Millis;
+    public double p99Millis;
+    public double maxMillis;
+
+    static MetricsRow counter(String metric, long count) {
+        MetricsRow row = new MetricsRow();
+        row.metric = metric;
+        row.group = "all";
+        row.count = count;
+        return row;
+    }
+
+    static MetricsRow stage(String metric, String group, LatencyHistogram histogram) {
+        MetricsRow row = new MetricsRow();
+        row.metric = metric;
+        row.group = group;
+        row.count = histogram.getCount();
+        row.totalMillis = histogram.getTotalNanos() / 1e6;
+        row.meanMillis = histogram.getMeanNanos() / 1e6;
+        row.p50Millis = histogram.getPercentileNanos(50) / 1e6;
+        row.p99Millis = histogram.getPercentileNanos(99) / 1e6;
+        row.maxMillis = histogram.getMaxNanos() / 1e6;
+        return row;
+    }
+}
@@ -0,0 +1,22 @@
+package org.dragons.neo4j.metrics;
+
+/**
+ * A row of the import status procedure.
+ * "import" rows describe the whole import, "file" rows a single input file and "queue" rows the depth of a queue
+ * between stages. Columns that do not apply to a row are 0 (-1 for an unknown ETA), or null for activeParts and queueDepth.
+ */
+public class StatusRow {
+    public String kind;
+    public String name;
+    public String state;
+    public long rows;
+    public long bytes;
+    public long totalBytes;
+    public double rowsPerSecond10s;
+    public double rowsPerSecond60s;
+    public long etaSeconds = -1;
+    /** parts (files or file ranges) being imported, on "import" and "file" rows */
+    public Long activeParts;
+    /** items waiting in the queue, on "queue" rows */
+    public Long queueDepth;
+}
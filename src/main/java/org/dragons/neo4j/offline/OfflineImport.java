@@ -0,0 +1,267 @@
+package org.dragons.neo4j.offline;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dragons.neo4j.config.GraphBatchWorkConfig;
+import org.dragons.neo4j.config.ImportConfig;
+import org.dragons.neo4j.config.NodeBatchWorkConfig;
+import org.dragons.neo4j.config.NodeImportConfig;
+import org.dragons.neo4j.config.RelationshipBatchWorkConfig;
+import org.dragons.neo4j.config.RelationshipImportConfig;
+import org.dragons.neo4j.index.OffHeapNodesIndex;
+import org.dragons.neo4j.procs.ImportProcedures;
+import org.dragons.neo4j.utils.AdaptiveBatcher;
+import org.dragons.neo4j.utils.ColumnPlan;
+import org.dragons.neo4j.utils.CompressedInput;
+import org.dragons.neo4j.utils.CsvTokenizer;
+import org.dragons.neo4j.utils.ImportPipeline;
+import org.dragons.neo4j.utils.LineSource;
+import org.dragons.neo4j.utils.WorkFunctions;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.unsafe.batchinsert.BatchInserter;
+import org.neo4j.unsafe.batchinsert.BatchInserters;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Imports the nodes and relationships of an import configuration into a new store, offline, with the Neo4j
+ * BatchInserter: no transactions, locks or transaction logs. Meant for the initial load of an empty database,
+ * incremental loads into a running database go through the procedures.
+ *
+ * Relationships endpoints are resolved through an off-heap map of the ids of the nodes inserted by the same run,
+ * by their "id" property. Schema indexes on the nodes' "id" property and on their "indexedProps" are created once
+ * all the data is inserted, and populated when the store is shut down.
+ * Nodes and relationships are inserted by a single thread; with "parserThreads", rows are parsed ahead by other threads.
+ *
+ * Usage: OfflineImport &lt;store dir&gt; &lt;configuration file&gt; [batch size] [page cache memory, e.g. 4g]
+ */
+public class OfflineImport {
+
+    private static final int DEFAULT_BATCH_SIZE = 10000;
+    private static final long PROGRESS_ELEMENTS = 1000000;
+
+    private final BatchInserter inserter;
+    private final ImportConfig importConfig;
+    private final int batchSize;
+    private final OffHeapNodesIndex nodeIds = new OffHeapNodesIndex();
+    private final WorkFunctions wf = new WorkFunctions();
+    //label -> properties to create schema indexes on, once the data is inserted
+    private final Map<String, Set<String>> schemaIndexes = new LinkedHashMap<>();
+    private long nodes;
+    private long relationships;
+    private long failed;
+
+    public OfflineImport(BatchInserter inserter, ImportConfig importConfig, int batchSize) {
+        this.inserter = inserter;
+        this.importConfig = importConfig;
+        this.batchSize = batchSize;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        if (args.length < 2) {
+            System.out.println("Usage: OfflineImport <store dir> <configuration file> [batch size] [page cache memory, e.g. 4g]");
+            return;
+        }
+
+        File storeDir = new File(args[0]);
+        if (new File(storeDir, "neostore").exists()) {
+            System.err.printf("%s already contains a store. The offline import creates new stores only, use the procedures to load into an existing one.%n", storeDir);
+            System.exit(1);
+        }
+
+        ImportConfig importConfig = new ObjectMapper().readValue(new File(args[1]), ImportConfig.class);
+        int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_BATCH_SIZE;
+        Map<String, String> storeConfig = new HashMap<>();
+        if (args.length > 3) {
+            storeConfig.put("dbms.pagecache.memory", args[3]);
+        }
+
+        long start = System.nanoTime();
+        BatchInserter inserter = BatchInserters.inserter(storeDir, storeConfig);
+        OfflineImport offlineImport = new OfflineImport(inserter, importConfig, batchSize);
+        try {
+            offlineImport.run();
+        } finally {
+            System.out.println("Shutting down the store and populating its schema indexes...");
+            inserter.shutdown();
+            offlineImport.nodeIds.close();
+        }
+
+        System.out.printf("Import summary: %d nodes, %d relationships, %d failed records, total time: %d ms.%n",
+                offlineImport.nodes,
+                offlineImport.relationships,
+                offlineImport.failed,
+                (System.nanoTime() - start) / 1000000);
+    }
+
+    public void run() throws Exception {
+
+        for (NodeImportConfig nic : importConfig.nodes) {
+            nodeIds.prepareIndex(nic.label);
+            if (nic.indexedProps != null) {
+                schemaIndexes.computeIfAbsent(nic.label, label -> new LinkedHashSet<>()).addAll(nic.indexedProps);
+            }
+            for (String file : ImportProcedures.getMatchingFiles(nic.rootDir, nic.namePattern)) {
+                GraphBatchWorkConfig config = new NodeBatchWorkConfig();
+                config.setBaseImportConfig(nic);
+                importFile(Paths.get(nic.rootDir, file).toString(), config);
+            }
+        }
+
+        System.out.printf("Finished inserting nodes: %d nodes.%n", nodes);
+
+        for (RelationshipImportConfig ric : importConfig.relationships) {
+            for (String file : ImportProcedures.getMatchingFiles(ric.rootDir, ric.namePattern)) {
+                GraphBatchWorkConfig config = new RelationshipBatchWorkConfig();
+                config.setBaseImportConfig(ric);
+                importFile(Paths.get(ric.rootDir, file).toString(), config);
+            }
+        }
+
+        System.out.printf("Finished inserting relationships: %d relationships.%n", relationships);
+
+        for (Map.Entry<String, Set<String>> index : schemaIndexes.entrySet()) {
+            for (String property : index.getValue()) {
+                inserter.createDeferredSchemaIndex(Label.label(index.getKey())).on(property).create();
+                System.out.printf("Created schema index on :%s(%s).%n", index.getKey(), property);
+            }
+        }
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getRelationships() {
+        return relationships;
+    }
+
+    /**
+     * @return records that were not inserted, e.g. relationships whose endpoints were not imported
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    private void importFile(String file, GraphBatchWorkConfig config) throws Exception {
+
+        System.out.printf("Importing elements of type %s from file %s...%n", config.getBaseImportConfig().label, file);
+
+        config.setBatchSize(batchSize);
+        config.setParserThreads(importConfig.parserThreads);
+        boolean relationshipsFile = config instanceof RelationshipBatchWorkConfig;
+        WorkFunctions.WorkFunc<List<String>, GraphBatchWorkConfig, List<WorkFunctions.ParsedRow>> parse = wf.getBatchParseFunction(config.getClass());
+
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                CompressedInput.open(file, CompressedInput.detect(file), importConfig.decompressionThreads, bytes -> { })))) {
+
+            if (!ColumnPlan.readHeader(LineSource.of(br), config)) {
+                return;
+            }
+
+            int keyColumn = config.getColumnPlan().getKeyColumn();
+            if (!relationshipsFile && keyColumn >= 0) {
+                //the same index the procedures use to find endpoints imported before them
+                schemaIndexes.computeIfAbsent(config.getBaseImportConfig().label, label -> new LinkedHashSet<>())
+                        .add(config.getColumnPlan().getColumns()[keyColumn].propertyName);
+            }
+
+            if (config.getParserThreads() > 0) {
+                ImportPipeline pipeline = new ImportPipeline(config.getParserThreads(), config.getParserThreads() * 2);
+                pipeline.run(file, LineSource.of(br), config, new AdaptiveBatcher(batchSize, null), lines -> -1, parse,
+                        (rows, readMark) -> insert(file, rows, config));
+            } else {
+                List<String> lines = new ArrayList<>(batchSize);
+                String line;
+                while ((line = CsvTokenizer.readRecord(br, config.getBaseImportConfig().quote)) != null) {
+                    lines.add(line);
+                    if (lines.size() == batchSize) {
+                        insert(file, parse.apply(lines, config), config);
+                        lines.clear();
+                    }
+                }
+                insert(file, parse.apply(lines, config), config);
+            }
+        }
+    }
+
+    private void insert(String file, List<WorkFunctions.ParsedRow> rows, GraphBatchWorkConfig config) {
+        if (config instanceof RelationshipBatchWorkConfig) {
+            insertRelationships(file, rows, config);
+        } else {
+            insertNodes(file, rows, config);
+        }
+    }
+
+    private void insertNodes(String file, List<WorkFunctions.ParsedRow> rows, GraphBatchWorkConfig config) {
+
+        String labelName = config.getBaseImportConfig().label;
+        Label label = Label.label(labelName);
+        int keyColumn = config.getColumnPlan().getKeyColumn();
+
+        for (WorkFunctions.ParsedRow row : rows) {
+            try {
+                long id = inserter.createNode(properties(row, config), label);
+                if (keyColumn >= 0 && row.values[keyColumn] != null) {
+                    nodeIds.addNodeToIndex(labelName, row.values[keyColumn], id);
+                }
+                if (++nodes % PROGRESS_ELEMENTS == 0) {
+                    System.out.printf("Inserted %d nodes.%n", nodes);
+                }
+            } catch (Exception e) {
+                failedRecord(file, row, e);
+            }
+        }
+    }
+
+    private void insertRelationships(String file, List<WorkFunctions.ParsedRow> rows, GraphBatchWorkConfig config) {
+
+        RelationshipImportConfig ric = (RelationshipImportConfig) config.getBaseImportConfig();
+        RelationshipType type = RelationshipType.withName(ric.label);
+
+        for (WorkFunctions.ParsedRow row : rows) {
+            try {
+                long startNode = row.startKey == null ? -1 : nodeIds.getNodeId(ric.startNodeLabel, row.startKey);
+                long endNode = row.endKey == null ? -1 : nodeIds.getNodeId(ric.endNodeLabel, row.endKey);
+                if (startNode < 0 || endNode < 0) {
+                    throw new IllegalArgumentException(String.format("Node (:%s {id: %s}) was not imported.",
+                            startNode < 0 ? ric.startNodeLabel : ric.endNodeLabel,
+                            startNode < 0 ? row.startKey : row.endKey));
+                }
+                inserter.createRelationship(startNode, endNode, type, properties(row, config));
+                if (++relationships % PROGRESS_ELEMENTS == 0) {
+                    System.out.printf("Inserted %d relationships.%n", relationships);
+                }
+            } catch (Exception e) {
+                failedRecord(file, row, e);
+            }
+        }
+    }
+
+    private static Map<String, Object> properties(WorkFunctions.ParsedRow row, GraphBatchWorkConfig config) {
+        ColumnPlan.Column[] columns = config.getColumnPlan().getColumns();
+        Map<String, Object> properties = new HashMap<>(columns.length * 2);
+        for (ColumnPlan.Column column : columns) {
+            if (column.property && row.values[column.index] != null) {
+                properties.put(column.propertyName, row.values[column.index]);
+            }
+        }
+        return properties;
+    }
+
+    private void failedRecord(String file, WorkFunctions.ParsedRow row, Exception e) {
+        failed++;
+        System.err.printf("Failed inserting record %s of file %s: %s%n", row.line, file, e.getMessage());
+    }
+}
@@ -3,37 +3,81 @@ package org.dragons.neo4j.procs;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.tools.ant.DirectoryScanner;
 import org.dragons.neo4j.config.*;
+import org.dragons.neo4j.index.NearCacheNodesIndex;
+import org.dragons.neo4j.index.NodeLookupCache;
 import org.dragons.neo4j.index.NodesIndexMngr;
-import org.dragons.neo4j.utils.ThreadPoolService;
+import org.dragons.neo4j.metrics.ImportMetrics;
+import org.dragons.neo4j.metrics.ImportStatus;
+import org.dragons.neo4j.metrics.MetricsRow;
+import org.dragons.neo4j.metrics.StatusRow;
+import org.dragons.neo4j.utils.AdaptiveBatcher;
+import org.dragons.neo4j.utils.ColumnPlan;
+import org.dragons.neo4j.utils.CompressedInput;
+import org.dragons.neo4j.utils.CsvTokenizer;
+import org.dragons.neo4j.utils.FileScheduler;
+import org.dragons.neo4j.utils.FileChunks;
+import org.dragons.neo4j.utils.ImportCheckpoint;
+import org.dragons.neo4j.utils.ImportPipeline;
+import org.dragons.neo4j.utils.LineSource;
+import org.dragons.neo4j.utils.OverlappedWriter;
+import org.dragons.neo4j.utils.RelationshipPartitioner;
+import org.dragons.neo4j.utils.RelationshipSorter;
+import org.dragons.neo4j.utils.ResolvedRelationship;
 import org.dragons.neo4j.utils.WorkFunctions;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.ResourceIterator;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.logging.Log;
 import org.neo4j.procedure.Context;
+import org.neo4j.procedure.Description;
 import org.neo4j.procedure.Mode;
 import org.neo4j.procedure.Name;
 import org.neo4j.procedure.Procedure;
 
 import java.io.BufferedReader;
+import java.io.FileInputStream;
 import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedHashMap;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Created by eladw on 09/03/2017.
  */
 public class ImportProcedures {
 
-    private static long totalNodesCount = 0;
-    private static long totalEdgesCount = 0;
     private static long globalStartTime = 0;
     private static long edgesStartTime = 0;
 
+    private int parserThreads = 0;
+    private int commitsInFlight = 0;
+    private long fileChunkSize = 0;
+    private int decompressionThreads = 1;
+    private int maxThreads = 1;
+    private int sortBufferSize = 1000000;
+    private String sortTempDir = null;
+    private BatchSizingConfig batchSizing = null;
+    private boolean kernelWrites = false;
+    private ImportCheckpoint checkpoint = null;
+
     @SuppressWarnings("WeakerAccess")
     @Context
     public GraphDatabaseAPI graphDatabaseAPI;
@@ -97,6 +141,10 @@ public class ImportProcedures {
                                       @Name("Batch size for a single transaction") long batchSize) {
 
         globalStartTime = System.nanoTime();
+        edgesStartTime = 0;
+        ImportMetrics.reset();
+        ImportStatus.start().setPhase(ImportStatus.PHASE_NODES);
+        FileScheduler scheduler = null;
 
         try {
 
@@ -106,16 +154,37 @@ public class ImportProcedures {
 
             ImportConfig importConfig = om.readValue(jsonData, ImportConfig.class);
 
-            int maxThreads = importConfig.maxThreads == 0 ? (Runtime.getRuntime().availableProcessors() / 2) : importConfig.maxThreads;
+            maxThreads = importConfig.maxThreads == 0 ? (Runtime.getRuntime().availableProcessors() / 2) : importConfig.maxThreads;
 
             log.info("Max threads number set to: %d", maxThreads);
 
+            parserThreads = importConfig.parserThreads;
+            commitsInFlight = importConfig.commitsInFlight;
+            fileChunkSize = importConfig.fileChunkSize;
+            decompressionThreads = importConfig.decompressionThreads;
+            sortBufferSize = importConfig.sortBufferSize;
+            sortTempDir = importConfig.sortTempDir;
+            batchSizing = importConfig.batchSizing;
+            kernelWrites = importConfig.kernelWrites;
+
+            if (importConfig.checkpointFile != null) {
+                checkpoint = new ImportCheckpoint(importConfig.checkpointFile, importConfig.resume);
+                if (checkpoint.isResumed()) {
+                    log.info("Resuming import from checkpoint %s.", importConfig.checkpointFile);
+                }
+            }
+
             ThreadsExecutionType nodesExecutionType = getExecutionType(importConfig.nodesParallelLevel);
 
+            if (nodesExecutionType == ThreadsExecutionType.PARTITIONED) {
+                log.info("Nodes cannot be partitioned, all nodes files will be imported in parallel.");
+                nodesExecutionType = ThreadsExecutionType.ALL;
+            }
+
             //initialize nodes index
             if(importConfig.nodeIdsCache != null) {
                 try {
-                     NodesIndexMngr.initNodesIndex(importConfig.nodeIdsCache);
+                     NodesIndexMngr.initNodesIndex(importConfig);
                 } catch (Exception e) {
                     log.warn("Failed initializing cache of type %s.%n%s%n%s%n%s",
                                                     importConfig.nodeIdsCache,
@@ -125,81 +194,311 @@ public class ImportProcedures {
                 }
             }
 
-            ThreadPoolService nodesThreadsPool = new ThreadPoolService(maxThreads);
+            //both phases share the same threads
+            scheduler = FileScheduler.acquire(maxThreads);
 
-            for (NodeImportConfig nic : importConfig.nodes) {
+            ThreadsExecutionType relsExecutionType = getExecutionType(importConfig.relsParallelLevel);
 
-                if (nodesExecutionType == ThreadsExecutionType.GROUP) {
-                    //spawn new thread for this nodes group. files inside this group will be imported sequentially.
-                    nodesThreadsPool.addTask(ThreadsExecutionType.GROUP, () -> loadNodesGroup(nic, (int) batchSize, null));
-                } else {
-                    //groups will be ran sequentially.
-                    //parallelism inside each group will occur if the configuration does not specify "none".
-                    loadNodesGroup(nic, (int) batchSize, nodesThreadsPool.getExecutor(nodesExecutionType));
+            //endpoints missing from the nodes index are searched in the database, and cached for the rest of the import
+            NodesIndexMngr.initLookupCache(importConfig.lookupCacheSize);
 
-                    //if the execution type is in-group, wait for all threads to complete
-                    if (nodesExecutionType == ThreadsExecutionType.IN_GROUP) {
-                        nodesThreadsPool.shutdownExecutor(ThreadsExecutionType.IN_GROUP);
-                    }
+            if (importConfig.overlapPhases) {
+                overlappedLoad(importConfig, (int) batchSize, scheduler, nodesExecutionType, relsExecutionType);
+            } else {
+                phasedLoad(importConfig, (int) batchSize, scheduler, nodesExecutionType, relsExecutionType);
+            }
+
+            log.info("Finished importing edges: %d edges (approx.) were successfully imported in %d ms.",ImportMetrics.get().getRelationships(), getEdgesElapsedTimeSeconds());
+
+            if (NodesIndexMngr.getNodesIndex() instanceof NearCacheNodesIndex) {
+                NearCacheNodesIndex nearCache = (NearCacheNodesIndex) NodesIndexMngr.getNodesIndex();
+                log.info("Nodes index near cache: %d hits, %d misses.", nearCache.getHits(), nearCache.getMisses());
+            }
+
+            NodeLookupCache lookupCache = NodesIndexMngr.getLookupCache();
+            if (lookupCache != null) {
+                log.info("Nodes lookup cache: %d hits, %d misses, %d evictions, %d entries.",
+                        lookupCache.getHits(),
+                        lookupCache.getMisses(),
+                        lookupCache.getEvictions(),
+                        lookupCache.size());
+            }
+
+        } catch (Exception e) {
+            log.warn("Failed importing with configuration file " + configFilePath);
+            log.warn("Failed with exception %s: %s%n%s",
+                                                        e,
+                                                        e.getMessage(),
+                                                        Arrays.toString(e.getStackTrace()));
+        }
+
+        if (scheduler != null) {
+            scheduler.release();
+        }
+
+        //the graph may change before the next import
+        NodesIndexMngr.clearLookupCache();
+        closeCheckpoint();
+        ImportStatus.get().finish();
+
+        log.info("Import summary: %d nodes, %d edges, total time: %d ms.", ImportMetrics.get().getNodes(), ImportMetrics.get().getRelationships(), getElapsedTimeSeconds());
+        log.info("Nodes import rate: %d nodes per second", getNodesRate());
+        log.info("Edges import rate: %d edges per second", getEdgesRate());
+        log.info("Failed records: %d", ImportMetrics.get().getFailed());
+        for (MetricsRow row : ImportMetrics.get().rows()) {
+            if (row.maxMillis > 0 && "all".equals(row.group)) {
+                log.info("Stage %s: %d batches, total %.0f ms, mean %.2f ms, p50 %.2f ms, p99 %.2f ms, max %.2f ms.",
+                        row.metric, row.count, row.totalMillis, row.meanMillis, row.p50Millis, row.p99Millis, row.maxMillis);
+            }
+        }
+    }
+
+    /**
+     * Imports all the nodes groups, flushes the nodes index, then imports all the relationships groups.
+     */
+    private void phasedLoad(ImportConfig importConfig, int batchSize, FileScheduler scheduler,
+                            ThreadsExecutionType nodesExecutionType, ThreadsExecutionType relsExecutionType) throws Exception {
+
+        FileScheduler.Group nodesTasks = nodesExecutionType == ThreadsExecutionType.NONE ? null : scheduler.newGroup();
+
+        for (NodeImportConfig nic : importConfig.nodes) {
+
+            if (nodesExecutionType == ThreadsExecutionType.GROUP) {
+                //spawn new thread for this nodes group. files inside this group will be imported sequentially.
+                nodesTasks.execute(getGroupSize(nic), () -> loadNodesGroup(nic, batchSize, null));
+            } else {
+                //groups will be ran sequentially.
+                //parallelism inside each group will occur if the configuration does not specify "none".
+                loadNodesGroup(nic, batchSize, nodesTasks);
+
+                //if the execution type is in-group, wait for all threads to complete
+                if (nodesExecutionType == ThreadsExecutionType.IN_GROUP) {
+                    nodesTasks.await();
                 }
             }
+        }
 
-            //wait for all nodes threads to finish
-            nodesThreadsPool.shutdownExecutor(nodesExecutionType);
+        //wait for all nodes threads to finish
+        if (nodesTasks != null) {
+            nodesTasks.await();
+        }
 
-            if(NodesIndexMngr.getNodesIndex() != null) {
-                log.info("Flushing nodes index...");
-                try {
-                    NodesIndexMngr.getNodesIndex().persist();
-                    log.info("Flushing nodes index completed successfully.");
-                } catch (Exception e) {
-                    log.info("Flushing nodes index failed with exception %s%n%s%n%s%n", e, e.getMessage(), e.getStackTrace());
+        if(NodesIndexMngr.getNodesIndex() != null) {
+            log.info("Flushing nodes index...");
+            try {
+                NodesIndexMngr.getNodesIndex().persist();
+                log.info("Flushing nodes index completed successfully.");
+            } catch (Exception e) {
+                log.info("Flushing nodes index failed with exception %s%n%s%n%s%n", e, e.getMessage(), e.getStackTrace());
+            }
+        }
+
+        log.info("Finished importing nodes: %d nodes (approx.) were successfully imported in %d ms.",ImportMetrics.get().getNodes(), getElapsedTimeSeconds());
+
+        log.info("Starting relationships import...");
+
+        ImportStatus.get().setPhase(ImportStatus.PHASE_RELATIONSHIPS);
+
+        edgesStartTime = System.nanoTime();
+
+        FileScheduler.Group relsTasks = relsExecutionType == ThreadsExecutionType.NONE ? null : scheduler.newGroup();
+
+        for (RelationshipImportConfig ric : importConfig.relationships) {
+
+            if(relsExecutionType == ThreadsExecutionType.PARTITIONED) {
+                //groups will be ran sequentially, each one waits for its partitions to complete.
+                partitionedLoadRelsGroup(ric, batchSize, scheduler);
+            } else if(relsExecutionType == ThreadsExecutionType.GROUP) {
+                //spawn new thread for this nodes group. files inside this group will be imported sequentially.
+                relsTasks.execute(getGroupSize(ric), () -> loadRelsGroup(ric, batchSize, null));
+            } else {
+                //groups will be ran sequentially.
+                //parallelism inside each group will occur if the configuration does not specify "none".
+                loadRelsGroup(ric, batchSize, relsTasks);
+
+                if(relsExecutionType == ThreadsExecutionType.IN_GROUP) {
+                    //if the execution type is in-group, wait for all threads to complete
+                    relsTasks.await();
                 }
             }
+        }
+
+        //Wait for all threads to complete
+        if (relsTasks != null) {
+            relsTasks.await();
+        }
+    }
 
-            log.info("Finished importing nodes: %d nodes (approx.) were successfully imported in %d ms.",totalNodesCount, getElapsedTimeSeconds());
+    /**
+     * Starts every relationships group as soon as the nodes groups of its start and end labels were imported and
+     * flushed to the nodes index, rather than after all the nodes groups, so the two phases overlap.
+     * All the groups whose nodes are ready run at once on the scheduler's threads. The files of a group are imported
+     * in parallel with "all" and "in-group", one after the other otherwise, and partitioned with "partitioned".
+     */
+    private void overlappedLoad(ImportConfig importConfig, int batchSize, FileScheduler scheduler,
+                                ThreadsExecutionType nodesExecutionType, ThreadsExecutionType relsExecutionType) {
 
-            log.info("Starting relationships import...");
+        //coordinators only start groups and wait for their tasks, they are not counted in maxThreads
+        ExecutorService coordinators = Executors.newCachedThreadPool();
 
-            edgesStartTime = System.nanoTime();
+        try {
+            Map<String, List<CompletableFuture<Void>>> labelsImported = new HashMap<>();
+            List<CompletableFuture<Void>> nodeGroups = new ArrayList<>();
 
-            ThreadsExecutionType relsExecutionType = getExecutionType(importConfig.relsParallelLevel);
+            for (NodeImportConfig nic : importConfig.nodes) {
+                CompletableFuture<Void> imported = startGroup(String.format("nodes group %s", nic.label), CompletableFuture.completedFuture(null), coordinators,
+                        () -> loadGroupOnScheduler(scheduler, nodesExecutionType, getGroupSize(nic), tasks -> loadNodesGroup(nic, batchSize, tasks)));
+                labelsImported.computeIfAbsent(nic.label, label -> new ArrayList<>()).add(imported);
+            }
 
-            ThreadPoolService relsThreadsPool = new ThreadPoolService(maxThreads);
+            //a label is flushed once, after all its groups: the index must not be flushed while nodes are added to it
+            Map<String, CompletableFuture<Void>> labelsFlushed = new HashMap<>();
+            for (Map.Entry<String, List<CompletableFuture<Void>>> label : labelsImported.entrySet()) {
+                CompletableFuture<Void> flushed = CompletableFuture.allOf(label.getValue().toArray(new CompletableFuture[0]))
+                        .thenRunAsync(() -> flushNodesIndex(label.getKey()), coordinators);
+                labelsFlushed.put(label.getKey(), flushed);
+                nodeGroups.add(flushed);
+            }
 
-            for (RelationshipImportConfig ric : importConfig.relationships) {
+            CompletableFuture<Void> nodesImported = CompletableFuture.allOf(nodeGroups.toArray(new CompletableFuture[0])).thenRun(() -> {
+                log.info("Finished importing nodes: %d nodes (approx.) were successfully imported in %d ms.", ImportMetrics.get().getNodes(), getElapsedTimeSeconds());
+                ImportStatus.get().setPhase(ImportStatus.PHASE_RELATIONSHIPS);
+            });
 
-                if(relsExecutionType == ThreadsExecutionType.GROUP) {
-                    //spawn new thread for this nodes group. files inside this group will be imported sequentially.
-                    relsThreadsPool.addTask(ThreadsExecutionType.GROUP,() -> loadRelsGroup(ric, (int) batchSize, null));
-                } else {
-                    //groups will be ran sequentially.
-                    //parallelism inside each group will occur if the configuration does not specify "none".
-                    loadRelsGroup(ric, (int) batchSize, relsThreadsPool.getExecutor(relsExecutionType));
+            List<CompletableFuture<Void>> groups = new ArrayList<>(nodeGroups);
+            groups.add(nodesImported);
 
-                    if(relsExecutionType == ThreadsExecutionType.IN_GROUP) {
-                        //if the execution type is in-group, wait for all threads to complete
-                        relsThreadsPool.shutdownExecutor(relsExecutionType);
+            for (RelationshipImportConfig ric : importConfig.relationships) {
+                //relationships between nodes imported before this run do not wait at all
+                CompletableFuture<Void> endpointsImported = CompletableFuture.allOf(
+                        labelsFlushed.getOrDefault(ric.startNodeLabel, CompletableFuture.completedFuture(null)),
+                        labelsFlushed.getOrDefault(ric.endNodeLabel, CompletableFuture.completedFuture(null)));
+
+                groups.add(startGroup(String.format("relationships group %s", ric.label), endpointsImported, coordinators, () -> {
+                    log.info("Nodes of labels %s and %s are imported, starting relationships group %s.", ric.startNodeLabel, ric.endNodeLabel, ric.label);
+                    if (edgesStartTime == 0) {
+                        edgesStartTime = System.nanoTime();
                     }
-                }
+                    if (relsExecutionType == ThreadsExecutionType.PARTITIONED) {
+                        partitionedLoadRelsGroup(ric, batchSize, scheduler);
+                    } else {
+                        loadGroupOnScheduler(scheduler, relsExecutionType, getGroupSize(ric), tasks -> loadRelsGroup(ric, batchSize, tasks));
+                    }
+                }));
             }
 
-            //Wait for all threads to complete
-            relsThreadsPool.shutdownExecutor(relsExecutionType);
+            CompletableFuture.allOf(groups.toArray(new CompletableFuture[0])).join();
 
-            log.info("Finished importing edges: %d edges (approx.) were successfully imported in %d ms.",totalEdgesCount, getEdgesElapsedTimeSeconds());
+        } finally {
+            coordinators.shutdown();
+        }
+    }
 
-        } catch (Exception e) {
-            log.warn("Failed importing with configuration file " + configFilePath);
-            log.warn("Failed with exception %s: %s%n%s",
-                                                        e,
-                                                        e.getMessage(),
-                                                        Arrays.toString(e.getStackTrace()));
+    @FunctionalInterface
+    private interface GroupWork {
+        void run() throws Exception;
+    }
+
+    /**
+     * Runs the work of a group on a coordinator once the given future completes.
+     * A failed group is logged, and completes normally so the groups depending on it still run (as in a phased import).
+     */
+    private CompletableFuture<Void> startGroup(String group, CompletableFuture<Void> after, ExecutorService coordinators, GroupWork work) {
+        return after.thenRunAsync(() -> {
+            try {
+                work.run();
+            } catch (Exception e) {
+                log.warn("Failed importing %s: %s%n%s%n%s", group, e, e.getMessage(), Arrays.toString(e.getStackTrace()));
+            }
+        }, coordinators);
+    }
+
+    /**
+     * Imports a group on the scheduler's threads: its files as separate tasks with "all" and "in-group",
+     * otherwise the whole group as a single task. Returns once the group is imported.
+     */
+    private void loadGroupOnScheduler(FileScheduler scheduler, ThreadsExecutionType executionType, long groupSize,
+                                      Consumer<FileScheduler.Group> load) throws InterruptedException {
+        FileScheduler.Group tasks = scheduler.newGroup();
+        if (executionType == ThreadsExecutionType.ALL || executionType == ThreadsExecutionType.IN_GROUP) {
+            load.accept(tasks);
+        } else {
+            tasks.execute(groupSize, () -> load.accept(null));
         }
+        tasks.await();
+    }
 
-        log.info("Import summary: %d nodes, %d edges, total time: %d ms.", totalNodesCount, totalEdgesCount, getElapsedTimeSeconds());
-        log.info("Nodes import rate: %d nodes per second", getNodesRate());
-        log.info("Edges import rate: %d edges per second", getEdgesRate());
+    private void flushNodesIndex(String label) {
+        if (NodesIndexMngr.getNodesIndex() != null) {
+            try {
+                NodesIndexMngr.getNodesIndex().persist(label);
+            } catch (Exception e) {
+                log.warn("Flushing nodes index of label %s failed with exception %s%n%s%n%s%n", label, e, e.getMessage(), Arrays.toString(e.getStackTrace()));
+            }
+        }
+    }
+
+    private void closeCheckpoint() {
+        if (checkpoint != null) {
+            try {
+                checkpoint.close();
+            } catch (IOException e) {
+                log.warn("Failed closing import checkpoint: %s", e);
+            }
+            checkpoint = null;
+        }
+    }
+
+    /**
+     * @return the committed progress of a part of the import, or null if the import is not checkpointed
+     */
+    private ImportCheckpoint.Part checkpointPart(String name) {
+        return checkpoint == null ? null : checkpoint.part(name);
+    }
+
+    /**
+     * Moves the reader past the records committed by the import being resumed.
+     */
+    private void skipCommitted(String source, ImportCheckpoint.Part part) throws IOException {
+        if (part != null && part.getOffset() > 0) {
+            log.info("Resuming %s at offset %d, after %d committed records.", source, part.getOffset(), part.getRecords());
+            part.skipCommitted();
+        }
+    }
+
+    /**
+     * @return whether the sorted or partitioned group was imported by the import being resumed.
+     * A group interrupted in the middle is imported again from its start, as its rows are not written in the order of the files.
+     */
+    private boolean groupImported(RelationshipImportConfig ric, ImportCheckpoint.Part part) {
+        if (part == null) {
+            return false;
+        }
+        if (part.isDone()) {
+            log.info("Relationships group %s was imported before resuming, skipping it.", ric.label);
+            return true;
+        }
+        if (part.isStarted()) {
+            log.warn("Relationships group %s was interrupted, importing it again from its start. Its relationships committed before the interruption are duplicated.", ric.label);
+        }
+        part.start();
+        return false;
+    }
+
+    private static String groupPartName(RelationshipImportConfig ric) {
+        return "group " + Paths.get(ric.rootDir, ric.namePattern);
+    }
+
+    @Procedure(mode = Mode.READ)
+    @Description("Counters and per-stage batch latencies of the last import, overall and per nodes or relationships group.")
+    public Stream<MetricsRow> importMetrics() {
+        return ImportMetrics.get().rows().stream();
+    }
+
+    @Procedure(mode = Mode.READ)
+    @Description("Progress of the running import: its phase, throughput and ETA, the bytes and rows of every file, and the depths of the queues between stages.")
+    public Stream<StatusRow> importStatus() {
+        return ImportStatus.get().rows().stream();
     }
 
 
@@ -211,31 +510,303 @@ public class ImportProcedures {
         //initialize nodes index
 
 
-        ThreadPoolService nodesThreadsPool = new ThreadPoolService(maxThreads.intValue());
-
-
     }
 
-    private void loadRelsGroup(RelationshipImportConfig ric, int batchSize, ExecutorService executor) {
+    private void loadRelsGroup(RelationshipImportConfig ric, int batchSize, FileScheduler.Group tasks) {
+
+        if (ric.sortByStartNode) {
+            if (NodesIndexMngr.getNodesIndex() != null) {
+                sortedLoadRelsGroup(ric, batchSize, tasks);
+                return;
+            }
+            log.warn("Sorting relationships of type %s requires a nodes index. The files will be imported unsorted.", ric.label);
+        }
 
         String[] files = getMatchingFiles(ric.rootDir, ric.namePattern);
 
         log.info("Starting to load %d files...",files.length);
 
         Arrays.stream(files).forEach(f -> log.info("Will load file %s", Paths.get(ric.rootDir, f).toString()));
+        Arrays.stream(files).forEach(f -> ImportStatus.get().addFile(Paths.get(ric.rootDir, f).toString(), ImportStatus.PHASE_RELATIONSHIPS));
 
         for (String file :
                 files) {
 
-            if (executor != null) {
-                executor.execute(() -> batchLoadRelationships(Paths.get(ric.rootDir, file).toString(), ric, batchSize));
+            if (tasks != null && fileChunkSize > 0) {
+                loadFileInChunks(Paths.get(ric.rootDir, file).toString(), newRelationshipsWorkConfig(ric, batchSize), tasks);
+            } else if (tasks != null) {
+                tasks.execute(Paths.get(ric.rootDir, file).toFile().length(), () -> batchLoadRelationships(Paths.get(ric.rootDir, file).toString(), ric, batchSize));
             } else {
                 batchLoadRelationships(Paths.get(ric.rootDir, file).toString(), ric, batchSize);
             }
         }
     }
 
-    private void loadNodesGroup(NodeImportConfig nic, int batchSize, ExecutorService executor) {
+    /**
+     * Resolves the endpoints of all the group's rows through the nodes index, sorts the rows by start node id
+     * (spilling sorted runs to disk when the buffer is full), and writes the merged stream in consecutive batches.
+     * Consecutive batches touch mostly disjoint start nodes, so they can be written in parallel with little lock contention.
+     */
+    private void sortedLoadRelsGroup(RelationshipImportConfig ric, int batchSize, FileScheduler.Group tasks) {
+
+        ImportCheckpoint.Part part = checkpointPart(groupPartName(ric));
+        if (groupImported(ric, part)) {
+            return;
+        }
+
+        List<GraphBatchWorkConfig> configs = new ArrayList<>();
+
+        try (RelationshipSorter sorter = new RelationshipSorter(getSortTempDir(), sortBufferSize)) {
+
+            resolveRelsGroup(ric, batchSize, configs, sorter);
+
+            log.info("Sorted %d relationships of type %s (%d runs spilled to disk).", sorter.getCount(), ric.label, sorter.getRunsCount());
+
+            Iterator<ResolvedRelationship> sorted = sorter.sorted();
+            AdaptiveBatcher batcher = new AdaptiveBatcher(batchSize, batchSizing);
+            int maxInFlight = tasks == null ? 1 : maxThreads * 2;
+            Semaphore inFlight = new Semaphore(maxInFlight);
+            AtomicBoolean failed = new AtomicBoolean();
+            String source = String.format("sorted group %s", ric.label);
+
+            while (sorted.hasNext()) {
+
+                List<ResolvedRelationship> batch = nextBatch(sorted, batcher.nextBatchSize());
+
+                if (tasks != null) {
+                    //bounds the number of batches held in memory
+                    inFlight.acquire();
+                    tasks.execute(batch.size(), () -> {
+                        try {
+                            writeResolvedBatch(source, batch, configs, batcher);
+                        } catch (RuntimeException e) {
+                            failed.set(true);
+                            throw e;
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                } else {
+                    writeResolvedBatch(source, batch, configs, batcher);
+                }
+            }
+
+            if (part != null) {
+                //the group is recorded once all its batches committed
+                inFlight.acquire(maxInFlight);
+                if (!failed.get()) {
+                    part.finished();
+                }
+            }
+
+        } catch (Exception e) {
+            log.warn("Failed sorting relationships of type %s: %s%n%s%n%s", ric.label, e, e.getMessage(),
+                                                            Arrays.toString(e.getStackTrace()));
+        }
+    }
+
+    /**
+     * Resolves the endpoints of all the group's rows through the nodes index, and partitions the rows by ranges of node ids.
+     * Each partition is written by a single thread, and no two partitions share a node, so the threads never wait
+     * for each other's locks. Relationships crossing partitions are written afterwards by the calling thread.
+     */
+    private void partitionedLoadRelsGroup(RelationshipImportConfig ric, int batchSize, FileScheduler scheduler) throws InterruptedException {
+
+        if (NodesIndexMngr.getNodesIndex() == null) {
+            log.warn("Partitioning relationships of type %s requires a nodes index. The files will be imported in parallel.", ric.label);
+            FileScheduler.Group files = scheduler.newGroup();
+            loadRelsGroup(ric, batchSize, files);
+            files.await();
+            return;
+        }
+
+        ImportCheckpoint.Part part = checkpointPart(groupPartName(ric));
+        if (groupImported(ric, part)) {
+            return;
+        }
+
+        List<GraphBatchWorkConfig> configs = new ArrayList<>();
+
+        try (RelationshipPartitioner partitioner = new RelationshipPartitioner(getSortTempDir())) {
+
+            resolveRelsGroup(ric, batchSize, configs, partitioner);
+
+            partitioner.partition(scheduler.getThreads());
+
+            log.info("Partitioned %d relationships of type %s: %d in %d partitions, %d crossing partitions.",
+                    partitioner.getCount(),
+                    ric.label,
+                    partitioner.getCount() - partitioner.getCrossSize(),
+                    partitioner.getPartitionsCount(),
+                    partitioner.getCrossSize());
+
+            FileScheduler.Group partitions = scheduler.newGroup();
+            for (int i = 0; i < partitioner.getPartitionsCount(); i++) {
+                String source = String.format("group %s partition %d", ric.label, i);
+                Iterator<ResolvedRelationship> partition = partitioner.readPartition(i);
+                AdaptiveBatcher batcher = new AdaptiveBatcher(batchSize, batchSizing);
+                partitions.execute(partitioner.getPartitionSize(i), () -> {
+                    while (partition.hasNext()) {
+                        writeResolvedBatch(source, nextBatch(partition, batcher.nextBatchSize()), configs, batcher);
+                    }
+                });
+            }
+
+            partitions.await();
+
+            Iterator<ResolvedRelationship> cross = partitioner.readCrossPartition();
+            String source = String.format("group %s crossing partitions", ric.label);
+            AdaptiveBatcher batcher = new AdaptiveBatcher(batchSize, batchSizing);
+            while (cross.hasNext()) {
+                writeResolvedBatch(source, nextBatch(cross, batcher.nextBatchSize()), configs, batcher);
+            }
+
+            if (part != null) {
+                part.finished();
+            }
+
+        } catch (Exception e) {
+            log.warn("Failed partitioning relationships of type %s: %s%n%s%n%s", ric.label, e, e.getMessage(),
+                                                            Arrays.toString(e.getStackTrace()));
+        }
+    }
+
+    /**
+     * Reads all the files of a relationships group, and passes every row whose endpoints are found to the sink.
+     * Endpoints missing from the nodes index (e.g. nodes imported by an earlier run) are searched in the database,
+     * rows whose endpoints are not found there either are counted as failed.
+     * A work configuration is added to configs for each file, in the order of the rows' source index.
+     */
+    private void resolveRelsGroup(RelationshipImportConfig ric, int batchSize, List<GraphBatchWorkConfig> configs,
+                                  ResolvedRelationship.Sink sink) throws IOException {
+
+        String[] files = getMatchingFiles(ric.rootDir, ric.namePattern);
+
+        log.info("Resolving endpoints of %d files of relationships of type %s...", files.length, ric.label);
+
+        WorkFunctions wf = new WorkFunctions();
+        WorkFunctions.WorkFunc<List<String>, GraphBatchWorkConfig, List<WorkFunctions.ParsedRow>> parse = wf.getBatchParseFunction(RelationshipBatchWorkConfig.class);
+
+        for (int i = 0; i < files.length; i++) {
+
+            String file = Paths.get(ric.rootDir, files[i]).toString();
+            GraphBatchWorkConfig config = newRelationshipsWorkConfig(ric, batchSize);
+            configs.add(config);
+            ImportStatus.FileProgress progress = ImportStatus.get().addFile(file, ImportStatus.PHASE_RELATIONSHIPS);
+            progress.partStarted();
+
+            try (LineSource br = openTracked(file, progress)) {
+
+                if (!ColumnPlan.readHeader(br, config)) {
+                    continue;
+                }
+
+                List<String> lines;
+                while (!(lines = readBatch(br, config, batchSize)).isEmpty()) {
+                    //opened for the first row missing from the index
+                    Transaction tx = null;
+                    try {
+                        for (WorkFunctions.ParsedRow row : parse.apply(lines, config)) {
+                            if (row.startNodeId < 0 || row.endNodeId < 0) {
+                                if (tx == null) {
+                                    tx = graphDatabaseAPI.beginTx();
+                                }
+                                row.startNodeId = wf.findEndpointId(config, ric.startNodeLabel, ric.startNodeMatchPropName, row.startKey, row.startNodeId);
+                                row.endNodeId = wf.findEndpointId(config, ric.endNodeLabel, ric.endNodeMatchPropName, row.endKey, row.endNodeId);
+                                if (row.startNodeId < 0 || row.endNodeId < 0) {
+                                    ImportMetrics.get().countFailed();
+                                    log.debug("Relationship endpoints of record %s in file %s were not found.", row.line, file);
+                                    continue;
+                                }
+                            }
+                            sink.add(new ResolvedRelationship(row.startNodeId, row.endNodeId, i, row.line));
+                        }
+                    } finally {
+                        if (tx != null) {
+                            tx.close();
+                        }
+                    }
+                }
+            } finally {
+                progress.partFinished(false);
+            }
+        }
+    }
+
+    private static List<ResolvedRelationship> nextBatch(Iterator<ResolvedRelationship> relationships, int batchSize) {
+        List<ResolvedRelationship> batch = new ArrayList<>(batchSize);
+        while (relationships.hasNext() && batch.size() < batchSize) {
+            batch.add(relationships.next());
+        }
+        return batch;
+    }
+
+    private void writeResolvedBatch(String source, List<ResolvedRelationship> batch, List<GraphBatchWorkConfig> configs,
+                                    AdaptiveBatcher batcher) {
+
+        WorkFunctions wf = new WorkFunctions();
+        WorkFunctions.WorkFunc<WorkFunctions.ParsedRow, GraphBatchWorkConfig, WorkFunctions.FunctionResult> write = wf.getWriteFunction(RelationshipBatchWorkConfig.class);
+
+        int[] loaded = {0};
+        writeInTransaction(configs.get(0).getBaseImportConfig().label, batch.size(), batcher, () -> {
+            long stateBytes = 0;
+            for (ResolvedRelationship record : batch) {
+                GraphBatchWorkConfig config = configs.get(record.source);
+                try {
+                    WorkFunctions.ParsedRow row = wf.parseProperties(record.line, config);
+                    RelationshipBatchWorkConfig relConfig = (RelationshipBatchWorkConfig) config;
+                    row.startKey = row.values[relConfig.getStartMatchPropCol()];
+                    row.endKey = row.values[relConfig.getEndMatchPropCol()];
+                    row.startNodeId = record.startNodeId;
+                    row.endNodeId = record.endNodeId;
+                    if (write.apply(row, config) == WorkFunctions.FunctionResult.SUCCESS) {
+                        loaded[0]++;
+                        stateBytes += AdaptiveBatcher.estimateBytes(row);
+                    }
+                } catch (Exception ex) {
+                    logFailedRecord(source, config, record.line, ex);
+                }
+            }
+            return stateBytes;
+        });
+        countLoadedElements(source, configs.get(0), loaded[0]);
+    }
+
+    @FunctionalInterface
+    private interface TransactionWork {
+        /**
+         * @return estimated size of the transaction state
+         */
+        long run();
+    }
+
+    /**
+     * Runs the work in a transaction of its own, and reports the commit time to the batcher.
+     */
+    private void writeInTransaction(String group, int rows, AdaptiveBatcher batcher, TransactionWork work) {
+        long stateBytes;
+        long writeStart = System.nanoTime();
+        Transaction tx = graphDatabaseAPI.beginTx();
+        try {
+            stateBytes = work.run();
+            tx.success();
+        } catch (RuntimeException e) {
+            tx.close();
+            throw e;
+        }
+        long commitStart = System.nanoTime();
+        tx.close();
+        long commitEnd = System.nanoTime();
+        ImportMetrics.get().record(ImportMetrics.Stage.WRITE, group, commitStart - writeStart);
+        ImportMetrics.get().record(ImportMetrics.Stage.COMMIT, group, commitEnd - commitStart);
+        batcher.onCommit(rows, stateBytes, commitEnd - commitStart);
+    }
+
+    private Path getSortTempDir() {
+        return Paths.get(sortTempDir == null ? System.getProperty("java.io.tmpdir") : sortTempDir);
+    }
+
+    private void loadNodesGroup(NodeImportConfig nic, int batchSize, FileScheduler.Group tasks) {
 
         if(nic.indexedProps != null) {
             // Causes deadlocks in Neo4j. Uncomment when solved.
@@ -253,17 +824,65 @@ public class ImportProcedures {
         log.info("Starting to load %d files...",files.length);
 
         Arrays.stream(files).forEach(f -> log.info("Will load file %s", Paths.get(nic.rootDir, f).toString()));
+        Arrays.stream(files).forEach(f -> ImportStatus.get().addFile(Paths.get(nic.rootDir, f).toString(), ImportStatus.PHASE_NODES));
+
+        if (checkpoint != null && checkpoint.isResumed() && NodesIndexMngr.getNodesIndex() != null) {
+            Arrays.stream(files)
+                    .map(f -> Paths.get(nic.rootDir, f).toString())
+                    .filter(checkpoint::hasProgress)
+                    .findFirst()
+                    //entries added before the interruption may not have been flushed, or the index may not be persistent at all
+                    .ifPresent(resumed -> rebuildNodesIndex(resumed, newNodesWorkConfig(nic, batchSize)));
+        }
 
         for (String file :
                 files) {
-            if (executor != null) {
-                executor.execute(() -> batchLoadNodes(Paths.get(nic.rootDir, file).toString(), nic, batchSize));
+            if (tasks != null && fileChunkSize > 0) {
+                loadFileInChunks(Paths.get(nic.rootDir, file).toString(), newNodesWorkConfig(nic, batchSize), tasks);
+            } else if (tasks != null) {
+                tasks.execute(Paths.get(nic.rootDir, file).toFile().length(), () -> batchLoadNodes(Paths.get(nic.rootDir, file).toString(), nic, batchSize));
             } else {
                 batchLoadNodes(Paths.get(nic.rootDir, file).toString(), nic, batchSize);
             }
         }
     }
 
+    /**
+     * Adds the nodes of the label found in the database to the nodes index, so the nodes committed by the import
+     * being resumed are found as relationships endpoints. The nodes are indexed by the property of the key column
+     * of the resumed file's header.
+     */
+    private void rebuildNodesIndex(String file, GraphBatchWorkConfig config) {
+        String label = config.getBaseImportConfig().label;
+        String keyProperty;
+        try (LineSource br = LineSource.of(new BufferedReader(new InputStreamReader(
+                CompressedInput.open(file, CompressedInput.detect(file), decompressionThreads, bytes -> { }))))) {
+            if (!ColumnPlan.readHeader(br, config) || config.getColumnPlan().getKeyColumn() < 0) {
+                log.info("File %s has no key column, not rebuilding the nodes index of label %s.", file, label);
+                return;
+            }
+            keyProperty = config.getColumnPlan().getColumns()[config.getColumnPlan().getKeyColumn()].propertyName;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed reading the header of " + file, e);
+        }
+
+        log.info("Rebuilding nodes index of label %s from the database...", label);
+        long count = 0;
+        try (Transaction tx = graphDatabaseAPI.beginTx();
+             ResourceIterator<Node> nodes = graphDatabaseAPI.findNodes(Label.label(label))) {
+            while (nodes.hasNext()) {
+                Node node = nodes.next();
+                Object key = node.getProperty(keyProperty, null);
+                if (key != null) {
+                    NodesIndexMngr.getNodesIndex().addNodeToIndex(label, key, node.getId());
+                    count++;
+                }
+            }
+            tx.success();
+        }
+        log.info("Added %d nodes of label %s to the nodes index.", count, label);
+    }
+
     private void createIndexes(String label, List<String> props) {
         props.forEach(propName -> {
             graphDatabaseAPI.execute(String.format("CREATE INDEX ON :%s(%S)", label, propName));
@@ -272,116 +891,329 @@ public class ImportProcedures {
     }
 
     private void batchLoadNodes(String file, NodeImportConfig nodesImportConfig, int batchSize) {
+        batchLoadWithConfig(file, newNodesWorkConfig(nodesImportConfig, batchSize));
+    }
+
+    private void batchLoadRelationships(String file, RelationshipImportConfig relsImportConfig, int batchSize) {
+        batchLoadWithConfig(file, newRelationshipsWorkConfig(relsImportConfig, batchSize));
+    }
+
+    private GraphBatchWorkConfig newNodesWorkConfig(NodeImportConfig nodesImportConfig, int batchSize) {
         GraphBatchWorkConfig workConfig = new NodeBatchWorkConfig();
         workConfig.setBaseImportConfig(nodesImportConfig);
         workConfig.setBatchSize(batchSize);
+        workConfig.setParserThreads(parserThreads);
+        workConfig.setCommitsInFlight(commitsInFlight);
+        workConfig.setBatchSizing(batchSizing);
+        workConfig.setKernelWrites(kernelWrites);
         workConfig.setGraphDatabaseAPI(graphDatabaseAPI);
         workConfig.setLog(log);
-        batchLoadWithConfig(file, workConfig);
+        return workConfig;
     }
 
-    private void batchLoadRelationships(String file, RelationshipImportConfig relsImportConfig, int batchSize) {
+    private GraphBatchWorkConfig newRelationshipsWorkConfig(RelationshipImportConfig relsImportConfig, int batchSize) {
         GraphBatchWorkConfig workConfig = new RelationshipBatchWorkConfig();
         workConfig.setBaseImportConfig(relsImportConfig);
         workConfig.setBatchSize(batchSize);
+        workConfig.setParserThreads(parserThreads);
+        workConfig.setCommitsInFlight(commitsInFlight);
+        workConfig.setBatchSizing(batchSizing);
+        workConfig.setKernelWrites(kernelWrites);
         workConfig.setGraphDatabaseAPI(graphDatabaseAPI);
         workConfig.setLog(log);
-        batchLoadWithConfig(file, workConfig);
+        return workConfig;
+    }
+
+    /**
+     * Parses the header once, then submits every line-aligned range of the file as a separate task.
+     * All the ranges share the same work configuration, and each one commits its own transactions.
+     */
+    private void loadFileInChunks(String file, GraphBatchWorkConfig config, FileScheduler.Group tasks) {
+
+        try {
+
+            if (CompressedInput.detect(file) != CompressedInput.Format.NONE) {
+                //compressed bytes cannot be split on line boundaries
+                log.info("File %s is compressed, it will be imported in a single chunk.", file);
+                tasks.execute(Paths.get(file).toFile().length(), () -> batchLoadWithConfig(file, config));
+                return;
+            }
+
+            try (LineSource br = LineSource.of(new BufferedReader(new FileReader(file)))) {
+                if (!ColumnPlan.readHeader(br, config)) {
+                    return;
+                }
+            }
+
+            long dataStart = config.getBaseImportConfig().skipFirst ? FileChunks.firstLineEnd(file) : 0;
+
+            List<FileChunks.Range> ranges = FileChunks.split(file, dataStart, fileChunkSize, config.getBaseImportConfig().quote);
+
+            log.info("File %s was split into %d chunks.", file, ranges.size());
+
+            ImportStatus.get().addFile(file, statusKind(config)).setParts(ranges.size());
+
+            for (FileChunks.Range range :
+                    ranges) {
+                tasks.execute(range.end - range.start, () -> loadRange(file, range, config));
+            }
+
+        } catch (Exception e) {
+            log.warn("Exception in file: %s%n: %s%n%s%n%s", file, e, e.getMessage(),
+                                                            Arrays.toString(e.getStackTrace()));
+        }
+    }
+
+    private void loadRange(String file, FileChunks.Range range, GraphBatchWorkConfig config) {
+
+        ImportStatus.FileProgress progress = ImportStatus.get().addFile(file, statusKind(config));
+        ImportCheckpoint.Part part = checkpointPart(file + "@" + range.start);
+
+        if (part != null && part.isDone()) {
+            log.info("File %s %s was imported before resuming, skipping it.", file, range);
+            progress.partStarted();
+            progress.partFinished(false);
+            return;
+        }
+
+        log.info("Importing elements of type %s from file %s %s started.", config.getBaseImportConfig().label, file, range);
+
+        progress.partStarted();
+        boolean failed = false;
+
+        try (LineSource br = part == null
+                ? LineSource.of(new BufferedReader(new InputStreamReader(progress.track(FileChunks.openRangeStream(file, range)))))
+                : openRangePart(file, range, part, progress)) {
+            loadRows(file, br, config, part);
+        } catch (Exception e) {
+            failed = true;
+            log.warn("Exception in file: %s %s%n: %s%n%s%n%s", file, range, e, e.getMessage(),
+                                                            Arrays.toString(e.getStackTrace()));
+        }
+
+        if (part != null && !failed) {
+            part.finished();
+        }
+        progress.partFinished(failed);
+    }
+
+    /**
+     * Opens the range from the offset committed by the import being resumed, if any.
+     */
+    private LineSource openRangePart(String file, FileChunks.Range range, ImportCheckpoint.Part part,
+                                     ImportStatus.FileProgress progress) throws IOException {
+        long start = Math.max(range.start, part.getOffset());
+        if (start > range.start) {
+            log.info("Resuming file %s %s at offset %d, after %d committed records.", file, range, start, part.getRecords());
+        }
+        return part.open(progress.track(FileChunks.openRangeStream(file, new FileChunks.Range(start, range.end))), start);
     }
 
     private void batchLoadWithConfig(String file, GraphBatchWorkConfig config) {
 
-        String line;
-        int rowCount = 0;
-        int opsCount = 0;
-        Transaction tx = null;
-        WorkFunctions wf = new WorkFunctions();
+        ImportStatus.FileProgress progress = ImportStatus.get().addFile(file, statusKind(config));
+        ImportCheckpoint.Part part = checkpointPart(file);
+
+        if (part != null && part.isDone()) {
+            log.info("File %s was imported before resuming, skipping it.", file);
+            progress.partStarted();
+            progress.partFinished(false);
+            return;
+        }
 
         log.info("Importing elements of type %s from file %s started.", config.getBaseImportConfig().label, file);
 
-        try {
+        progress.partStarted();
+        boolean failed = false;
 
-            BufferedReader br = new BufferedReader(new FileReader(file));
+        try (LineSource br = part == null ? openTracked(file, progress) : part.open(openInput(file, progress), 0)) {
 
-            while ((line = br.readLine()) != null) {
+            if (ColumnPlan.readHeader(br, config)) {
+                skipCommitted(String.format("file %s", file), part);
+                loadRows(file, br, config, part);
+            }
 
-                ++rowCount;
+        } catch (Exception e) {
+            failed = true;
+            log.warn("Exception in file: %s%n: %s%n%s%n%s", file, e, e.getMessage(),
+                                                            Arrays.toString(e.getStackTrace()));
+        }
 
-                if (rowCount == 1) {
+        if (part != null && !failed) {
+            part.finished();
+        }
+        progress.partFinished(failed);
+    }
 
-                    //first row: parse the header
-                    if (config.getBaseImportConfig().header == null) {
+    /**
+     * Opens the file, counting the bytes read as the file's progress in the import status.
+     */
+    private LineSource openTracked(String file, ImportStatus.FileProgress progress) throws IOException {
+        return LineSource.of(new BufferedReader(new InputStreamReader(openInput(file, progress))));
+    }
 
-                        //if there is no header supplied, the first row must be parsed as a header
-                        config.setPropertiesMap(buildPropertyTypeMap(line));
-                        config.getBaseImportConfig().skipFirst = true;
+    /**
+     * Opens the file, decompressing it on threads of its own if it is compressed.
+     * The progress of a compressed file counts its compressed bytes.
+     */
+    private InputStream openInput(String file, ImportStatus.FileProgress progress) throws IOException {
+        CompressedInput.Format format = CompressedInput.detect(file);
+        if (format == CompressedInput.Format.NONE) {
+            return progress.track(new FileInputStream(file));
+        }
+        return CompressedInput.open(file, format, decompressionThreads, progress::countBytes);
+    }
 
-                    } else {
+    private static String statusKind(GraphBatchWorkConfig config) {
+        return config instanceof NodeBatchWorkConfig ? ImportStatus.PHASE_NODES : ImportStatus.PHASE_RELATIONSHIPS;
+    }
 
-                        //build property map based on the given header
-                        config.setPropertiesMap(buildPropertyTypeMap(config.getBaseImportConfig().header));
-                    }
+    /**
+     * @param part records the offset of every committed batch, null if the import is not checkpointed
+     */
+    private void loadRows(String file, LineSource br, GraphBatchWorkConfig config, ImportCheckpoint.Part part) throws Exception {
+        if (config.getParserThreads() > 0) {
+            pipelinedLoad(file, br, config, part);
+        } else {
+            sequentialLoad(file, br, config, part);
+        }
+    }
 
-                    if (config.getBaseImportConfig().skipFirst) {
-                        continue;
-                    }
+    private void sequentialLoad(String file, LineSource br, GraphBatchWorkConfig config, ImportCheckpoint.Part part) throws Exception {
 
+        List<String> lines;
+        WorkFunctions wf = new WorkFunctions();
+        WorkFunctions.WorkFunc<List<String>, GraphBatchWorkConfig, List<WorkFunctions.ParsedRow>> parse = wf.getBatchParseFunction(config.getClass());
+        WorkFunctions.WorkFunc<WorkFunctions.ParsedRow, GraphBatchWorkConfig, WorkFunctions.FunctionResult> function = wf.getWriteFunction(config.getClass());
+        AdaptiveBatcher batcher = new AdaptiveBatcher(config.getBatchSize(), config.getBatchSizing());
+
+        //each batch is parsed (resolving its endpoints at once) and written in a transaction of its own
+        try (OverlappedWriter writer = newOverlappedWriter(file, config)) {
+            while (!(lines = readBatch(br, config, batcher.nextBatchSize())).isEmpty()) {
+                long readEnd = part == null ? -1 : part.batchRead(lines.size());
+                List<WorkFunctions.ParsedRow> rows = parse.apply(lines, config);
+                if (writer != null) {
+                    writer.submit(() -> writeRows(file, rows, config, function, batcher, part, readEnd));
+                } else {
+                    writeRows(file, rows, config, function, batcher, part, readEnd);
                 }
+            }
+        }
+    }
 
-                if (opsCount % config.getBatchSize() == 0) {
+    /**
+     * @return a writer committing batches on a thread of their own, or null to commit on the reading thread
+     */
+    private static OverlappedWriter newOverlappedWriter(String file, GraphBatchWorkConfig config) {
+        return config.getCommitsInFlight() > 0 ? new OverlappedWriter(file, config.getCommitsInFlight()) : null;
+    }
 
-                    if (tx != null) {
-                        tx.success();
-                        tx.close();
-                    }
+    /**
+     * @return the next records of the reader, up to the given batch size (an empty list at the end of the input)
+     */
+    private static List<String> readBatch(LineSource br, GraphBatchWorkConfig config, int batchSize) throws IOException {
+        long start = System.nanoTime();
+        List<String> lines = new ArrayList<>(batchSize);
+        String line;
+        while (lines.size() < batchSize
+                && (line = CsvTokenizer.readRecord(br, config.getBaseImportConfig().quote)) != null) {
+            lines.add(line);
+        }
+        ImportMetrics.get().record(ImportMetrics.Stage.READ, config.getBaseImportConfig().label, System.nanoTime() - start);
+        return lines;
+    }
 
-                    tx = graphDatabaseAPI.beginTx();
+    private void pipelinedLoad(String file, LineSource br, GraphBatchWorkConfig config, ImportCheckpoint.Part part) throws Exception {
 
-                }
+        WorkFunctions wf = new WorkFunctions();
+        WorkFunctions.WorkFunc<WorkFunctions.ParsedRow, GraphBatchWorkConfig, WorkFunctions.FunctionResult> function = wf.getWriteFunction(config.getClass());
+        AdaptiveBatcher batcher = new AdaptiveBatcher(config.getBatchSize(), config.getBatchSizing());
+
+        //each parsed batch is written in a transaction of its own
+        ImportPipeline pipeline = new ImportPipeline(config.getParserThreads(), config.getParserThreads() * 2);
+        try (OverlappedWriter writer = newOverlappedWriter(file, config)) {
+            pipeline.run(file, br, config, batcher,
+                    lines -> part == null ? -1 : part.batchRead(lines.size()),
+                    wf.getBatchParseFunction(config.getClass()),
+                    (batch, readEnd) -> {
+                        if (writer != null) {
+                            writer.submit(() -> writeRows(file, batch, config, function, batcher, part, readEnd));
+                        } else {
+                            writeRows(file, batch, config, function, batcher, part, readEnd);
+                        }
+                    });
+        }
+    }
 
+    /**
+     * Writes the parsed rows in a transaction of their own. The rows written are counted once the transaction commits.
+     * @param readEnd the offset following the rows, recorded in the checkpoint part once they are committed
+     */
+    private void writeRows(String file,
+                           List<WorkFunctions.ParsedRow> rows,
+                           GraphBatchWorkConfig config,
+                           WorkFunctions.WorkFunc<WorkFunctions.ParsedRow, GraphBatchWorkConfig, WorkFunctions.FunctionResult> function,
+                           AdaptiveBatcher batcher,
+                           ImportCheckpoint.Part part,
+                           long readEnd) {
+
+        int[] loaded = {0};
+        writeInTransaction(config.getBaseImportConfig().label, rows.size(), batcher, () -> {
+            long stateBytes = 0;
+            for (WorkFunctions.ParsedRow row : rows) {
                 try {
 
                     //apply function to current element
-                    WorkFunctions.FunctionResult result = wf.getFunction(config.getClass()).apply(line, config);
+                    WorkFunctions.FunctionResult result = function.apply(row, config);
 
                     if (result == WorkFunctions.FunctionResult.SUCCESS) {
-                        opsCount++;
-                        if (config.getBaseImportConfig().getClass().equals(NodeImportConfig.class)) {
-                            totalNodesCount++;
-                        } else {
-                            totalEdgesCount++;
-                        }
-                        if (opsCount % 1000000 == 0) {
-                            log.info("Loaded %d elements of type %s from file %s.", opsCount, config.getBaseImportConfig().label, file);
-                            log.info("Total count (approx.): %d nodes, %d edges.", totalNodesCount, totalEdgesCount);
-                            log.info("Current rate: %d nodes per second, %d edges per second.",getNodesRate(),getEdgesRate());
-                        }
+                        loaded[0]++;
+                        stateBytes += AdaptiveBatcher.estimateBytes(row);
                     }
 
                 } catch (Exception ex) {
-                    log.debug("Exception in file: %s%nFailed processing %s record: %s%n: %s%n%s%n%s",
-                                file,
-                                config.getBaseImportConfig().label,
-                                line,
-                                ex,
-                                ex.getMessage(),
-                                Arrays.toString(ex.getStackTrace()));
+                    logFailedRecord(file, config, row.line, ex);
                 }
-
             }
+            return stateBytes;
+        });
+        countLoadedElements(file, config, loaded[0]);
 
-        } catch (Exception e) {
-            log.warn("Exception in file: %s%n: %s%n%s%n%s", file, e, e.getMessage(),
-                                                            Arrays.toString(e.getStackTrace()));
-        } finally {
-            if (tx != null) {
-                tx.success();
-                tx.close();
-            }
+        if (part != null) {
+            part.batchCommitted(readEnd);
+        }
+    }
+
+    /**
+     * Counts the rows of a committed batch as loaded, so a batch rolled back is never reported.
+     */
+    private void countLoadedElements(String file, GraphBatchWorkConfig config, int loaded) {
+        boolean nodes = config.getBaseImportConfig().getClass().equals(NodeImportConfig.class);
+        long total = nodes ? ImportMetrics.get().countNodes(loaded) : ImportMetrics.get().countRelationships(loaded);
+        ImportStatus.FileProgress progress = ImportStatus.get().getFile(file);
+        if (progress != null) {
+            progress.countRows(loaded);
+        }
+        //logged once for every million nodes (or edges), by whichever batch crosses it
+        if (total / 1000000 != (total - loaded) / 1000000) {
+            log.info("Loaded %d %s, the last ones of type %s from file %s.", total, nodes ? "nodes" : "edges", config.getBaseImportConfig().label, file);
+            log.info("Total count (approx.): %d nodes, %d edges.", ImportMetrics.get().getNodes(), ImportMetrics.get().getRelationships());
+            log.info("Current rate: %d nodes per second, %d edges per second.",getNodesRate(),getEdgesRate());
         }
     }
 
-    private String[] getMatchingFiles(String baseDir, String pattern) {
+    private void logFailedRecord(String file, GraphBatchWorkConfig config, String line, Exception ex) {
+        ImportMetrics.get().countFailed();
+        log.debug("Exception in file: %s%nFailed processing %s record: %s%n: %s%n%s%n%s",
+                    file,
+                    config.getBaseImportConfig().label,
+                    line,
+                    ex,
+                    ex.getMessage(),
+                    Arrays.toString(ex.getStackTrace()));
+    }
+
+    public static String[] getMatchingFiles(String baseDir, String pattern) {
         DirectoryScanner scanner = new DirectoryScanner();
         scanner.setBasedir(baseDir);
         scanner.setCaseSensitive(false);
@@ -390,7 +1222,21 @@ public class ImportProcedures {
         return scanner.getIncludedFiles();
     }
 
+    /**
+     * @return the total bytes of the group's files, so the largest groups are scheduled first
+     */
+    private long getGroupSize(BaseImportConfig config) {
+        long size = 0;
+        for (String file : getMatchingFiles(config.rootDir, config.namePattern)) {
+            size += Paths.get(config.rootDir, file).toFile().length();
+        }
+        return size;
+    }
+
     private ThreadsExecutionType getExecutionType(String value) {
+        if (value == null) {
+            return ThreadsExecutionType.NONE;
+        }
         switch (value) {
             case "none":
                 return ThreadsExecutionType.NONE;
@@ -400,29 +1246,13 @@ public class ImportProcedures {
                 return ThreadsExecutionType.GROUP;
             case "in-group":
                 return ThreadsExecutionType.IN_GROUP;
+            case "partitioned":
+                return ThreadsExecutionType.PARTITIONED;
             default:
                 return ThreadsExecutionType.NONE;
         }
     }
 
-    private Map<String, String> buildPropertyTypeMap(String header) {
-
-        LinkedHashMap<String, String> map = new LinkedHashMap<>();
-
-        for (String token :
-                header.split(",")) {
-            if (token.contains(":")) {
-                String[] split = token.split(":");
-                map.put(split[0], split[1]);
-            } else {
-                map.put(token, "string");
-            }
-        }
-
-        return map;
-
-    }
-
     private static long getElapsedTimeSeconds() {
         return (System.nanoTime() - globalStartTime) / 1000000000;
     }
@@ -439,14 +1269,14 @@ public class ImportProcedures {
         if(getElapsedTimeSeconds() - getEdgesElapsedTimeSeconds() == 0) {
             return 0;
         }
-        return totalNodesCount / (getElapsedTimeSeconds() - getEdgesElapsedTimeSeconds());
+        return ImportMetrics.get().getNodes() / (getElapsedTimeSeconds() - getEdgesElapsedTimeSeconds());
     }
 
     private static long getEdgesRate() {
         if (getEdgesElapsedTimeSeconds() == 0) {
             return 0;
         } else {
-            return totalEdgesCount / getEdgesElapsedTimeSeconds();
+            return ImportMetrics.get().getRelationships() / getEdgesElapsedTimeSeconds();
         }
     }
 }
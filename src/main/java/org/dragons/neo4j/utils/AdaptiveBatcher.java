@@ -0,0 +1,101 @@
+package org.dragons.neo4j.utils;
+
+import org.dragons.neo4j.config.BatchSizingConfig;
+
+import java.lang.reflect.Array;
+
+/**
+ * Chooses the number of rows of the next transaction from the commits measured so far.
+ *
+ * The commit time per row and the transaction state size per row are averaged over the recent commits.
+ * The next batch is sized to commit in about the target time, as long as its estimated transaction state stays
+ * under the maximal size, and always within the configured bounds. To keep a single slow commit from collapsing
+ * the batch size, it changes by at most a factor of two per commit (except for shrinking under the state bound).
+ *
+ * Without a sizing configuration the batch size stays fixed.
+ */
+public class AdaptiveBatcher {
+
+    //weight of the last commit in the averages
+    private static final double SMOOTHING = 0.3;
+
+    //rough heap sizes of the transaction state of an entity, of a property and of a property value
+    private static final int ENTITY_STATE_BYTES = 200;
+    private static final int PROPERTY_STATE_BYTES = 64;
+    private static final int VALUE_BYTES = 16;
+
+    private final BatchSizingConfig sizing;
+    private int batchSize;
+    private double nanosPerRow = -1;
+    private double bytesPerRow = -1;
+
+    public AdaptiveBatcher(int batchSize, BatchSizingConfig sizing) {
+        this.sizing = sizing;
+        this.batchSize = sizing == null ? batchSize : clamp(batchSize);
+    }
+
+    public synchronized int nextBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param rows number of rows written in the transaction
+     * @param stateBytes estimated size of the transaction state, see {@link #estimateBytes}
+     * @param commitNanos time it took to commit the transaction
+     */
+    public synchronized void onCommit(int rows, long stateBytes, long commitNanos) {
+
+        if (sizing == null || rows == 0) {
+            return;
+        }
+
+        nanosPerRow = average(nanosPerRow, commitNanos / (double) rows);
+        bytesPerRow = average(bytesPerRow, stateBytes / (double) rows);
+
+        double bySize = sizing.targetCommitMillis * 1000000.0 / Math.max(nanosPerRow, 1);
+        bySize = Math.max(batchSize / 2.0, Math.min(batchSize * 2.0, bySize));
+        if (sizing.maxTxStateBytes > 0) {
+            bySize = Math.min(bySize, sizing.maxTxStateBytes / Math.max(bytesPerRow, 1));
+        }
+
+        batchSize = clamp((long) bySize);
+    }
+
+    /**
+     * @return a rough size of the transaction state created by writing the row
+     */
+    public static long estimateBytes(WorkFunctions.ParsedRow row) {
+        long bytes = ENTITY_STATE_BYTES;
+        for (Object value : row.values) {
+            if (value != null) {
+                bytes += PROPERTY_STATE_BYTES + valueBytes(value);
+            }
+        }
+        return bytes;
+    }
+
+    private static long valueBytes(Object value) {
+        if (value instanceof String) {
+            return 40 + 2L * ((String) value).length();
+        }
+        if (value instanceof Object[]) {
+            long bytes = VALUE_BYTES;
+            for (Object item : (Object[]) value) {
+                bytes += item == null ? 0 : valueBytes(item);
+            }
+            return bytes;
+        }
+        if (value.getClass().isArray()) {
+            return VALUE_BYTES + 8L * Array.getLength(value);
+        }
+        return VALUE_BYTES;
+    }
+
+    private static double average(double average, double sample) {
+        return average < 0 ? sample : average + SMOOTHING * (sample - average);
+    }
+
+    private int clamp(long size) {
+        return (int) Math.max(sizing.minBatchSize, Math.min(sizing.maxBatchSize, size));
+    }
+}
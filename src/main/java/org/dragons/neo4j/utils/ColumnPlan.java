@@ -0,0 +1,296 @@
+package org.dragons.neo4j.utils;
+
+import org.dragons.neo4j.config.GraphBatchWorkConfig;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * The header of a file compiled once into an immutable array of typed columns,
+ * so rows are decoded without looking up property names or types.
+ */
+public class ColumnPlan {
+
+    public enum ColumnType {
+        INT {
+            @Override
+            Object decode(CsvTokenizer tokens, int col, char arrayDelimiter) {
+                return tokens.parseLong(col);
+            }
+        },
+        FLOAT {
+            @Override
+            Object decode(CsvTokenizer tokens, int col, char arrayDelimiter) {
+                return tokens.parseDouble(col);
+            }
+        },
+        BOOLEAN {
+            @Override
+            Object decode(CsvTokenizer tokens, int col, char arrayDelimiter) {
+                return tokens.parseBoolean(col);
+            }
+        },
+        /**
+         * Neo4j has no temporal property type, dates are stored as milliseconds since the epoch (UTC).
+         */
+        DATE {
+            @Override
+            Object decode(CsvTokenizer tokens, int col, char arrayDelimiter) {
+                return parseDate(tokens.getString(col));
+            }
+        },
+        STRING {
+            @Override
+            Object decode(CsvTokenizer tokens, int col, char arrayDelimiter) {
+                return tokens.getString(col);
+            }
+        },
+        INT_ARRAY {
+            @Override
+            Object decode(CsvTokenizer tokens, int col, char arrayDelimiter) {
+                String[] items = splitArray(tokens.getString(col), arrayDelimiter);
+                long[] array = new long[items.length];
+                for (int i = 0; i < items.length; i++) {
+                    array[i] = Long.parseLong(items[i]);
+                }
+                return array;
+            }
+        },
+        FLOAT_ARRAY {
+            @Override
+            Object decode(CsvTokenizer tokens, int col, char arrayDelimiter) {
+                String[] items = splitArray(tokens.getString(col), arrayDelimiter);
+                double[] array = new double[items.length];
+                for (int i = 0; i < items.length; i++) {
+                    array[i] = Double.parseDouble(items[i]);
+                }
+                return array;
+            }
+        },
+        BOOLEAN_ARRAY {
+            @Override
+            Object decode(CsvTokenizer tokens, int col, char arrayDelimiter) {
+                String[] items = splitArray(tokens.getString(col), arrayDelimiter);
+                boolean[] array = new boolean[items.length];
+                for (int i = 0; i < items.length; i++) {
+                    array[i] = Boolean.parseBoolean(items[i]);
+                }
+                return array;
+            }
+        },
+        STRING_ARRAY {
+            @Override
+            Object decode(CsvTokenizer tokens, int col, char arrayDelimiter) {
+                return splitArray(tokens.getString(col), arrayDelimiter);
+            }
+        },
+        SKIP {
+            @Override
+            Object decode(CsvTokenizer tokens, int col, char arrayDelimiter) {
+                return null;
+            }
+        };
+
+        abstract Object decode(CsvTokenizer tokens, int col, char arrayDelimiter);
+
+        /**
+         * Unknown types are imported as strings.
+         */
+        public static ColumnType of(String type) {
+            switch (type.trim().toLowerCase()) {
+                case "int":
+                case "long":
+                    return INT;
+                case "float":
+                case "double":
+                    return FLOAT;
+                case "boolean":
+                    return BOOLEAN;
+                case "date":
+                    return DATE;
+                case "int[]":
+                case "long[]":
+                    return INT_ARRAY;
+                case "float[]":
+                case "double[]":
+                    return FLOAT_ARRAY;
+                case "boolean[]":
+                    return BOOLEAN_ARRAY;
+                case "string[]":
+                    return STRING_ARRAY;
+                case "skip":
+                    return SKIP;
+                default:
+                    return STRING;
+            }
+        }
+    }
+
+    public static class Column {
+        public final int index;
+        public final String propertyName;
+        public final ColumnType type;
+        /** the "id" column of a node, added to the nodes index */
+        public final boolean key;
+        public final boolean start;
+        public final boolean end;
+        /** whether the decoded value is set as a property */
+        public final boolean property;
+
+        Column(int index, String propertyName, ColumnType type, boolean relationship) {
+            this.index = index;
+            this.propertyName = propertyName;
+            this.type = type;
+            this.key = !relationship && propertyName.equals("id");
+            this.start = relationship && propertyName.equals("start");
+            this.end = relationship && propertyName.equals("end");
+            this.property = type != ColumnType.SKIP && !start && !end;
+        }
+
+        public Object decode(CsvTokenizer tokens, char arrayDelimiter) {
+            if (type != ColumnType.STRING && tokens.isEmpty(index)) {
+                //a missing value is not set, rather than failing the whole row
+                return null;
+            }
+            return type.decode(tokens, index, arrayDelimiter);
+        }
+    }
+
+    private final Column[] columns;
+    private final int keyColumn;
+    private final int startColumn;
+    private final int endColumn;
+
+    private ColumnPlan(Column[] columns) {
+        this.columns = columns;
+        int key = -1, start = -1, end = -1;
+        for (Column column : columns) {
+            if (column.key) {
+                key = column.index;
+            } else if (column.start) {
+                start = column.index;
+            } else if (column.end) {
+                end = column.index;
+            }
+        }
+        this.keyColumn = key;
+        this.startColumn = start;
+        this.endColumn = end;
+    }
+
+    /**
+     * Reads a header of "name:type" columns (the type defaults to string).
+     * @return property names and types, in the order of the columns
+     */
+    public static Map<String, String> parseHeader(String header, char delimiter) {
+
+        LinkedHashMap<String, String> map = new LinkedHashMap<>();
+
+        for (String token :
+                header.split(Pattern.quote(String.valueOf(delimiter)))) {
+            if (token.contains(":")) {
+                String[] split = token.split(":");
+                map.put(split[0], split[1]);
+            } else {
+                map.put(token, "string");
+            }
+        }
+
+        return map;
+    }
+
+    /**
+     * Builds the properties map of the config, from its header or the first line of the reader,
+     * and consumes the first line of the reader if it is not a data line.
+     * @return false if the file is empty
+     */
+    public static boolean readHeader(LineSource br, GraphBatchWorkConfig config) throws IOException {
+
+        //first row: parse the header
+        if (config.getBaseImportConfig().header == null) {
+
+            //if there is no header supplied, the first row must be parsed as a header
+            String line = br.readLine();
+            if (line == null) {
+                return false;
+            }
+            config.setPropertiesMap(parseHeader(line, config.getBaseImportConfig().delimiter));
+            config.getBaseImportConfig().skipFirst = true;
+
+        } else {
+
+            //build property map based on the given header
+            config.setPropertiesMap(parseHeader(config.getBaseImportConfig().header, ','));
+
+            if (config.getBaseImportConfig().skipFirst) {
+                br.readLine();
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @param propertiesMap property names and types, in the order of the columns
+     * @param relationship whether the "start" and "end" columns identify the relationship endpoints
+     */
+    public static ColumnPlan compile(Map<String, String> propertiesMap, boolean relationship) {
+        Column[] columns = new Column[propertiesMap.size()];
+        int idx = 0;
+        for (Map.Entry<String, String> entry : propertiesMap.entrySet()) {
+            columns[idx] = new Column(idx, entry.getKey(), ColumnType.of(entry.getValue()), relationship);
+            idx++;
+        }
+        return new ColumnPlan(columns);
+    }
+
+    public Column[] getColumns() {
+        return columns;
+    }
+
+    public int size() {
+        return columns.length;
+    }
+
+    /**
+     * @return the index of the "id" column, or -1
+     */
+    public int getKeyColumn() {
+        return keyColumn;
+    }
+
+    public int getStartColumn() {
+        return startColumn;
+    }
+
+    public int getEndColumn() {
+        return endColumn;
+    }
+
+    private static String[] splitArray(String value, char arrayDelimiter) {
+        return value.isEmpty() ? new String[0] : value.split(Pattern.quote(String.valueOf(arrayDelimiter)), -1);
+    }
+
+    private static long parseDate(String value) {
+        try {
+            if (value.length() == 10) {
+                return LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+            }
+            if (value.endsWith("Z")) {
+                return Instant.parse(value).toEpochMilli();
+            }
+            return OffsetDateTime.parse(value).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            //date and time without an offset
+            return LocalDateTime.parse(value).toInstant(ZoneOffset.UTC).toEpochMilli();
+        }
+    }
+}
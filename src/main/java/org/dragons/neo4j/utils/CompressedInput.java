@@ -0,0 +1,224 @@
+package org.dragons.neo4j.utils;
+
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Opens input files that may be compressed, detecting their format by their first bytes (whatever their extension),
+ * and decompressing them on threads of their own while the caller reads.
+ *
+ * gzip files (including several concatenated members) and the first entry of zip files are supported.
+ * bzip2, xz and zstd files are detected but rejected, as no decompressor for them is available.
+ */
+public class CompressedInput {
+
+    public enum Format {
+        NONE, GZIP, ZIP, BZIP2, XZ, ZSTD
+    }
+
+    private static final int CHUNK_SIZE = 1 << 20;
+    private static final int READ_AHEAD_CHUNKS = 4;
+
+    /**
+     * @return the compression format of the file, by its magic bytes
+     */
+    public static Format detect(String file) throws IOException {
+        byte[] magic = new byte[6];
+        int read = 0;
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while (read < magic.length && (n = in.read(magic, read, magic.length - read)) > 0) {
+                read += n;
+            }
+        }
+        if (startsWith(magic, read, 0x1f, 0x8b)) {
+            return Format.GZIP;
+        }
+        if (startsWith(magic, read, 'P', 'K', 3, 4)) {
+            return Format.ZIP;
+        }
+        if (startsWith(magic, read, 'B', 'Z', 'h')) {
+            return Format.BZIP2;
+        }
+        if (startsWith(magic, read, 0xfd, '7', 'z', 'X', 'Z', 0)) {
+            return Format.XZ;
+        }
+        if (startsWith(magic, read, 0x28, 0xb5, 0x2f, 0xfd)) {
+            return Format.ZSTD;
+        }
+        return Format.NONE;
+    }
+
+    private static boolean startsWith(byte[] bytes, int length, int... prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if ((bytes[i] & 0xff) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Opens the decompressed content of a compressed file.
+     * @param threads number of gzip members decompressed at once
+     * @param compressedRead called with the number of compressed bytes every time some are read
+     */
+    public static InputStream open(String file, Format format, int threads, LongConsumer compressedRead) throws IOException {
+        switch (format) {
+            case GZIP:
+                return new ParallelGzipInputStream(file, threads, compressedRead);
+            case ZIP:
+                ZipInputStream zip = new ZipInputStream(new CountingInputStream(new FileInputStream(file), compressedRead));
+                if (zip.getNextEntry() == null) {
+                    zip.close();
+                    throw new IOException("Zip file has no entries: " + file);
+                }
+                return new ReadAheadInputStream(zip, "unzip-" + file);
+            case NONE:
+                return new CountingInputStream(new FileInputStream(file), compressedRead);
+            default:
+                throw new IOException(String.format("%s files are not supported, decompress %s or compress it with gzip.", format, file));
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+
+        private final LongConsumer bytesRead;
+
+        CountingInputStream(InputStream in, LongConsumer bytesRead) {
+            super(in);
+            this.bytesRead = bytesRead;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                bytesRead.accept(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                bytesRead.accept(read);
+            }
+            return read;
+        }
+    }
+
+    /**
+     * Reads (and decompresses) the stream on a thread of its own, a few chunks ahead of the caller.
+     */
+    private static class ReadAheadInputStream extends InputStream {
+
+        private static final byte[] END = new byte[0];
+
+        private final InputStream in;
+        private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(READ_AHEAD_CHUNKS);
+        private final Thread reader;
+        private volatile IOException failure;
+        private volatile boolean closed;
+        private byte[] chunk = new byte[0];
+        private int chunkPos;
+        private boolean ended;
+
+        ReadAheadInputStream(InputStream in, String name) {
+            this.in = in;
+            this.reader = new Thread(this::readAhead, name);
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        private void readAhead() {
+            try {
+                while (!closed) {
+                    byte[] buffer = new byte[CHUNK_SIZE];
+                    int length = 0;
+                    int read;
+                    while (length < buffer.length && (read = in.read(buffer, length, buffer.length - length)) > 0) {
+                        length += read;
+                    }
+                    if (length == 0) {
+                        break;
+                    }
+                    put(length == buffer.length ? buffer : Arrays.copyOf(buffer, length));
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void put(byte[] bytes) throws InterruptedException {
+            while (!closed && !chunks.offer(bytes, 100, TimeUnit.MILLISECONDS)) {
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int read = read(single, 0, 1);
+            return read < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            while (chunkPos == chunk.length) {
+                if (ended) {
+                    return -1;
+                }
+                try {
+                    chunk = chunks.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while decompressing", e);
+                }
+                chunkPos = 0;
+                if (chunk == END) {
+                    ended = true;
+                    if (failure != null) {
+                        throw failure;
+                    }
+                }
+            }
+            int read = Math.min(length, chunk.length - chunkPos);
+            System.arraycopy(chunk, chunkPos, buffer, offset, read);
+            chunkPos += read;
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            try {
+                reader.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package org.dragons.neo4j.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Reusable CSV record tokenizer.
+ *
+ * A record is split into columns by recording their offsets in an internal char buffer, no String is created
+ * unless {@link #getString(int)} is called. Quoting follows RFC-4180: a quoted column may contain delimiters and
+ * line feeds, and a doubled quote inside it stands for a single quote character.
+ * An instance is not thread-safe, each parsing thread should use its own.
+ */
+public class CsvTokenizer {
+
+    private char[] chars = new char[256];
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private boolean[] escaped = new boolean[16];
+    private int count;
+    private char quote;
+
+    /**
+     * Tokenizes the record, which is copied into the internal buffer.
+     * @return the number of columns
+     */
+    public int tokenize(String record, char delimiter, char quote) {
+        int length = record.length();
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        record.getChars(0, length, chars, 0);
+
+        this.quote = quote;
+        count = 0;
+        int pos = 0;
+        while (true) {
+            if (pos < length && chars[pos] == quote) {
+                int start = ++pos;
+                boolean hasEscapes = false;
+                while (pos < length) {
+                    if (chars[pos] == quote) {
+                        if (pos + 1 < length && chars[pos + 1] == quote) {
+                            hasEscapes = true;
+                            pos += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    pos++;
+                }
+                addColumn(start, pos, hasEscapes);
+                //anything between the closing quote and the next delimiter is ignored
+                while (pos < length && chars[pos] != delimiter) {
+                    pos++;
+                }
+            } else {
+                int start = pos;
+                while (pos < length && chars[pos] != delimiter) {
+                    pos++;
+                }
+                addColumn(start, pos, false);
+            }
+            if (pos >= length) {
+                return count;
+            }
+            //skip the delimiter
+            pos++;
+        }
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return whether the column is empty, or missing from a record shorter than the header
+     */
+    public boolean isEmpty(int col) {
+        return col >= count || starts[col] == ends[col];
+    }
+
+    /**
+     * Parses a decimal long value directly from the buffer.
+     */
+    public long parseLong(int col) {
+        checkColumn(col);
+        int pos = starts[col];
+        int end = ends[col];
+        if (pos == end) {
+            throw new NumberFormatException("Empty value in column " + col);
+        }
+        boolean negative = false;
+        if (chars[pos] == '-' || chars[pos] == '+') {
+            negative = chars[pos] == '-';
+            if (++pos == end) {
+                throw numberFormatException(col);
+            }
+        }
+        //accumulated negatively, so that Long.MIN_VALUE can be parsed
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long result = 0;
+        while (pos < end) {
+            int digit = chars[pos++] - '0';
+            if (digit < 0 || digit > 9 || result < limit / 10) {
+                throw numberFormatException(col);
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw numberFormatException(col);
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    public double parseDouble(int col) {
+        checkColumn(col);
+        return Double.parseDouble(new String(chars, starts[col], ends[col] - starts[col]));
+    }
+
+    /**
+     * @return true for a case-insensitive "true", false for anything else (as {@link Boolean#parseBoolean}).
+     */
+    public boolean parseBoolean(int col) {
+        checkColumn(col);
+        int start = starts[col];
+        if (ends[col] - start != 4) {
+            return false;
+        }
+        return Character.toLowerCase(chars[start]) == 't'
+                && Character.toLowerCase(chars[start + 1]) == 'r'
+                && Character.toLowerCase(chars[start + 2]) == 'u'
+                && Character.toLowerCase(chars[start + 3]) == 'e';
+    }
+
+    public String getString(int col) {
+        checkColumn(col);
+        if (!escaped[col]) {
+            return new String(chars, starts[col], ends[col] - starts[col]);
+        }
+        StringBuilder sb = new StringBuilder(ends[col] - starts[col]);
+        for (int i = starts[col]; i < ends[col]; i++) {
+            sb.append(chars[i]);
+            if (chars[i] == quote && i + 1 < ends[col] && chars[i + 1] == quote) {
+                //doubled quote
+                i++;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Reads a whole record: lines are joined as long as a quoted column is left open.
+     * @return the record without its line terminator, or null at the end of the stream
+     */
+    public static String readRecord(BufferedReader reader, char quote) throws IOException {
+        return readRecord((LineSource) reader::readLine, quote);
+    }
+
+    /**
+     * Reads a whole record: lines are joined as long as a quoted column is left open.
+     * @return the record without its line terminator, or null at the end of the input
+     */
+    public static String readRecord(LineSource reader, char quote) throws IOException {
+        String line = reader.readLine();
+        if (line == null || !hasOpenQuote(line, quote, false)) {
+            return line;
+        }
+        StringBuilder record = new StringBuilder(line);
+        boolean open = true;
+        while (open && (line = reader.readLine()) != null) {
+            record.append('\n').append(line);
+            open = hasOpenQuote(line, quote, true);
+        }
+        return record.toString();
+    }
+
+    private static boolean hasOpenQuote(String line, char quote, boolean open) {
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == quote) {
+                open = !open;
+            }
+        }
+        return open;
+    }
+
+    private void addColumn(int start, int end, boolean hasEscapes) {
+        if (count == starts.length) {
+            int size = count * 2;
+            starts = Arrays.copyOf(starts, size);
+            ends = Arrays.copyOf(ends, size);
+            escaped = Arrays.copyOf(escaped, size);
+        }
+        starts[count] = start;
+        ends[count] = end;
+        escaped[count] = hasEscapes;
+        count++;
+    }
+
+    private void checkColumn(int col) {
+        if (col >= count) {
+            throw new ArrayIndexOutOfBoundsException("Record has " + count + " columns, column " + col + " is missing");
+        }
+    }
+
+    private NumberFormatException numberFormatException(int col) {
+        return new NumberFormatException("For input string: \"" + new String(chars, starts[col], ends[col] - starts[col]) + "\"");
+    }
+}
@@ -0,0 +1,156 @@
+package org.dragons.neo4j.utils;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a file into byte ranges that start and end on record boundaries, so each range can be imported on its own.
+ */
+public class FileChunks {
+
+    public static class Range {
+        public final long start;
+        public final long end;
+
+        public Range(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("[%d-%d]", start, end);
+        }
+    }
+
+    private static final int SCAN_BUFFER_SIZE = 8192;
+    private static final int SPLIT_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * @return the byte offset right after the first line of the file (the file size if it has a single line).
+     */
+    public static long firstLineEnd(String file) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            return nextLineStart(channel, 0);
+        }
+    }
+
+    /**
+     * Splits the file from the given offset to its end into ranges of approximately chunkSize bytes.
+     * Each range ends right after a line feed that is not inside a quoted column (or at the end of the file),
+     * so records whose quoted columns span several lines are never cut. The file is scanned once to track the quotes.
+     */
+    public static List<Range> split(String file, long start, long chunkSize, char quote) throws IOException {
+        List<Range> ranges = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocate(SPLIT_BUFFER_SIZE);
+            //same parity as CsvTokenizer.readRecord: every quote opens or closes a quoted column
+            boolean open = false;
+            long rangeStart = start;
+            long pos = start;
+            while (pos < size) {
+                buffer.clear();
+                int read = channel.read(buffer, pos);
+                if (read <= 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer.get(i);
+                    if (b == quote) {
+                        open = !open;
+                    } else if (b == '\n' && !open && pos + i + 1 - rangeStart >= chunkSize) {
+                        ranges.add(new Range(rangeStart, pos + i + 1));
+                        rangeStart = pos + i + 1;
+                    }
+                }
+                pos += read;
+            }
+            if (rangeStart < size) {
+                ranges.add(new Range(rangeStart, size));
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * Opens a reader over the lines of a single range. Closing the reader closes the file.
+     */
+    public static BufferedReader openRange(String file, Range range) throws IOException {
+        return new BufferedReader(new InputStreamReader(openRangeStream(file, range)));
+    }
+
+    public static InputStream openRangeStream(String file, Range range) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+        channel.position(range.start);
+        return new BoundedInputStream(Channels.newInputStream(channel), range.end - range.start);
+    }
+
+    /**
+     * @return the offset following the first line feed at or after pos - 1, i.e. pos itself if it already starts a line.
+     */
+    private static long nextLineStart(FileChannel channel, long pos) throws IOException {
+        if (pos == 0) {
+            pos = 1;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long offset = pos - 1;
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+    }
+
+    private static class BoundedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+    }
+}
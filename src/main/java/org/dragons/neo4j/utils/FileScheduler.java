@@ -0,0 +1,173 @@
+package org.dragons.neo4j.utils;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the import tasks (files, file chunks, partitions, groups) of all the import phases on one long-lived
+ * fork/join pool, so the number of threads writing to the database never exceeds a single budget.
+ *
+ * Tasks are submitted to a {@link Group} with their size (e.g. the file's length). Whenever a thread becomes free,
+ * it runs the largest task pending in the group, so a large file found last does not start after all the small ones
+ * and keep a single thread busy at the end. Idle threads steal queued tasks from busy ones.
+ *
+ * Every import acquires the scheduler and releases it once done. A scheduler replaced (by an import asking for a
+ * different number of threads) keeps running until the imports still using it release it.
+ */
+public class FileScheduler {
+
+    private static FileScheduler instance;
+
+    private final ForkJoinPool pool;
+    private final AtomicInteger workers = new AtomicInteger();
+    //imports that acquired this scheduler and did not release it yet, guarded by FileScheduler.class
+    private int users;
+    private boolean replaced;
+
+    private FileScheduler(int threads) {
+        pool = new ForkJoinPool(threads, this::newWorker, null, true);
+    }
+
+    /**
+     * @return the scheduler shared by all imports, replaced only when the number of threads changes.
+     *         Must be given back with {@link #release()}.
+     */
+    public static synchronized FileScheduler acquire(int threads) {
+        threads = Math.max(1, threads);
+        if (instance == null || instance.pool.getParallelism() != threads) {
+            if (instance != null) {
+                instance.replaced = true;
+                instance.shutdownIfUnused();
+            }
+            instance = new FileScheduler(threads);
+        }
+        instance.users++;
+        return instance;
+    }
+
+    /**
+     * Called by an import once all its tasks completed.
+     */
+    public void release() {
+        synchronized (FileScheduler.class) {
+            users--;
+            shutdownIfUnused();
+        }
+    }
+
+    private void shutdownIfUnused() {
+        if (replaced && users == 0) {
+            pool.shutdown();
+        }
+    }
+
+    private ForkJoinWorkerThread newWorker(ForkJoinPool pool) {
+        ForkJoinWorkerThread worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        worker.setName("import-worker-" + workers.incrementAndGet());
+        return worker;
+    }
+
+    public int getThreads() {
+        return pool.getParallelism();
+    }
+
+    public Group newGroup() {
+        return new Group();
+    }
+
+    /**
+     * Tasks that are awaited together, e.g. all the files of a phase.
+     */
+    public class Group {
+
+        private final PriorityBlockingQueue<Task> pending = new PriorityBlockingQueue<>();
+        private final AtomicLong sequence = new AtomicLong();
+        private int unfinished;
+        private Throwable failure;
+
+        /**
+         * @param size the amount of work of the task, e.g. bytes to read. Larger tasks run first.
+         */
+        public void execute(long size, Runnable task) {
+            synchronized (this) {
+                unfinished++;
+            }
+            Task pendingTask = new Task(size, sequence.getAndIncrement(), task);
+            pending.add(pendingTask);
+            try {
+                //every submission adds a single run, which takes the largest pending task when it starts
+                pool.execute(this::runLargest);
+            } catch (RejectedExecutionException e) {
+                //the task will never run, await() must not wait for it
+                pending.remove(pendingTask);
+                synchronized (this) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                    if (--unfinished == 0) {
+                        notifyAll();
+                    }
+                }
+                throw e;
+            }
+        }
+
+        private void runLargest() {
+            Task task = pending.poll();
+            try {
+                task.runnable.run();
+            } catch (Throwable t) {
+                synchronized (this) {
+                    if (failure == null) {
+                        failure = t;
+                    }
+                }
+            } finally {
+                synchronized (this) {
+                    if (--unfinished == 0) {
+                        notifyAll();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Waits for all the tasks submitted so far to complete.
+         * @throws RuntimeException if a task failed, with the first failure as its cause
+         */
+        public synchronized void await() throws InterruptedException {
+            while (unfinished > 0) {
+                wait();
+            }
+            if (failure != null) {
+                Throwable taskFailure = failure;
+                failure = null;
+                throw new RuntimeException("Import task failed: " + taskFailure, taskFailure);
+            }
+        }
+    }
+
+    private static final class Task implements Comparable<Task> {
+
+        final long size;
+        final long sequence;
+        final Runnable runnable;
+
+        Task(long size, long sequence, Runnable runnable) {
+            this.size = size;
+            this.sequence = sequence;
+            this.runnable = runnable;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            //largest first, tasks of the same size in submission order
+            int bySize = Long.compare(other.size, size);
+            return bySize != 0 ? bySize : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package org.dragons.neo4j.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records, in a local file, how far every part of an import (a file, a chunk of a file, or a sorted relationships group)
+ * was committed, so an import that failed can be resumed where it stopped.
+ *
+ * Every commit appends a line "&lt;part&gt;\t&lt;offset&gt;\t&lt;records&gt;", where offset is the byte offset in the file
+ * following the last committed record. A finished part appends "&lt;part&gt;\tdone\t&lt;records&gt;". The last line of a part wins.
+ * A batch is recorded after its transaction commits, so the batches committed right before a crash may be imported
+ * again on resume.
+ *
+ * Every record is synced to disk before it returns. Writers recording at the same time share a single sync:
+ * the lines written while a sync runs are all synced by the next one.
+ */
+public class ImportCheckpoint implements AutoCloseable {
+
+    private static final String DONE = "done";
+
+    private final Map<String, Part> parts = new ConcurrentHashMap<>();
+    private final FileOutputStream out;
+    private final Writer writer;
+    private final boolean resumed;
+    //guards the writer, the sync of its lines is guarded by syncLock
+    private final Object writeLock = new Object();
+    private final Object syncLock = new Object();
+    private long written;
+    private volatile long synced;
+
+    /**
+     * @param resume whether to continue from the parts recorded in the file, rather than starting a new checkpoint
+     */
+    public ImportCheckpoint(String file, boolean resume) throws IOException {
+        this.resumed = resume && new File(file).isFile();
+        if (resumed) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split("\t");
+                    if (fields.length < 3) {
+                        //the last line may be partly written
+                        continue;
+                    }
+                    Part part = part(fields[0]);
+                    part.started = true;
+                    part.done = fields[1].equals(DONE);
+                    part.offset = part.done ? part.offset : Long.parseLong(fields[1]);
+                    part.records = Long.parseLong(fields[2]);
+                }
+            }
+        }
+
+        //the file is replaced by one with the last line of every part, so it does not grow with every resume.
+        //the previous file stays whole until the new one is synced
+        Path path = Paths.get(file);
+        Path rewritten = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileOutputStream rewrittenOut = new FileOutputStream(rewritten.toFile());
+             Writer rewrittenWriter = new OutputStreamWriter(rewrittenOut, StandardCharsets.UTF_8)) {
+            for (Part part : parts.values()) {
+                write(rewrittenWriter, part);
+            }
+            rewrittenWriter.flush();
+            rewrittenOut.getFD().sync();
+        }
+        Files.move(rewritten, path, StandardCopyOption.ATOMIC_MOVE);
+
+        out = new FileOutputStream(file, true);
+        writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return whether parts recorded by a previous import were loaded
+     */
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    /**
+     * @return the progress of the part, recorded by a previous import or new
+     */
+    public Part part(String name) {
+        return parts.computeIfAbsent(name, Part::new);
+    }
+
+    /**
+     * @return whether any part of the file (the whole file or one of its chunks) has committed records
+     */
+    public boolean hasProgress(String file) {
+        for (Part part : parts.values()) {
+            if ((part.name.equals(file) || part.name.startsWith(file + "@")) && (part.done || part.offset > 0)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void record(Part part) {
+        try {
+            long line;
+            synchronized (writeLock) {
+                part.started = true;
+                write(writer, part);
+                line = ++written;
+            }
+            syncUpTo(line);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed writing import checkpoint of " + part.name, e);
+        }
+    }
+
+    private static void write(Writer writer, Part part) throws IOException {
+        writer.write(part.line());
+    }
+
+    /**
+     * Returns once the given line is synced, syncing all the lines written so far unless a concurrent sync did.
+     */
+    private void syncUpTo(long line) throws IOException {
+        if (synced >= line) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (synced >= line) {
+                return;
+            }
+            long upTo;
+            synchronized (writeLock) {
+                writer.flush();
+                upTo = written;
+            }
+            //lines are written by other threads meanwhile, and synced by the next sync
+            out.getFD().sync();
+            synced = upTo;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (syncLock) {
+            synchronized (writeLock) {
+                writer.close();
+            }
+        }
+    }
+
+    /**
+     * The committed progress of a single part. Batches may commit in a different order than they were read
+     * (e.g. with parser threads); the recorded offset only advances over batches whose preceding batches all committed.
+     */
+    public class Part {
+
+        private final String name;
+        private volatile long offset;
+        private volatile long records;
+        private volatile boolean done;
+        private volatile boolean started;
+        private OffsetLineReader reader;
+        //batches read and not recorded yet, by their end offset
+        private final TreeMap<Long, Batch> batches = new TreeMap<>();
+
+        Part(String name) {
+            this.name = name;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getRecords() {
+            return records;
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        /**
+         * @return whether the part was recorded, by this import or by the one it resumes
+         */
+        public boolean isStarted() {
+            return started;
+        }
+
+        /**
+         * Opens a reader over the part's stream, whose offsets are recorded with the batches.
+         * @param start the offset of the stream's first byte in the file
+         */
+        public OffsetLineReader open(InputStream in, long start) {
+            reader = new OffsetLineReader(in, start);
+            return reader;
+        }
+
+        /**
+         * Skips the records committed by a previous import, if the reader is before them.
+         */
+        public void skipCommitted() throws IOException {
+            if (offset > reader.getOffset()) {
+                reader.skipTo(offset);
+            }
+        }
+
+        /**
+         * Called by the reading thread once a batch was read.
+         * @return the offset following the batch, to pass to {@link #batchCommitted}
+         */
+        public synchronized long batchRead(int batchRecords) {
+            long end = reader.getOffset();
+            batches.put(end, new Batch(batchRecords));
+            return end;
+        }
+
+        public void batchCommitted(long end) {
+            boolean advanced = false;
+            synchronized (this) {
+                batches.get(end).committed = true;
+                while (!batches.isEmpty() && batches.firstEntry().getValue().committed) {
+                    Map.Entry<Long, Batch> committed = batches.pollFirstEntry();
+                    offset = committed.getKey();
+                    records += committed.getValue().records;
+                    advanced = true;
+                }
+            }
+            if (advanced) {
+                record(this);
+            }
+        }
+
+        /**
+         * Records that the part started, so a resumed import can tell it was interrupted.
+         */
+        public void start() {
+            record(this);
+        }
+
+        public void finished() {
+            synchronized (this) {
+                done = true;
+            }
+            record(this);
+        }
+
+        /**
+         * Reads the offset and the records together, under the lock they are updated with.
+         * The line is read when it is written rather than when the batch committed, so the last line of a part
+         * is its latest progress even if concurrent commits record out of order.
+         */
+        private synchronized String line() {
+            return String.format("%s\t%s\t%d%n", name, done ? DONE : Long.toString(offset), records);
+        }
+    }
+
+    private static class Batch {
+        final long records;
+        boolean committed;
+
+        Batch(long records) {
+            this.records = records;
+        }
+    }
+}
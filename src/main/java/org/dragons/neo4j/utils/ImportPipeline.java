@@ -0,0 +1,179 @@
+package org.dragons.neo4j.utils;
+
+import org.dragons.neo4j.config.GraphBatchWorkConfig;
+import org.dragons.neo4j.metrics.ImportMetrics;
+import org.dragons.neo4j.metrics.ImportStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ToLongFunction;
+
+/**
+ * Splits the import of a single file into three stages connected by bounded queues:
+ * a reader thread groups lines into batches, a pool of parser threads turns them into {@link WorkFunctions.ParsedRow}s
+ * (including batched nodes index lookups), and the calling thread writes each parsed batch in its own transaction.
+ *
+ * Batches may reach the writer in a different order than they appear in the file.
+ * A failure of any stage (including runtime exceptions and errors) stops the whole pipeline and is rethrown from {@link #run}.
+ */
+public class ImportPipeline {
+
+    @FunctionalInterface
+    public interface BatchWriter {
+        /**
+         * @param readMark the value the pipeline's read listener returned for the batch
+         */
+        void write(List<WorkFunctions.ParsedRow> batch, long readMark) throws Exception;
+    }
+
+    /**
+     * A batch with the mark of its read, as it moves between the stages.
+     */
+    private static class Batch<T> {
+        final T items;
+        final long readMark;
+
+        Batch(T items, long readMark) {
+            this.items = items;
+            this.readMark = readMark;
+        }
+    }
+
+    private static final Batch<List<String>> END_OF_LINES = new Batch<>(new ArrayList<>(), -1);
+    private static final Batch<List<WorkFunctions.ParsedRow>> END_OF_ROWS = new Batch<>(new ArrayList<>(), -1);
+
+    private final int parserThreads;
+    private final int queueSize;
+
+    public ImportPipeline(int parserThreads, int queueSize) {
+        this.parserThreads = parserThreads;
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * @param source name of the input, shown in the import status with the depths of the pipeline's queues
+     * @param batcher decides the number of lines of every batch as it is read
+     * @param onRead called by the reader thread right after every batch is read, e.g. to record the reader's position.
+     *               Its result is passed to the writer with the batch.
+     */
+    public void run(String source,
+                    LineSource reader,
+                    GraphBatchWorkConfig config,
+                    AdaptiveBatcher batcher,
+                    ToLongFunction<List<String>> onRead,
+                    WorkFunctions.WorkFunc<List<String>, GraphBatchWorkConfig, List<WorkFunctions.ParsedRow>> parser,
+                    BatchWriter writer) throws Exception {
+
+        BlockingQueue<Batch<List<String>>> lines = new ArrayBlockingQueue<>(queueSize);
+        BlockingQueue<Batch<List<WorkFunctions.ParsedRow>>> rows = new ArrayBlockingQueue<>(queueSize);
+        AtomicInteger runningParsers = new AtomicInteger(parserThreads);
+        //the first failure of the reader or of a parser
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        ExecutorService stages = Executors.newFixedThreadPool(parserThreads + 1);
+        String linesQueue = ImportStatus.get().addQueue(source + " lines", lines::size);
+        String rowsQueue = ImportStatus.get().addQueue(source + " rows", rows::size);
+
+        try {
+            stages.execute(() -> {
+                try {
+                    String group = config.getBaseImportConfig().label;
+                    int batchSize = batcher.nextBatchSize();
+                    List<String> batch = new ArrayList<>(batchSize);
+                    long start = System.nanoTime();
+                    String line;
+                    while (failure.get() == null && (line = CsvTokenizer.readRecord(reader, config.getBaseImportConfig().quote)) != null) {
+                        batch.add(line);
+                        if (batch.size() >= batchSize) {
+                            //time spent waiting for the parsers is not part of the reading time
+                            ImportMetrics.get().record(ImportMetrics.Stage.READ, group, System.nanoTime() - start);
+                            lines.put(new Batch<>(batch, onRead.applyAsLong(batch)));
+                            batchSize = batcher.nextBatchSize();
+                            batch = new ArrayList<>(batchSize);
+                            start = System.nanoTime();
+                        }
+                    }
+                    if (!batch.isEmpty() && failure.get() == null) {
+                        ImportMetrics.get().record(ImportMetrics.Stage.READ, group, System.nanoTime() - start);
+                        lines.put(new Batch<>(batch, onRead.applyAsLong(batch)));
+                    }
+                } catch (InterruptedException e) {
+                    //the writer failed, nobody is waiting for the remaining lines
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    endOfLines(lines);
+                }
+            });
+
+            for (int i = 0; i < parserThreads; i++) {
+                stages.execute(() -> {
+                    try {
+                        Batch<List<String>> batch;
+                        while ((batch = lines.take()) != END_OF_LINES) {
+                            if (failure.get() == null) {
+                                rows.put(new Batch<>(parser.apply(batch.items, config), batch.readMark));
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                    //the writer stops on the last parser's end, whether the parsers finished or failed
+                    if (runningParsers.decrementAndGet() == 0) {
+                        try {
+                            rows.put(END_OF_ROWS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            }
+
+            Batch<List<WorkFunctions.ParsedRow>> batch;
+            while ((batch = rows.take()) != END_OF_ROWS && failure.get() == null) {
+                writer.write(batch.items, batch.readMark);
+            }
+
+        } finally {
+            ImportStatus.get().removeQueue(linesQueue);
+            ImportStatus.get().removeQueue(rowsQueue);
+            //on a writer failure the other stages may be blocked on full queues
+            stages.shutdownNow();
+            stages.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        Throwable failed = failure.get();
+        if (failed instanceof Exception) {
+            throw (Exception) failed;
+        }
+        if (failed instanceof Error) {
+            throw (Error) failed;
+        }
+    }
+
+    /**
+     * Posts an end marker for every parser. Blocks while the parsers still work through the queue,
+     * until the pipeline is shut down if they failed.
+     */
+    private void endOfLines(BlockingQueue<Batch<List<String>>> lines) {
+        try {
+            for (int i = 0; i < parserThreads; i++) {
+                lines.put(END_OF_LINES);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
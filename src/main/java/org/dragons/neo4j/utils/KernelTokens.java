@@ -0,0 +1,75 @@
+package org.dragons.neo4j.utils;
+
+import org.dragons.neo4j.config.GraphBatchWorkConfig;
+import org.dragons.neo4j.config.RelationshipBatchWorkConfig;
+import org.neo4j.kernel.api.Statement;
+import org.neo4j.kernel.api.TokenWriteOperations;
+import org.neo4j.kernel.api.exceptions.KernelException;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+
+/**
+ * The token ids a group's rows are written with through the kernel: its label (or relationship type),
+ * and the property key of every property column. Resolved once for a column plan, instead of by name for every row.
+ */
+public class KernelTokens {
+
+    private final ColumnPlan columnPlan;
+    private final ThreadToStatementContextBridge bridge;
+    private final int labelOrType;
+    //by column index, -1 for the columns that are not set as properties
+    private final int[] propertyKeys;
+
+    private KernelTokens(ColumnPlan columnPlan, ThreadToStatementContextBridge bridge, int labelOrType, int[] propertyKeys) {
+        this.columnPlan = columnPlan;
+        this.bridge = bridge;
+        this.labelOrType = labelOrType;
+        this.propertyKeys = propertyKeys;
+    }
+
+    /**
+     * @return the tokens of the config's group, creating the ones missing from the database
+     */
+    public static KernelTokens resolve(GraphBatchWorkConfig config) {
+
+        ThreadToStatementContextBridge bridge = config.getGraphDatabaseAPI().getDependencyResolver()
+                .resolveDependency(ThreadToStatementContextBridge.class);
+        ColumnPlan plan = config.getColumnPlan();
+        String name = config.getBaseImportConfig().label;
+
+        try (Statement statement = bridge.get()) {
+            TokenWriteOperations tokens = statement.tokenWriteOperations();
+            int labelOrType = config instanceof RelationshipBatchWorkConfig
+                    ? tokens.relationshipTypeGetOrCreateForName(name)
+                    : tokens.labelGetOrCreateForName(name);
+            int[] propertyKeys = new int[plan.size()];
+            for (ColumnPlan.Column column : plan.getColumns()) {
+                propertyKeys[column.index] = column.property ? tokens.propertyKeyGetOrCreateForName(column.propertyName) : -1;
+            }
+            return new KernelTokens(plan, bridge, labelOrType, propertyKeys);
+        } catch (KernelException e) {
+            throw new RuntimeException("Failed resolving the tokens of " + name, e);
+        }
+    }
+
+    /**
+     * @return whether the tokens were resolved for the config's current column plan
+     */
+    public boolean isFor(GraphBatchWorkConfig config) {
+        return columnPlan == config.getColumnPlan();
+    }
+
+    /**
+     * @return a statement of the current thread's transaction, to be closed once the row is written
+     */
+    public Statement statement() {
+        return bridge.get();
+    }
+
+    public int getLabelOrType() {
+        return labelOrType;
+    }
+
+    public int getPropertyKey(int column) {
+        return propertyKeys[column];
+    }
+}
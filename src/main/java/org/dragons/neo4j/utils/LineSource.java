@@ -0,0 +1,39 @@
+package org.dragons.neo4j.utils;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * The lines of an input, as read by the import: from a {@link BufferedReader}, or from an {@link OffsetLineReader}
+ * when the byte offsets of the lines are recorded.
+ */
+@FunctionalInterface
+public interface LineSource extends Closeable {
+
+    /**
+     * @return the next line without its terminator, or null at the end of the input
+     */
+    String readLine() throws IOException;
+
+    @Override
+    default void close() throws IOException {
+    }
+
+    /**
+     * @return the lines of the reader, closing the reader once closed
+     */
+    static LineSource of(BufferedReader reader) {
+        return new LineSource() {
+            @Override
+            public String readLine() throws IOException {
+                return reader.readLine();
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,115 @@
+package org.dragons.neo4j.utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Reads the lines of a stream and keeps the exact byte offset of the next line, so the position of the last line read
+ * can be recorded and reading can later restart from it.
+ *
+ * Lines end with a line feed, optionally preceded by a carriage return (a lone carriage return does not end a line),
+ * and are decoded with the platform's default charset, as an {@link java.io.InputStreamReader} would.
+ */
+public class OffsetLineReader implements LineSource {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final InputStream in;
+    private final Charset charset = Charset.defaultCharset();
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int pos;
+    private int limit;
+    private long offset;
+
+    /**
+     * @param offset the offset of the stream's first byte in the file
+     */
+    public OffsetLineReader(InputStream in, long offset) {
+        this.in = in;
+        this.offset = offset;
+    }
+
+    /**
+     * @return the offset right after the last line read
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Skips forward to the given offset, which must start a line.
+     */
+    public void skipTo(long target) throws IOException {
+        long skip = target - offset;
+        if (skip < 0) {
+            throw new IOException("Cannot skip back from offset " + offset + " to " + target);
+        }
+        if (skip <= limit - pos) {
+            pos += (int) skip;
+        } else {
+            skip -= limit - pos;
+            pos = limit = 0;
+            while (skip > 0) {
+                long skipped = in.skip(skip);
+                if (skipped <= 0) {
+                    throw new EOFException("Offset " + target + " is beyond the end of the stream");
+                }
+                skip -= skipped;
+            }
+        }
+        offset = target;
+    }
+
+    @Override
+    public String readLine() throws IOException {
+        int scanned = 0;
+        while (true) {
+            for (int i = pos + scanned; i < limit; i++) {
+                if (buffer[i] == '\n') {
+                    return takeLine(i, i + 1);
+                }
+            }
+            scanned = limit - pos;
+            if (!fill()) {
+                return scanned == 0 ? null : takeLine(limit, limit);
+            }
+        }
+    }
+
+    private String takeLine(int end, int next) {
+        int lineEnd = end > pos && buffer[end - 1] == '\r' ? end - 1 : end;
+        String line = new String(buffer, pos, lineEnd - pos, charset);
+        offset += next - pos;
+        pos = next;
+        return line;
+    }
+
+    /**
+     * Reads more bytes after the unread ones, moving them to the start of the buffer (or growing it for long lines).
+     * @return false at the end of the stream
+     */
+    private boolean fill() throws IOException {
+        if (pos > 0) {
+            System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read <= 0) {
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
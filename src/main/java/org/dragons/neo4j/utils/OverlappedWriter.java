@@ -0,0 +1,88 @@
+package org.dragons.neo4j.utils;
+
+import org.dragons.neo4j.metrics.ImportStatus;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes and commits batches on a thread of its own, so the submitting thread can read and parse the next batch
+ * (including its nodes index lookups) while the previous transaction commits.
+ *
+ * Batches are written one at a time, in the order they were submitted. At most "maxInFlight" batches may be waiting
+ * or committing, beyond that {@link #submit} blocks.
+ * When a batch fails, the batches submitted after it are skipped, and the failure is rethrown (once) by the next call to
+ * {@link #submit} or {@link #close}. Batches committed before the failure stay committed.
+ */
+public class OverlappedWriter implements AutoCloseable {
+
+    @FunctionalInterface
+    public interface Batch {
+        void write() throws Exception;
+    }
+
+    private final ExecutorService committer = Executors.newSingleThreadExecutor();
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final String statusQueue;
+    private volatile Exception failure;
+    private boolean failureThrown;
+
+    /**
+     * @param name shown in the import status, with the number of batches in flight
+     */
+    public OverlappedWriter(String name, int maxInFlight) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.inFlight = new Semaphore(this.maxInFlight);
+        this.statusQueue = ImportStatus.get().addQueue(name + " commits", this::getInFlight);
+    }
+
+    /**
+     * @return number of batches waiting for their commit or committing
+     */
+    public int getInFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    public void submit(Batch batch) throws Exception {
+        throwIfFailed();
+        inFlight.acquire();
+        committer.execute(() -> {
+            try {
+                if (failure == null) {
+                    batch.write();
+                }
+            } catch (Exception e) {
+                failure = e;
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    /**
+     * Waits for all the submitted batches to be written.
+     */
+    @Override
+    public void close() throws Exception {
+        ImportStatus.get().removeQueue(statusQueue);
+        committer.shutdown();
+        try {
+            committer.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } catch (InterruptedException e) {
+            //the transactions of the pending batches are left to be rolled back
+            committer.shutdownNow();
+            throw e;
+        }
+        throwIfFailed();
+    }
+
+    private void throwIfFailed() throws Exception {
+        if (failure != null && !failureThrown) {
+            failureThrown = true;
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package org.dragons.neo4j.utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a gzip file, possibly made of several members (e.g. concatenated gzip files), decompressing it on threads
+ * of its own while the caller consumes what was already decompressed.
+ *
+ * The member being read is decompressed by one thread. With more threads, the next gzip headers found in the
+ * compressed bytes are decompressed at the same time, each by a thread of its own, and their output is read once the
+ * members before them are. The headers are searched for by another thread of the pool, so reading never waits on it.
+ * The header bytes may also appear inside compressed data: a member started there fails or is passed over,
+ * as the previous member ends after it. Trailing bytes that are not a gzip member are ignored,
+ * as {@link java.util.zip.GZIPInputStream} does.
+ */
+public class ParallelGzipInputStream extends InputStream {
+
+    private static final int CHUNK_SIZE = 1 << 20;
+    private static final int CHUNKS_PER_MEMBER = 4;
+    private static final int READ_SIZE = 1 << 16;
+    private static final int HEADER_SIZE = 10;
+    //headers are searched up to this far beyond the start of the member being read
+    private static final long MAX_SCAN_AHEAD = 256L << 20;
+    private static final byte[] END = new byte[0];
+
+    private final FileChannel channel;
+    private final long size;
+    private final int threads;
+    private final LongConsumer compressedRead;
+    private final ExecutorService decompressors;
+    //members started ahead of the current one, by their start offset. Guards the scan state and closed
+    private final TreeMap<Long, Member> ahead = new TreeMap<>();
+    private final ByteBuffer scanBuffer = ByteBuffer.allocate(READ_SIZE);
+    private long scanPos;
+    private long scanLimit;
+    private boolean scanning;
+    private boolean closed;
+    private Member current;
+    private byte[] chunk = END;
+    private int chunkPos;
+
+    /**
+     * @param threads number of members decompressed at once
+     * @param compressedRead called with the number of compressed bytes every time some are read
+     */
+    public ParallelGzipInputStream(String file, int threads, LongConsumer compressedRead) throws IOException {
+        this.channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+        this.size = channel.size();
+        this.threads = Math.max(1, threads);
+        this.compressedRead = compressedRead;
+        //one more thread for the headers scan
+        this.decompressors = Executors.newFixedThreadPool(this.threads + 1, runnable -> {
+            Thread thread = new Thread(runnable, "gzip-" + Paths.get(file).getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (!isHeader(0)) {
+            close();
+            throw new IOException("Not in gzip format: " + file);
+        }
+        startMember(0);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int read = read(single, 0, 1);
+        return read < 0 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (chunkPos == chunk.length) {
+            if (current == null) {
+                return -1;
+            }
+            byte[] next;
+            try {
+                next = current.chunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while decompressing", e);
+            }
+            if (next == END) {
+                if (current.failure != null) {
+                    throw current.failure;
+                }
+                startMember(current.end);
+            } else {
+                chunk = next;
+                chunkPos = 0;
+            }
+        }
+        int read = Math.min(length, chunk.length - chunkPos);
+        System.arraycopy(chunk, chunkPos, buffer, offset, read);
+        chunkPos += read;
+        return read;
+    }
+
+    /**
+     * Makes the member at the given offset the current one, and starts decompressing the members found after it.
+     */
+    private void startMember(long start) throws IOException {
+        synchronized (ahead) {
+            //members started before this one were found inside compressed data
+            while (!ahead.isEmpty() && ahead.firstKey() < start) {
+                ahead.pollFirstEntry().getValue().cancelled = true;
+            }
+            current = ahead.remove(start);
+        }
+        if (current == null) {
+            current = start < size && isHeader(start) ? submit(start) : null;
+        }
+        if (current == null) {
+            return;
+        }
+        synchronized (ahead) {
+            scanPos = Math.max(scanPos, start + 1);
+            scanLimit = Math.min(start + MAX_SCAN_AHEAD, size - HEADER_SIZE + 1);
+            if (!scanning && ahead.size() < threads - 1) {
+                scanning = true;
+                decompressors.execute(this::scan);
+            }
+        }
+    }
+
+    private Member submit(long start) {
+        Member member = new Member(start);
+        decompressors.execute(member);
+        return member;
+    }
+
+    /**
+     * Starts the members of the gzip headers found from the scan position, until enough members are started ahead
+     * or the scan limit is reached. Runs on a thread of the pool, one scan at a time.
+     */
+    private void scan() {
+        try {
+            while (true) {
+                long from;
+                synchronized (ahead) {
+                    if (closed || ahead.size() >= threads - 1 || scanPos >= scanLimit) {
+                        scanning = false;
+                        return;
+                    }
+                    from = scanPos;
+                }
+                scanBuffer.clear();
+                int read = channel.read(scanBuffer, from);
+                int header = -1;
+                for (int i = 0; i + HEADER_SIZE <= read; i++) {
+                    if (isHeader(scanBuffer.array(), i)) {
+                        header = i;
+                        break;
+                    }
+                }
+                synchronized (ahead) {
+                    if (scanPos != from) {
+                        //a member starting after the scanned bytes became the current one meanwhile
+                        continue;
+                    }
+                    if (read < HEADER_SIZE) {
+                        scanPos = scanLimit;
+                    } else if (header >= 0) {
+                        scanPos = from + header + 1;
+                        if (!closed) {
+                            ahead.put(from + header, submit(from + header));
+                        }
+                    } else {
+                        //the last bytes may start a header that continues in the next read
+                        scanPos = from + read - HEADER_SIZE + 1;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            //the members are then found one after the other, as each one ends
+            synchronized (ahead) {
+                scanning = false;
+            }
+        }
+    }
+
+    private boolean isHeader(long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        return channel.read(header, offset) == HEADER_SIZE && isHeader(header.array(), 0);
+    }
+
+    /**
+     * A deflate member header with no reserved flag set, and valid extra flags and operating system.
+     */
+    private static boolean isHeader(byte[] bytes, int i) {
+        int xfl = bytes[i + 8] & 0xff;
+        int os = bytes[i + 9] & 0xff;
+        return (bytes[i] & 0xff) == 0x1f
+                && (bytes[i + 1] & 0xff) == 0x8b
+                && bytes[i + 2] == 8
+                && (bytes[i + 3] & 0xe0) == 0
+                && (xfl == 0 || xfl == 2 || xfl == 4)
+                && (os <= 13 || os == 255);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (current != null) {
+            current.cancelled = true;
+            current = null;
+        }
+        synchronized (ahead) {
+            closed = true;
+            for (Member member : ahead.values()) {
+                member.cancelled = true;
+            }
+            ahead.clear();
+        }
+        decompressors.shutdown();
+        channel.close();
+    }
+
+    /**
+     * Decompresses a single member into a bounded queue of chunks, followed by {@link #END}.
+     */
+    private class Member implements Runnable {
+
+        final long start;
+        final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(CHUNKS_PER_MEMBER + 1);
+        volatile boolean cancelled;
+        volatile IOException failure;
+        //offset following the member's trailer
+        volatile long end;
+
+        private final byte[] input = new byte[READ_SIZE];
+        private int inputPos;
+        private int inputLimit;
+        private long readPos;
+
+        Member(long start) {
+            this.start = start;
+            this.readPos = start;
+        }
+
+        @Override
+        public void run() {
+            try {
+                decompress();
+            } catch (IOException e) {
+                failure = e;
+            } catch (DataFormatException e) {
+                failure = new IOException("Corrupt gzip member at offset " + start + ": " + e.getMessage(), e);
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                emit(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void decompress() throws IOException, DataFormatException, InterruptedException {
+
+            readHeader();
+
+            Inflater inflater = new Inflater(true);
+            CRC32 crc = new CRC32();
+            try {
+                byte[] out = new byte[CHUNK_SIZE];
+                int outPos = 0;
+                while (!inflater.finished()) {
+                    if (cancelled) {
+                        return;
+                    }
+                    if (inflater.needsInput()) {
+                        if (inputPos == inputLimit) {
+                            fill();
+                        }
+                        inflater.setInput(input, inputPos, inputLimit - inputPos);
+                        inputPos = inputLimit;
+                    }
+                    if (inflater.needsDictionary()) {
+                        throw new DataFormatException("Deflate dictionaries are not supported");
+                    }
+                    outPos += inflater.inflate(out, outPos, out.length - outPos);
+                    if (outPos == out.length) {
+                        crc.update(out, 0, outPos);
+                        emit(out);
+                        out = new byte[CHUNK_SIZE];
+                        outPos = 0;
+                    }
+                }
+                if (outPos > 0) {
+                    crc.update(out, 0, outPos);
+                    emit(Arrays.copyOf(out, outPos));
+                }
+                //the inflater was given all the input read, the rest follows the compressed data
+                inputPos = inputLimit - inflater.getRemaining();
+
+                long expectedCrc = readInt();
+                long expectedSize = readInt();
+                if (expectedCrc != crc.getValue() || expectedSize != (inflater.getBytesWritten() & 0xffffffffL)) {
+                    throw new IOException("Corrupt gzip member at offset " + start + ": wrong checksum or size");
+                }
+                end = readPos - (inputLimit - inputPos);
+            } finally {
+                inflater.end();
+            }
+        }
+
+        private void readHeader() throws IOException {
+            skip(3);
+            int flags = readByte();
+            skip(6);
+            if ((flags & 4) != 0) {
+                //extra field
+                skip(readByte() | readByte() << 8);
+            }
+            if ((flags & 8) != 0) {
+                //file name
+                while (readByte() != 0) {
+                }
+            }
+            if ((flags & 16) != 0) {
+                //comment
+                while (readByte() != 0) {
+                }
+            }
+            if ((flags & 2) != 0) {
+                //header checksum
+                skip(2);
+            }
+        }
+
+        private long readInt() throws IOException {
+            return (readByte() | readByte() << 8 | readByte() << 16 | (long) readByte() << 24) & 0xffffffffL;
+        }
+
+        private int readByte() throws IOException {
+            if (inputPos == inputLimit) {
+                fill();
+            }
+            return input[inputPos++] & 0xff;
+        }
+
+        private void skip(int bytes) throws IOException {
+            for (int i = 0; i < bytes; i++) {
+                readByte();
+            }
+        }
+
+        private void fill() throws IOException {
+            int read = channel.read(ByteBuffer.wrap(input), readPos);
+            if (read <= 0) {
+                throw new EOFException("Unexpected end of gzip member at offset " + start);
+            }
+            readPos += read;
+            inputPos = 0;
+            inputLimit = read;
+            compressedRead.accept(read);
+        }
+
+        /**
+         * Waits for room in the queue, unless the member was cancelled since.
+         */
+        private void emit(byte[] bytes) throws InterruptedException {
+            while (!cancelled && !chunks.offer(bytes, 100, TimeUnit.MILLISECONDS)) {
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package org.dragons.neo4j.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Partitions resolved relationships by ranges of internal node ids.
+ *
+ * Relationships are first spilled to a staging file while the highest node id is tracked. {@link #partition(int)}
+ * then splits the id space into equal ranges: a relationship with both endpoints in the same range goes to that
+ * range's partition, any other relationship goes to the cross partition. Two partitions never share a node, so
+ * they can be written concurrently without waiting on each other's locks.
+ */
+public class RelationshipPartitioner implements ResolvedRelationship.Sink, Closeable {
+
+    private final Path tempDir;
+    private final Path staging;
+    private DataOutputStream stagingOut;
+    private long maxNodeId = -1;
+    private long count;
+
+    private final List<Path> partitions = new ArrayList<>();
+    private long[] partitionSizes = new long[0];
+    private Path cross;
+    private long crossSize;
+    private final List<DataInputStream> openFiles = new ArrayList<>();
+
+    public RelationshipPartitioner(Path tempDir) throws IOException {
+        this.tempDir = tempDir;
+        this.staging = Files.createTempFile(tempDir, "rels-staging-", ".bin");
+        this.stagingOut = openOutput(staging);
+    }
+
+    @Override
+    public synchronized void add(ResolvedRelationship relationship) throws IOException {
+        relationship.write(stagingOut);
+        maxNodeId = Math.max(maxNodeId, Math.max(relationship.startNodeId, relationship.endNodeId));
+        count++;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Distributes the staged relationships. Must be called once, after all the relationships were added.
+     */
+    public synchronized void partition(int partitionsCount) throws IOException {
+        stagingOut.close();
+
+        long width = maxNodeId / partitionsCount + 1;
+        DataOutputStream[] outs = new DataOutputStream[partitionsCount];
+        partitionSizes = new long[partitionsCount];
+        for (int i = 0; i < partitionsCount; i++) {
+            Path partition = Files.createTempFile(tempDir, "rels-partition-" + i + "-", ".bin");
+            partitions.add(partition);
+            outs[i] = openOutput(partition);
+        }
+        cross = Files.createTempFile(tempDir, "rels-cross-", ".bin");
+
+        try (DataInputStream in = openInput(staging); DataOutputStream crossOut = openOutput(cross)) {
+            ResolvedRelationship relationship;
+            while ((relationship = ResolvedRelationship.read(in)) != null) {
+                int partition = (int) (relationship.startNodeId / width);
+                if (partition == relationship.endNodeId / width) {
+                    relationship.write(outs[partition]);
+                    partitionSizes[partition]++;
+                } else {
+                    relationship.write(crossOut);
+                    crossSize++;
+                }
+            }
+        } finally {
+            for (DataOutputStream out : outs) {
+                out.close();
+            }
+        }
+
+        Files.deleteIfExists(staging);
+    }
+
+    public int getPartitionsCount() {
+        return partitions.size();
+    }
+
+    public long getPartitionSize(int partition) {
+        return partitionSizes[partition];
+    }
+
+    public long getCrossSize() {
+        return crossSize;
+    }
+
+    public Iterator<ResolvedRelationship> readPartition(int partition) throws IOException {
+        return read(partitions.get(partition));
+    }
+
+    public Iterator<ResolvedRelationship> readCrossPartition() throws IOException {
+        return read(cross);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        stagingOut.close();
+        for (DataInputStream in : openFiles) {
+            in.close();
+        }
+        Files.deleteIfExists(staging);
+        for (Path partition : partitions) {
+            Files.deleteIfExists(partition);
+        }
+        if (cross != null) {
+            Files.deleteIfExists(cross);
+        }
+    }
+
+    private synchronized Iterator<ResolvedRelationship> read(Path file) throws IOException {
+        DataInputStream in = openInput(file);
+        openFiles.add(in);
+        return ResolvedRelationship.iterate(in);
+    }
+
+    private static DataOutputStream openOutput(Path file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+    }
+
+    private static DataInputStream openInput(Path file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+    }
+}
@@ -0,0 +1,137 @@
+package org.dragons.neo4j.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * External sort of relationship rows by their resolved start node id (then end node id).
+ *
+ * At most bufferSize rows are kept in memory; when the buffer is full it is sorted and spilled into a temporary run file.
+ * {@link #sorted()} merges the runs and the remaining buffer into a single ordered stream.
+ */
+public class RelationshipSorter implements ResolvedRelationship.Sink, Closeable {
+
+    private static final Comparator<ResolvedRelationship> ORDER = Comparator.<ResolvedRelationship>comparingLong(r -> r.startNodeId).thenComparingLong(r -> r.endNodeId);
+
+    private final Path tempDir;
+    private final int bufferSize;
+    private final List<ResolvedRelationship> buffer;
+    private final List<Path> runs = new ArrayList<>();
+    private final List<DataInputStream> openRuns = new ArrayList<>();
+    private long count;
+
+    public RelationshipSorter(Path tempDir, int bufferSize) {
+        this.tempDir = tempDir;
+        this.bufferSize = bufferSize;
+        this.buffer = new ArrayList<>(Math.min(bufferSize, 1 << 20));
+    }
+
+    @Override
+    public synchronized void add(ResolvedRelationship record) throws IOException {
+        buffer.add(record);
+        count++;
+        if (buffer.size() >= bufferSize) {
+            spill();
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public int getRunsCount() {
+        return runs.size();
+    }
+
+    /**
+     * @return all the added rows in order. May be called once, after all the rows were added.
+     */
+    public synchronized Iterator<ResolvedRelationship> sorted() throws IOException {
+        buffer.sort(ORDER);
+        List<Iterator<ResolvedRelationship>> sources = new ArrayList<>();
+        for (Path run : runs) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 1 << 16));
+            openRuns.add(in);
+            sources.add(ResolvedRelationship.iterate(in));
+        }
+        sources.add(buffer.iterator());
+        return new MergeIterator(sources);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (DataInputStream in : openRuns) {
+            in.close();
+        }
+        for (Path run : runs) {
+            Files.deleteIfExists(run);
+        }
+        buffer.clear();
+    }
+
+    private void spill() throws IOException {
+        buffer.sort(ORDER);
+        Path run = Files.createTempFile(tempDir, "rels-run-", ".bin");
+        runs.add(run);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+            for (ResolvedRelationship record : buffer) {
+                record.write(out);
+            }
+        }
+        buffer.clear();
+    }
+
+    private static class MergeIterator implements Iterator<ResolvedRelationship> {
+
+        private final PriorityQueue<Head> heads = new PriorityQueue<>((a, b) -> ORDER.compare(a.record, b.record));
+
+        MergeIterator(List<Iterator<ResolvedRelationship>> sources) {
+            for (Iterator<ResolvedRelationship> source : sources) {
+                if (source.hasNext()) {
+                    heads.add(new Head(source.next(), source));
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public ResolvedRelationship next() {
+            Head head = heads.poll();
+            if (head == null) {
+                throw new NoSuchElementException();
+            }
+            ResolvedRelationship record = head.record;
+            if (head.source.hasNext()) {
+                head.record = head.source.next();
+                heads.add(head);
+            }
+            return record;
+        }
+
+        private static class Head {
+            ResolvedRelationship record;
+            final Iterator<ResolvedRelationship> source;
+
+            Head(ResolvedRelationship record, Iterator<ResolvedRelationship> source) {
+                this.record = record;
+                this.source = source;
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.dragons.neo4j.utils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A relationship row whose endpoints were already resolved to internal node ids, as spilled to temporary files.
+ */
+public class ResolvedRelationship {
+
+    @FunctionalInterface
+    public interface Sink {
+        void add(ResolvedRelationship relationship) throws IOException;
+    }
+
+    public final long startNodeId;
+    public final long endNodeId;
+    /** index of the file the row was read from */
+    public final int source;
+    public final String line;
+
+    public ResolvedRelationship(long startNodeId, long endNodeId, int source, String line) {
+        this.startNodeId = startNodeId;
+        this.endNodeId = endNodeId;
+        this.source = source;
+        this.line = line;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        out.writeLong(startNodeId);
+        out.writeLong(endNodeId);
+        out.writeInt(source);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * @return the next relationship of the stream, or null at its end
+     */
+    static ResolvedRelationship read(DataInputStream in) throws IOException {
+        long start;
+        try {
+            start = in.readLong();
+        } catch (EOFException e) {
+            return null;
+        }
+        long end = in.readLong();
+        int source = in.readInt();
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new ResolvedRelationship(start, end, source, new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Iterates over a stream of spilled relationships. Read failures are rethrown as runtime exceptions.
+     */
+    static Iterator<ResolvedRelationship> iterate(DataInputStream in) {
+        return new Iterator<ResolvedRelationship>() {
+
+            private ResolvedRelationship next = advance();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public ResolvedRelationship next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                ResolvedRelationship relationship = next;
+                next = advance();
+                return relationship;
+            }
+
+            private ResolvedRelationship advance() {
+                try {
+                    return read(in);
+                } catch (IOException e) {
+                    throw new RuntimeException("Failed reading spilled relationships", e);
+                }
+            }
+        };
+    }
+}
@@ -4,12 +4,23 @@ import org.dragons.neo4j.config.GraphBatchWorkConfig;
 import org.dragons.neo4j.config.NodeBatchWorkConfig;
 import org.dragons.neo4j.config.RelationshipBatchWorkConfig;
 import org.dragons.neo4j.config.RelationshipImportConfig;
+import org.dragons.neo4j.index.NodeLookupCache;
 import org.dragons.neo4j.index.NodesIndexAPI;
 import org.dragons.neo4j.index.NodesIndexMngr;
+import org.dragons.neo4j.metrics.ImportMetrics;
 import org.neo4j.graphdb.*;
-
+import org.neo4j.kernel.api.DataWriteOperations;
+import org.neo4j.kernel.api.Statement;
+import org.neo4j.kernel.api.exceptions.KernelException;
+import org.neo4j.kernel.api.properties.Property;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.LongSupplier;
 
 /**
  * Created by eladw on 3/28/2017.
@@ -23,162 +34,357 @@ public class WorkFunctions {
 
     public enum FunctionResult{FAIL, SUCCESS}
 
-    private static Map<Class, WorkFunc<String, GraphBatchWorkConfig, FunctionResult>> functionMap;
+    /**
+     * A row after parsing: typed property values in header order, and for relationships the endpoints keys
+     * together with their node ids once they were resolved through the nodes index (-1 otherwise).
+     * Parsing does not touch the database, so it can run outside of the writing thread.
+     */
+    public static class ParsedRow {
+        public String line;
+        public Object[] values;
+        public Object startKey;
+        public Object endKey;
+        public long startNodeId = -1;
+        public long endNodeId = -1;
+    }
+
+    //parse functions may be called by several parser threads
+    private final ThreadLocal<CsvTokenizer> tokenizer = ThreadLocal.withInitial(CsvTokenizer::new);
+
+    private final Map<Class, WorkFunc<String, GraphBatchWorkConfig, ParsedRow>> parseFunctionMap;
+    private final Map<Class, WorkFunc<ParsedRow, GraphBatchWorkConfig, FunctionResult>> writeFunctionMap;
 
     public WorkFunctions() {
 
-        functionMap = new HashMap<>();
-        functionMap.put(NodeBatchWorkConfig.class, this::createNode);
-        functionMap.put(RelationshipBatchWorkConfig.class, this::createRelationShip);
+        parseFunctionMap = new HashMap<>();
+        parseFunctionMap.put(NodeBatchWorkConfig.class, this::parseNode);
+        parseFunctionMap.put(RelationshipBatchWorkConfig.class, this::parseRelationship);
+
+        writeFunctionMap = new HashMap<>();
+        writeFunctionMap.put(NodeBatchWorkConfig.class,
+                (row, config) -> config.isKernelWrites() ? kernelCreateNode(row, config) : createNode(row, config));
+        writeFunctionMap.put(RelationshipBatchWorkConfig.class,
+                (row, config) -> config.isKernelWrites() ? kernelCreateRelationship(row, config) : createRelationShip(row, config));
     }
 
     public WorkFunc<String, GraphBatchWorkConfig, FunctionResult> getFunction(Class cls) {
-        return functionMap.get(cls);
+        WorkFunc<List<String>, GraphBatchWorkConfig, List<ParsedRow>> parse = getBatchParseFunction(cls);
+        WorkFunc<ParsedRow, GraphBatchWorkConfig, FunctionResult> write = getWriteFunction(cls);
+        return (line, config) -> {
+            List<ParsedRow> rows = parse.apply(Collections.singletonList(line), config);
+            return rows.isEmpty() ? FunctionResult.FAIL : write.apply(rows.get(0), config);
+        };
+    }
+
+    /**
+     * Parses a batch of lines, skipping (and logging) the lines that fail parsing.
+     * The endpoints of a relationships batch are then resolved through the nodes index in one call per label.
+     */
+    public WorkFunc<List<String>, GraphBatchWorkConfig, List<ParsedRow>> getBatchParseFunction(Class cls) {
+        WorkFunc<String, GraphBatchWorkConfig, ParsedRow> parse = getParseFunction(cls);
+        boolean relationships = cls == RelationshipBatchWorkConfig.class;
+        return (lines, config) -> {
+            String group = config.getBaseImportConfig().label;
+            long start = System.nanoTime();
+            List<ParsedRow> rows = new ArrayList<>(lines.size());
+            for (String line : lines) {
+                try {
+                    rows.add(parse.apply(line, config));
+                } catch (Exception ex) {
+                    ImportMetrics.get().countFailed();
+                    config.getLog().debug("Failed parsing %s record: %s%n: %s%n%s%n%s",
+                            config.getBaseImportConfig().label,
+                            line,
+                            ex,
+                            ex.getMessage(),
+                            Arrays.toString(ex.getStackTrace()));
+                }
+            }
+            long parsed = System.nanoTime();
+            ImportMetrics.get().record(ImportMetrics.Stage.PARSE, group, parsed - start);
+            if (relationships) {
+                try {
+                    resolveEndpoints(rows, config);
+                    ImportMetrics.get().record(ImportMetrics.Stage.LOOKUP, group, System.nanoTime() - parsed);
+                } catch (Exception ex) {
+                    //the rows' endpoints stay unresolved and will fail writing
+                    config.getLog().warn("Failed resolving endpoints of a %s batch: %s%n%s",
+                            config.getBaseImportConfig().label,
+                            ex,
+                            ex.getMessage());
+                }
+            }
+            return rows;
+        };
+    }
+
+    public WorkFunc<String, GraphBatchWorkConfig, ParsedRow> getParseFunction(Class cls) {
+        return parseFunctionMap.get(cls);
+    }
+
+    public WorkFunc<ParsedRow, GraphBatchWorkConfig, FunctionResult> getWriteFunction(Class cls) {
+        return writeFunctionMap.get(cls);
     }
 
-    private FunctionResult createRelationShip(String line, GraphBatchWorkConfig config) {
+    /**
+     * Decodes the values of a row, without resolving relationship endpoints.
+     */
+    public ParsedRow parseProperties(String line, GraphBatchWorkConfig config) {
+        return parseNode(line, config);
+    }
 
+    private ParsedRow parseRelationship(String line, GraphBatchWorkConfig config) {
 
         RelationshipBatchWorkConfig relWorkConf = (RelationshipBatchWorkConfig) config;
-        RelationshipImportConfig relImportConf = (RelationshipImportConfig) config.getBaseImportConfig();
+
+        ParsedRow row = new ParsedRow();
+        row.line = line;
+        row.values = parseValues(line, config);
+
+        // the property value that identifies the specific node
+        row.startKey = row.values[relWorkConf.getStartMatchPropCol()];
+        row.endKey = row.values[relWorkConf.getEndMatchPropCol()];
+
+        return row;
+    }
+
+    /**
+     * Sets the endpoints node ids of the rows through the internal index, if there is one.
+     */
+    private void resolveEndpoints(List<ParsedRow> rows, GraphBatchWorkConfig config) {
+
         NodesIndexAPI index = NodesIndexMngr.getNodesIndex();
+        if (index == null || rows.isEmpty()) {
+            return;
+        }
 
-        String[] rowTokens = line.split(",");
+        RelationshipImportConfig relImportConf = (RelationshipImportConfig) config.getBaseImportConfig();
+        Object[] startKeys = new Object[rows.size()];
+        Object[] endKeys = new Object[rows.size()];
+        for (int i = 0; i < startKeys.length; i++) {
+            startKeys[i] = rows.get(i).startKey;
+            endKeys[i] = rows.get(i).endKey;
+        }
+
+        long[] startIds = index.getNodeIds(relImportConf.startNodeLabel, startKeys);
+        long[] endIds = index.getNodeIds(relImportConf.endNodeLabel, endKeys);
+        for (int i = 0; i < startIds.length; i++) {
+            rows.get(i).startNodeId = startIds[i];
+            rows.get(i).endNodeId = endIds[i];
+        }
+    }
+
+    private ParsedRow parseNode(String line, GraphBatchWorkConfig config) {
+
+        ParsedRow row = new ParsedRow();
+        row.line = line;
+        row.values = parseValues(line, config);
+        return row;
+    }
+
+    private Object[] parseValues(String line, GraphBatchWorkConfig config) {
+
+        CsvTokenizer rowTokens = tokenizer.get();
+        rowTokens.tokenize(line, config.getBaseImportConfig().delimiter, config.getBaseImportConfig().quote);
+
+        ColumnPlan.Column[] columns = config.getColumnPlan().getColumns();
+        char arrayDelimiter = config.getBaseImportConfig().arrayDelimiter;
+        Object[] values = new Object[columns.length];
+
+        for (int i = 0; i < columns.length; i++) {
+            values[i] = columns[i].decode(rowTokens, arrayDelimiter);
+        }
+
+        return values;
+    }
+
+    private FunctionResult createRelationShip(ParsedRow row, GraphBatchWorkConfig config) {
+
+        RelationshipImportConfig relImportConf = (RelationshipImportConfig) config.getBaseImportConfig();
 
         //Find endpoints and create the relationship
-        Node startNode;
+        Node startNode = findEndpoint(config, relImportConf.startNodeLabel, relImportConf.startNodeMatchPropName, row.startKey, row.startNodeId);
+        if (startNode == null) {
+            return FunctionResult.FAIL;
+        }
 
-        Object startIdProperty = config.getPropertiesMap().get("start").equals("int") ? // the property value that identifies the specific node
-                Long.valueOf(rowTokens[relWorkConf.getStartMatchPropCol()]) :
-                rowTokens[relWorkConf.getStartMatchPropCol()];
+        Node endNode = findEndpoint(config, relImportConf.endNodeLabel, relImportConf.endNodeMatchPropName, row.endKey, row.endNodeId);
+        if (endNode == null) {
+            return FunctionResult.FAIL;
+        }
 
-        //first, try to seek internal index
-        if (index != null) {
-            long id = index.getNodeId(relImportConf.startNodeLabel, startIdProperty);
+        Relationship rel = startNode.createRelationshipTo(endNode, RelationshipType.withName(relImportConf.label));
 
-            if (id >= 0) {
-                startNode = config.getGraphDatabaseAPI().getNodeById(id);
-                if (startNode == null) {
-                    //indexed node not found in db
-                    config.getLog().debug("Node (:%s {%s: %s}) not found in database. searched id: %d",
-                            relImportConf.startNodeLabel,
-                            relImportConf.startNodeMatchPropName,
-                            rowTokens[relWorkConf.getStartMatchPropCol()],
-                            id);
-                    return FunctionResult.FAIL;
-                }
-            } else {
-                //node not found in index
-                config.getLog().debug("Node (:%s {%s: %s}) not found in index.",
-                        relImportConf.startNodeLabel,
-                        relImportConf.startNodeMatchPropName,
-                        rowTokens[relWorkConf.getStartMatchPropCol()]);
-                return FunctionResult.FAIL;
-            }
-        } else {
-            //find the node using database api
-            startNode = config.getGraphDatabaseAPI().findNode(Label.label(relImportConf.startNodeLabel), // node label
-                    relImportConf.startNodeMatchPropName, // the relevant property name
-                    startIdProperty // the property value that identifies the specific node
-            );
-            if (startNode == null) {
-                config.getLog().debug("Failed creating relationship. Start node (:%s {%s: %s}) could not be found.",
-                        relImportConf.startNodeLabel,
-                        relImportConf.startNodeMatchPropName,
-                        rowTokens[relWorkConf.getStartMatchPropCol()]);
-                return FunctionResult.FAIL;
+        for (ColumnPlan.Column column :
+                config.getColumnPlan().getColumns()
+                ) {
+            if (column.property && row.values[column.index] != null) {
+                rel.setProperty(column.propertyName, row.values[column.index]);
             }
         }
 
-        Node endNode;
+        return FunctionResult.SUCCESS;
+    }
+
+    private Node findEndpoint(GraphBatchWorkConfig config, String label, String matchPropName, Object key, long indexedId) {
 
-        Object endIdProperty = config.getPropertiesMap().get("end").equals("int") ?
-                                        Long.valueOf(rowTokens[relWorkConf.getEndMatchPropCol()]) :
-                                        rowTokens[relWorkConf.getEndMatchPropCol()];
-        if (index != null) {
-            long id = index.getNodeId(relImportConf.endNodeLabel, endIdProperty);
-            if (id >= 0) {
-                endNode = config.getGraphDatabaseAPI().getNodeById(id);
-                if (endNode == null) {
+        //first, try to seek internal index
+        if (NodesIndexMngr.getNodesIndex() != null) {
+            if (indexedId >= 0) {
+                Node node = config.getGraphDatabaseAPI().getNodeById(indexedId);
+                if (node == null) {
                     //indexed node not found in db
                     config.getLog().debug("Node (:%s {%s: %s}) not found in database. searched id: %d",
-                            relImportConf.endNodeLabel,
-                            relImportConf.endNodeMatchPropName,
-                            rowTokens[relWorkConf.getEndMatchPropCol()],
-                            id);
-                    return FunctionResult.FAIL;
+                            label,
+                            matchPropName,
+                            key,
+                            indexedId);
                 }
-            } else {
-                //node not found in index
-                config.getLog().debug("Node (:%s {%s: %s}) not found in index.",
-                        relImportConf.endNodeLabel,
-                        relImportConf.endNodeMatchPropName,
-                        rowTokens[relWorkConf.getEndMatchPropCol()]);
-                return FunctionResult.FAIL;
+                return node;
             }
-        }else {
-            //find the node using database api
-            endNode = config.getGraphDatabaseAPI().findNode(Label.label(relImportConf.endNodeLabel), // node label
-                    relImportConf.endNodeMatchPropName, // the relevant property name
-                    endIdProperty // the property value that identifies the specific node
+            //node not found in index, it may have been imported before this run
+            config.getLog().debug("Node (:%s {%s: %s}) not found in index, searching the database.",
+                    label,
+                    matchPropName,
+                    key);
+        }
+
+        long nodeId = lookupEndpoint(config, label, matchPropName, key);
+        return nodeId < 0 ? null : config.getGraphDatabaseAPI().getNodeById(nodeId);
+    }
+
+    /**
+     * Finds the id of an endpoint by its key in the database, through the lookup cache if there is one.
+     * @return the node id, or -1 if it is not found
+     */
+    private long lookupEndpoint(GraphBatchWorkConfig config, String label, String matchPropName, Object key) {
+
+        if (key == null) {
+            return -1;
+        }
+
+        LongSupplier findNode = () -> {
+            Node found = config.getGraphDatabaseAPI().findNode(Label.label(label), // node label
+                    matchPropName, // the relevant property name
+                    key // the property value that identifies the specific node
             );
+            return found == null ? -1 : found.getId();
+        };
+        NodeLookupCache lookupCache = NodesIndexMngr.getLookupCache();
+        long nodeId = lookupCache == null ? findNode.getAsLong() : lookupCache.get(label, matchPropName, key, findNode);
+
+        if (nodeId < 0) {
+            config.getLog().debug("Failed creating relationship. Node (:%s {%s: %s}) could not be found.",
+                    label,
+                    matchPropName,
+                    key);
+        }
+        return nodeId;
+    }
 
-            if (endNode == null) {
-                config.getLog().debug("Failed creating relationship. End node (:%s {%s: %s}) could not be found.",
-                        relImportConf.endNodeLabel,
-                        relImportConf.endNodeMatchPropName,
-                        rowTokens[relWorkConf.getEndMatchPropCol()]);
-                return FunctionResult.FAIL;
+    private FunctionResult createNode(ParsedRow row, GraphBatchWorkConfig config) {
+
+        //create the node, and set all properties
+        Node node = config.getGraphDatabaseAPI().createNode(Label.label(config.getBaseImportConfig().label));
+
+        for (ColumnPlan.Column column :
+                config.getColumnPlan().getColumns()
+                ) {
+            if (column.property && row.values[column.index] != null) {
+                node.setProperty(column.propertyName, row.values[column.index]);
             }
         }
 
-        Relationship rel = startNode.createRelationshipTo(endNode, RelationshipType.withName(relImportConf.label));
+        NodesIndexAPI index = NodesIndexMngr.getNodesIndex();
+        int keyColumn = config.getColumnPlan().getKeyColumn();
 
-        int idx = 0;
-        for (String propName :
-                relWorkConf.getPropertiesMap().keySet()
-                ) {
-            if (!propName.equals("start") && !propName.equals("end")) {
-                if (relWorkConf.getPropertiesMap().get(propName).equals("int")) {
-                    rel.setProperty(propName, Long.valueOf(rowTokens[idx]));
-                } else {
-                    rel.setProperty(propName, rowTokens[idx]);
+        if (index != null && keyColumn >= 0 && row.values[keyColumn] != null) {
+            //TODO: currently the only indexed property is the "id" property (hard-coded)
+            index.addNodeToIndex(config.getBaseImportConfig().label, row.values[keyColumn], node.getId());
+        }
+
+        return FunctionResult.SUCCESS;
+
+    }
+
+    /**
+     * Creates the node through the kernel operations of the current transaction, with the group's pre-resolved tokens.
+     */
+    private FunctionResult kernelCreateNode(ParsedRow row, GraphBatchWorkConfig config) {
+
+        KernelTokens tokens = config.getKernelTokens();
+        ColumnPlan.Column[] columns = config.getColumnPlan().getColumns();
+        long nodeId;
+
+        try (Statement statement = tokens.statement()) {
+            DataWriteOperations ops = statement.dataWriteOperations();
+            nodeId = ops.nodeCreate();
+            ops.nodeAddLabel(nodeId, tokens.getLabelOrType());
+            for (ColumnPlan.Column column : columns) {
+                if (column.property && row.values[column.index] != null) {
+                    ops.nodeSetProperty(nodeId, Property.property(tokens.getPropertyKey(column.index), row.values[column.index]));
                 }
             }
-            idx++;
+        } catch (KernelException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+
+        NodesIndexAPI index = NodesIndexMngr.getNodesIndex();
+        int keyColumn = config.getColumnPlan().getKeyColumn();
+
+        if (index != null && keyColumn >= 0 && row.values[keyColumn] != null) {
+            index.addNodeToIndex(config.getBaseImportConfig().label, row.values[keyColumn], nodeId);
         }
 
         return FunctionResult.SUCCESS;
     }
 
-    private FunctionResult createNode(String line, GraphBatchWorkConfig config) {
+    /**
+     * Creates the relationship through the kernel operations of the current transaction, with the group's pre-resolved
+     * tokens. Endpoints resolved through the nodes index are used by id, without loading their nodes.
+     */
+    private FunctionResult kernelCreateRelationship(ParsedRow row, GraphBatchWorkConfig config) {
 
-        String[] rowTokens = line.split(",");
+        RelationshipImportConfig relImportConf = (RelationshipImportConfig) config.getBaseImportConfig();
 
-        //create the node, and set all properties
-        Node node = config.getGraphDatabaseAPI().createNode(Label.label(config.getBaseImportConfig().label));
+        long startNode = findEndpointId(config, relImportConf.startNodeLabel, relImportConf.startNodeMatchPropName, row.startKey, row.startNodeId);
+        if (startNode < 0) {
+            return FunctionResult.FAIL;
+        }
 
-        NodesIndexAPI index = NodesIndexMngr.getNodesIndex();
+        long endNode = findEndpointId(config, relImportConf.endNodeLabel, relImportConf.endNodeMatchPropName, row.endKey, row.endNodeId);
+        if (endNode < 0) {
+            return FunctionResult.FAIL;
+        }
 
-        int idx = 0;
+        KernelTokens tokens = config.getKernelTokens();
+        ColumnPlan.Column[] columns = config.getColumnPlan().getColumns();
 
-        for (String propName :
-                config.getPropertiesMap().keySet()
-                ) {
-            if (config.getPropertiesMap().get(propName).equals("int")) {
-                node.setProperty(propName, Long.valueOf(rowTokens[idx]));
-                } else {
-                node.setProperty(propName, rowTokens[idx]);
-            }
-            if(index != null && propName.equals("id")) {
-                //TODO: currently the only indexed property is the "id" property (hard-coded)
-                index.addNodeToIndex(config.getBaseImportConfig().label, node.getProperty(propName), node.getId());
+        try (Statement statement = tokens.statement()) {
+            DataWriteOperations ops = statement.dataWriteOperations();
+            long relId = ops.relationshipCreate(tokens.getLabelOrType(), startNode, endNode);
+            for (ColumnPlan.Column column : columns) {
+                if (column.property && row.values[column.index] != null) {
+                    ops.relationshipSetProperty(relId, Property.property(tokens.getPropertyKey(column.index), row.values[column.index]));
+                }
             }
-            idx++;
+        } catch (KernelException e) {
+            throw new RuntimeException(e.getMessage(), e);
         }
 
         return FunctionResult.SUCCESS;
+    }
 
+    /**
+     * @return the id resolved through the nodes index, or else the id of the node found in the database by its key,
+     *         or -1 if it is not found. Must be called in a transaction.
+     */
+    public long findEndpointId(GraphBatchWorkConfig config, String label, String matchPropName, Object key, long indexedId) {
+        if (NodesIndexMngr.getNodesIndex() != null && indexedId >= 0) {
+            //a node missing from the database fails creating the relationship
+            return indexedId;
+        }
+        return lookupEndpoint(config, label, matchPropName, key);
     }
 
 }
@@ -0,0 +1,106 @@
+import org.dragons.neo4j.config.BatchSizingConfig;
+import org.dragons.neo4j.utils.AdaptiveBatcher;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AdaptiveBatcherTest {
+
+    @Test
+    public void testGrowsAtMostTwicePerCommit() {
+
+        // setup (commits of 1 microsecond per row, far below the target)
+        AdaptiveBatcher batcher = new AdaptiveBatcher(1000, sizing(10, 1000000, 500, 0));
+
+        // when
+        int previous = batcher.nextBatchSize();
+        for (int i = 0; i < 20; i++) {
+            batcher.onCommit(previous, 0, previous * 1000L);
+            int next = batcher.nextBatchSize();
+
+            // then
+            Assert.assertTrue(next + " after " + previous, next <= previous * 2);
+            Assert.assertTrue(next + " after " + previous, next >= previous);
+            previous = next;
+        }
+        //500000 rows of 1 microsecond commit in the target
+        Assert.assertEquals(500000, previous);
+    }
+
+    @Test
+    public void testShrinksAtMostHalfPerCommit() {
+
+        // setup (commits of 10 milliseconds per row, far above the target)
+        AdaptiveBatcher batcher = new AdaptiveBatcher(100000, sizing(10, 1000000, 500, 0));
+
+        // when
+        int previous = batcher.nextBatchSize();
+        for (int i = 0; i < 20; i++) {
+            batcher.onCommit(previous, 0, previous * 10000000L);
+            int next = batcher.nextBatchSize();
+
+            // then
+            Assert.assertTrue(next + " after " + previous, next >= previous / 2);
+            Assert.assertTrue(next + " after " + previous, next <= previous);
+            previous = next;
+        }
+        Assert.assertEquals(50, previous);
+    }
+
+    @Test
+    public void testSettlesAtTargetLatency() {
+
+        // setup (commits of 100 microseconds per row: 5000 rows commit in the 500 milliseconds target)
+        AdaptiveBatcher batcher = new AdaptiveBatcher(1000, sizing(10, 1000000, 500, 0));
+
+        // when
+        for (int i = 0; i < 20; i++) {
+            int rows = batcher.nextBatchSize();
+            batcher.onCommit(rows, 0, rows * 100000L);
+        }
+
+        // then
+        Assert.assertEquals(5000, batcher.nextBatchSize());
+    }
+
+    @Test
+    public void testStaysUnderStateCap() {
+
+        // setup (fast commits, but 1000 bytes of transaction state per row and a cap of 1MB)
+        long cap = 1000000;
+        AdaptiveBatcher batcher = new AdaptiveBatcher(100000, sizing(10, 1000000, 500, cap));
+
+        // when
+        for (int i = 0; i < 20; i++) {
+            int rows = batcher.nextBatchSize();
+            batcher.onCommit(rows, rows * 1000L, rows * 1000L);
+
+            // then
+            Assert.assertTrue(batcher.nextBatchSize() * 1000L <= cap);
+        }
+        Assert.assertEquals(1000, batcher.nextBatchSize());
+    }
+
+    @Test
+    public void testBounds() {
+
+        // when
+        AdaptiveBatcher belowMin = new AdaptiveBatcher(1, sizing(10, 100, 500, 0));
+        AdaptiveBatcher aboveMax = new AdaptiveBatcher(1000, sizing(10, 100, 500, 0));
+        AdaptiveBatcher fixed = new AdaptiveBatcher(1000, null);
+        fixed.onCommit(1000, 1000000, 1000000000L);
+
+        // then
+        Assert.assertEquals(10, belowMin.nextBatchSize());
+        Assert.assertEquals(100, aboveMax.nextBatchSize());
+        Assert.assertEquals(1000, fixed.nextBatchSize());
+    }
+
+    private static BatchSizingConfig sizing(int min, int max, long targetCommitMillis, long maxTxStateBytes) {
+        BatchSizingConfig sizing = new BatchSizingConfig();
+        sizing.minBatchSize = min;
+        sizing.maxBatchSize = max;
+        sizing.targetCommitMillis = targetCommitMillis;
+        sizing.maxTxStateBytes = maxTxStateBytes;
+        return sizing;
+    }
+}
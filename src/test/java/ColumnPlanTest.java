@@ -0,0 +1,109 @@
+import org.dragons.neo4j.utils.ColumnPlan;
+import org.dragons.neo4j.utils.CsvTokenizer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+
+public class ColumnPlanTest {
+
+    private final CsvTokenizer tokenizer = new CsvTokenizer();
+
+    @Test
+    public void testTypedColumns() {
+
+        // setup
+        ColumnPlan plan = compile("id:int,score:float,active:boolean,name,ignored:skip", false);
+
+        // when
+        Object[] values = decode(plan, "17,2.5,TRUE,John,whatever");
+
+        // then
+        Assert.assertEquals(0, plan.getKeyColumn());
+        Assert.assertEquals(17L, values[0]);
+        Assert.assertEquals(2.5, values[1]);
+        Assert.assertEquals(true, values[2]);
+        Assert.assertEquals("John", values[3]);
+        Assert.assertEquals(ColumnPlan.ColumnType.STRING, plan.getColumns()[3].type);
+        Assert.assertNull(values[4]);
+        Assert.assertFalse(plan.getColumns()[4].property);
+    }
+
+    @Test
+    public void testDatesAreUtcEpochMillis() {
+
+        // setup
+        ColumnPlan plan = compile("d1:date,d2:date,d3:date,d4:date", false);
+
+        // when
+        Object[] values = decode(plan, "1970-01-02,1970-01-01T00:00:01Z,1970-01-01T02:00:00+02:00,1970-01-01T00:01:00");
+
+        // then
+        Assert.assertEquals(86400000L, values[0]);
+        Assert.assertEquals(1000L, values[1]);
+        Assert.assertEquals(0L, values[2]);
+        Assert.assertEquals(60000L, values[3]);
+    }
+
+    @Test
+    public void testArrays() {
+
+        // setup
+        ColumnPlan plan = compile("ints:int[],floats:float[],flags:boolean[],names:string[]", false);
+
+        // when
+        Object[] values = decode(plan, "1;-2;3,0.5;1,true;false,a;;b");
+
+        // then
+        Assert.assertArrayEquals(new long[]{1, -2, 3}, (long[]) values[0]);
+        Assert.assertArrayEquals(new double[]{0.5, 1}, (double[]) values[1], 0);
+        Assert.assertArrayEquals(new boolean[]{true, false}, (boolean[]) values[2]);
+        Assert.assertArrayEquals(new String[]{"a", "", "b"}, (String[]) values[3]);
+    }
+
+    @Test
+    public void testEmptyCells() {
+
+        // setup
+        ColumnPlan plan = compile("id:int,score:float,active:boolean,born:date,tags:string[],name", false);
+
+        // when
+        Object[] values = decode(plan, ",,,,,");
+
+        // then
+        //a missing value is not set, except for strings which are set empty
+        for (int i = 0; i < 5; i++) {
+            Assert.assertNull(values[i]);
+        }
+        Assert.assertEquals("", values[5]);
+    }
+
+    @Test
+    public void testRelationshipColumns() {
+
+        // when
+        ColumnPlan plan = compile("start:int,end:int,id:int", true);
+
+        // then
+        Assert.assertEquals(0, plan.getStartColumn());
+        Assert.assertEquals(1, plan.getEndColumn());
+        Assert.assertEquals(-1, plan.getKeyColumn());
+        Assert.assertFalse(plan.getColumns()[0].property);
+        Assert.assertFalse(plan.getColumns()[1].property);
+        Assert.assertTrue(plan.getColumns()[2].property);
+    }
+
+    private static ColumnPlan compile(String header, boolean relationship) {
+        Map<String, String> properties = ColumnPlan.parseHeader(header, ',');
+        return ColumnPlan.compile(properties, relationship);
+    }
+
+    private Object[] decode(ColumnPlan plan, String record) {
+        tokenizer.tokenize(record, ',', '"');
+        Object[] values = new Object[plan.size()];
+        for (ColumnPlan.Column column : plan.getColumns()) {
+            values[column.index] = column.decode(tokenizer, ';');
+        }
+        return values;
+    }
+}
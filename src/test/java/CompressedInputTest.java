@@ -0,0 +1,54 @@
+import org.dragons.neo4j.utils.CompressedInput;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+public class CompressedInputTest {
+
+    @Test
+    public void testMultiMemberGzip() throws IOException {
+
+        // setup
+        File file = File.createTempFile("members", ".csv.gz");
+        file.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(file)) {
+            for (int member = 0; member < 5; member++) {
+                GZIPOutputStream gzip = new GZIPOutputStream(out);
+                for (int i = 0; i < 1000; i++) {
+                    gzip.write(String.format("%d,%d%n", member, i).getBytes(StandardCharsets.UTF_8));
+                }
+                gzip.finish();
+            }
+        }
+        AtomicLong compressed = new AtomicLong();
+
+        // when
+        CompressedInput.Format format = CompressedInput.detect(file.getPath());
+        int lines = 0;
+        String last = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                CompressedInput.open(file.getPath(), format, 3, compressed::addAndGet)))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Assert.assertEquals(String.format("%d,%d", lines / 1000, lines % 1000), line);
+                last = line;
+                lines++;
+            }
+        }
+
+        // then
+        Assert.assertEquals(CompressedInput.Format.GZIP, format);
+        Assert.assertEquals(5000, lines);
+        Assert.assertEquals("4,999", last);
+        Assert.assertTrue(compressed.get() >= file.length());
+    }
+}
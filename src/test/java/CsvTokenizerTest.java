@@ -0,0 +1,83 @@
+import org.dragons.neo4j.utils.CsvTokenizer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+public class CsvTokenizerTest {
+
+    private final CsvTokenizer tokenizer = new CsvTokenizer();
+
+    @Test
+    public void testQuotedColumns() {
+
+        // when
+        int count = tokenizer.tokenize("12,\"Doe, John\",\"say \"\"hi\"\"\",", ',', '"');
+
+        // then
+        Assert.assertEquals(4, count);
+        Assert.assertEquals(12, tokenizer.parseLong(0));
+        Assert.assertEquals("Doe, John", tokenizer.getString(1));
+        Assert.assertEquals("say \"hi\"", tokenizer.getString(2));
+        Assert.assertTrue(tokenizer.isEmpty(3));
+    }
+
+    @Test
+    public void testCustomDelimiterAndNumbers() {
+
+        // when
+        tokenizer.tokenize("-9223372036854775808|+7|abc", '|', '"');
+
+        // then
+        Assert.assertEquals(Long.MIN_VALUE, tokenizer.parseLong(0));
+        Assert.assertEquals(7, tokenizer.parseLong(1));
+        try {
+            tokenizer.parseLong(2);
+            Assert.fail("abc is not a number");
+        } catch (NumberFormatException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testShortRecordAfterLongerOne() {
+
+        // setup
+        tokenizer.tokenize("1,alice,30,true", ',', '"');
+
+        // when
+        int count = tokenizer.tokenize("2,bob", ',', '"');
+
+        // then
+        Assert.assertEquals(2, count);
+        Assert.assertEquals("bob", tokenizer.getString(1));
+        Assert.assertTrue(tokenizer.isEmpty(2));
+        Assert.assertTrue(tokenizer.isEmpty(3));
+        try {
+            tokenizer.parseLong(2);
+            Assert.fail("column 2 is missing");
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testMultiLineRecord() throws IOException {
+
+        // setup
+        BufferedReader reader = new BufferedReader(new StringReader("1,\"first\nsecond\",3\n2,x,4\n"));
+
+        // when
+        String first = CsvTokenizer.readRecord(reader, '"');
+        String second = CsvTokenizer.readRecord(reader, '"');
+
+        // then
+        Assert.assertEquals("1,\"first\nsecond\",3", first);
+        Assert.assertEquals("2,x,4", second);
+        Assert.assertNull(CsvTokenizer.readRecord(reader, '"'));
+        tokenizer.tokenize(first, ',', '"');
+        Assert.assertEquals("first\nsecond", tokenizer.getString(1));
+    }
+}
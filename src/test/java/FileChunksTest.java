@@ -0,0 +1,47 @@
+import org.dragons.neo4j.utils.CsvTokenizer;
+import org.dragons.neo4j.utils.FileChunks;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class FileChunksTest {
+
+    @Test
+    public void testQuotedLineFeedAcrossChunkBoundary() throws IOException {
+
+        // setup
+        File file = File.createTempFile("quoted", ".csv");
+        file.deleteOnExit();
+        String content = "1,\"first\nsecond\nthird\",a\n2,plain,b\n3,\"x\ny\",c\n";
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        //a boundary by line feeds alone would fall after "1,\"first\n"
+        long chunkSize = content.indexOf('\n') - 2;
+
+        // when
+        List<FileChunks.Range> ranges = FileChunks.split(file.getPath(), 0, chunkSize, '"');
+        List<String> records = new ArrayList<>();
+        for (FileChunks.Range range : ranges) {
+            try (BufferedReader reader = FileChunks.openRange(file.getPath(), range)) {
+                String record;
+                while ((record = CsvTokenizer.readRecord(reader, '"')) != null) {
+                    records.add(record);
+                }
+            }
+        }
+
+        // then
+        Assert.assertEquals(3, ranges.size());
+        Assert.assertEquals(content.length(), ranges.get(ranges.size() - 1).end);
+        Assert.assertEquals(3, records.size());
+        Assert.assertEquals("1,\"first\nsecond\nthird\",a", records.get(0));
+        Assert.assertEquals("2,plain,b", records.get(1));
+        Assert.assertEquals("3,\"x\ny\",c", records.get(2));
+    }
+}
@@ -0,0 +1,46 @@
+import org.dragons.neo4j.utils.FileScheduler;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FileSchedulerTest {
+
+    @Test(timeout = 10000)
+    public void testReplacedSchedulerKeepsRunningUntilReleased() throws InterruptedException {
+
+        // setup
+        FileScheduler first = FileScheduler.acquire(2);
+        FileScheduler.Group tasks = first.newGroup();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger done = new AtomicInteger();
+        tasks.execute(1, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.incrementAndGet();
+        });
+        started.await();
+
+        // when (another import asks for a different number of threads)
+        FileScheduler second = FileScheduler.acquire(3);
+        tasks.execute(1, done::incrementAndGet);
+        release.countDown();
+        tasks.await();
+        first.release();
+
+        // then
+        Assert.assertTrue(first != second);
+        Assert.assertEquals(2, done.get());
+        FileScheduler.Group more = second.newGroup();
+        more.execute(1, done::incrementAndGet);
+        more.await();
+        second.release();
+        Assert.assertEquals(3, done.get());
+    }
+}
@@ -0,0 +1,179 @@
+import org.dragons.neo4j.utils.ImportCheckpoint;
+import org.dragons.neo4j.utils.OffsetLineReader;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class ImportCheckpointTest {
+
+    private static final int ROWS = 100;
+    private static final int BATCH = 10;
+
+    @Test
+    public void testResumeAfterInterruption() throws IOException {
+
+        // setup
+        File data = File.createTempFile("rows", ".csv");
+        data.deleteOnExit();
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < ROWS; i++) {
+            content.append("row-").append(i).append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        Files.write(data.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+        File checkpointFile = File.createTempFile("checkpoint", ".tsv");
+        checkpointFile.deleteOnExit();
+        List<String> imported = new ArrayList<>();
+
+        // when
+        //the first import reads 4 batches, and is interrupted after the 1st, 2nd and 4th committed, but not the 3rd
+        try (ImportCheckpoint checkpoint = new ImportCheckpoint(checkpointFile.getPath(), false);
+             FileInputStream in = new FileInputStream(data)) {
+            ImportCheckpoint.Part part = checkpoint.part(data.getPath());
+            part.start();
+            OffsetLineReader reader = part.open(in, 0);
+            long[] ends = new long[4];
+            List<List<String>> batches = new ArrayList<>();
+            for (int b = 0; b < ends.length; b++) {
+                batches.add(readBatch(reader));
+                ends[b] = part.batchRead(BATCH);
+            }
+            for (int b : new int[]{0, 1, 3}) {
+                imported.addAll(batches.get(b));
+                part.batchCommitted(ends[b]);
+            }
+        }
+
+        ImportCheckpoint.Part resumedPart;
+        try (ImportCheckpoint checkpoint = new ImportCheckpoint(checkpointFile.getPath(), true);
+             FileInputStream in = new FileInputStream(data)) {
+            resumedPart = checkpoint.part(data.getPath());
+            Assert.assertTrue(checkpoint.isResumed());
+            Assert.assertTrue(checkpoint.hasProgress(data.getPath()));
+            Assert.assertTrue(resumedPart.isStarted());
+            Assert.assertFalse(resumedPart.isDone());
+            //the 4th batch is not recorded, as the 3rd before it did not commit
+            Assert.assertEquals(2 * BATCH, resumedPart.getRecords());
+
+            OffsetLineReader reader = resumedPart.open(in, 0);
+            resumedPart.skipCommitted();
+            List<String> batch;
+            while (!(batch = readBatch(reader)).isEmpty()) {
+                imported.addAll(batch);
+                resumedPart.batchCommitted(resumedPart.batchRead(batch.size()));
+            }
+            resumedPart.finished();
+        }
+
+        // then
+        Set<String> distinct = new HashSet<>(imported);
+        for (int i = 0; i < ROWS; i++) {
+            Assert.assertTrue("row-" + i + " was lost", distinct.contains("row-" + i));
+        }
+        //only the batch committed past the recorded offset is imported again
+        Assert.assertEquals(ROWS + BATCH, imported.size());
+        for (int i = 3 * BATCH; i < 4 * BATCH; i++) {
+            Assert.assertEquals(2, imported.stream().filter(("row-" + i)::equals).count());
+        }
+        Assert.assertEquals(ROWS, resumedPart.getRecords());
+
+        try (ImportCheckpoint checkpoint = new ImportCheckpoint(checkpointFile.getPath(), true)) {
+            Assert.assertTrue(checkpoint.part(data.getPath()).isDone());
+            Assert.assertEquals(ROWS, checkpoint.part(data.getPath()).getRecords());
+        }
+    }
+
+    @Test
+    public void testChunkParts() throws IOException {
+
+        // setup
+        File checkpointFile = File.createTempFile("checkpoint", ".tsv");
+        checkpointFile.deleteOnExit();
+
+        // when
+        try (ImportCheckpoint checkpoint = new ImportCheckpoint(checkpointFile.getPath(), false)) {
+            checkpoint.part("a.csv@0").start();
+            checkpoint.part("a.csv@1000").finished();
+            checkpoint.part("b.csv").start();
+            checkpoint.part("a.csv.bak").finished();
+        }
+
+        // then
+        try (ImportCheckpoint checkpoint = new ImportCheckpoint(checkpointFile.getPath(), true)) {
+            Assert.assertTrue(checkpoint.part("a.csv@1000").isDone());
+            Assert.assertTrue(checkpoint.part("a.csv@0").isStarted());
+            Assert.assertFalse(checkpoint.part("a.csv@0").isDone());
+            Assert.assertEquals(0, checkpoint.part("a.csv@0").getOffset());
+            Assert.assertTrue(checkpoint.hasProgress("a.csv"));
+            //started without committed records
+            Assert.assertFalse(checkpoint.hasProgress("b.csv"));
+            Assert.assertFalse(checkpoint.hasProgress("c.csv"));
+        }
+        Assert.assertFalse(new File(checkpointFile.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void testConcurrentCommits() throws Exception {
+
+        // setup (rows of 9 bytes, so every recorded offset is 9 times its records)
+        File data = File.createTempFile("rows", ".csv");
+        data.deleteOnExit();
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 10 * ROWS; i++) {
+            content.append(String.format("row-%04d\n", i));
+        }
+        Files.write(data.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+        File checkpointFile = File.createTempFile("checkpoint", ".tsv");
+        checkpointFile.deleteOnExit();
+
+        // when (the batches commit in any order, from several threads)
+        try (ImportCheckpoint checkpoint = new ImportCheckpoint(checkpointFile.getPath(), false);
+             FileInputStream in = new FileInputStream(data)) {
+            ImportCheckpoint.Part part = checkpoint.part(data.getPath());
+            OffsetLineReader reader = part.open(in, 0);
+            List<Long> ends = new ArrayList<>();
+            while (!readBatch(reader).isEmpty()) {
+                ends.add(part.batchRead(BATCH));
+            }
+            Collections.shuffle(ends, new Random(17));
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            for (long end : ends) {
+                executor.execute(() -> part.batchCommitted(end));
+            }
+            executor.shutdown();
+            Assert.assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        }
+
+        // then
+        List<String> lines = Files.readAllLines(checkpointFile.toPath(), StandardCharsets.UTF_8);
+        Assert.assertFalse(lines.isEmpty());
+        for (String line : lines) {
+            String[] fields = line.split("\t");
+            Assert.assertEquals(line, Long.parseLong(fields[1]), 9 * Long.parseLong(fields[2]));
+        }
+        //the last line is the latest progress
+        Assert.assertEquals(data.getPath() + "\t" + data.length() + "\t" + 10 * ROWS, lines.get(lines.size() - 1));
+    }
+
+    private static List<String> readBatch(OffsetLineReader reader) throws IOException {
+        List<String> lines = new ArrayList<>(BATCH);
+        String line;
+        while (lines.size() < BATCH && (line = reader.readLine()) != null) {
+            lines.add(line);
+        }
+        return lines;
+    }
+}
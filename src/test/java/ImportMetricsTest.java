@@ -0,0 +1,80 @@
+import org.dragons.neo4j.config.ImportConfig;
+import org.dragons.neo4j.procs.ImportProcedures;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Result;
+import org.neo4j.kernel.api.exceptions.KernelException;
+import org.neo4j.kernel.impl.proc.Procedures;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ImportMetricsTest {
+
+    private GraphDatabaseService graphDatabaseService;
+
+    @Before
+    public void setup() throws KernelException {
+        graphDatabaseService = new TestGraphDatabaseFactory().newImpermanentDatabase();
+        final Procedures procedures = ((GraphDatabaseAPI) graphDatabaseService).getDependencyResolver().resolveDependency(Procedures.class);
+        procedures.registerProcedure(ImportProcedures.class);
+        procedures.registerFunction(ImportProcedures.class);
+    }
+
+    @After
+    public void teardown() {
+        graphDatabaseService.shutdown();
+    }
+
+    @Test
+    public void testImportMetricsProcedure() throws IOException {
+
+        // setup
+        Path dir = Files.createTempDirectory("metrics");
+        Files.write(dir.resolve("people.csv"), Arrays.asList("1,John", "2,Jane", "3,Bob", "4,Katy", "5,Joe"), StandardCharsets.UTF_8);
+        Files.write(dir.resolve("knows.csv"), Arrays.asList("1,2", "2,3", "3,4", "4,99"), StandardCharsets.UTF_8);
+        ImportConfig importConfig = new ImportConfig();
+        importConfig.nodeIdsCache = "off-heap";
+        importConfig.maxThreads = 1;
+        importConfig.nodes.add(RelationshipImportTest.nodesConfig(dir, "people.csv", "person", "id:int,name:string"));
+        importConfig.relationships.add(RelationshipImportTest.relationshipsConfig(dir, "knows.csv", "knows", "person", "person", "start:int,end:int"));
+
+        // when (batches of 2 rows)
+        graphDatabaseService.execute(String.format("call org.dragons.neo4j.procs.loadWithConfiguration('%s', 2)", NodesImportTest.writeConfig(importConfig)));
+        Map<String, Map<String, Object>> rows = new HashMap<>();
+        Result result = graphDatabaseService.execute("call org.dragons.neo4j.procs.importMetrics()");
+        while (result.hasNext()) {
+            Map<String, Object> row = result.next();
+            rows.put(row.get("metric") + "/" + row.get("group"), row);
+        }
+
+        // then
+        Assert.assertEquals(5L, rows.get("nodes/all").get("count"));
+        //the relationship to a missing node is not loaded
+        Assert.assertEquals(3L, rows.get("relationships/all").get("count"));
+
+        //3 nodes batches and 2 relationships batches, each written and committed once
+        Assert.assertEquals(5L, rows.get("write/all").get("count"));
+        Assert.assertEquals(5L, rows.get("commit/all").get("count"));
+        Assert.assertEquals(3L, rows.get("commit/person").get("count"));
+        Assert.assertEquals(2L, rows.get("commit/knows").get("count"));
+        Assert.assertEquals(2L, rows.get("lookup/knows").get("count"));
+        Assert.assertNull(rows.get("lookup/person"));
+
+        Map<String, Object> commit = rows.get("commit/all");
+        Assert.assertTrue((Double) commit.get("totalMillis") > 0);
+        Assert.assertTrue((Double) commit.get("p50Millis") <= (Double) commit.get("p99Millis"));
+        Assert.assertTrue((Double) commit.get("p99Millis") <= (Double) commit.get("maxMillis"));
+        Assert.assertEquals((Double) commit.get("totalMillis") / 5, (Double) commit.get("meanMillis"), 1e-9);
+    }
+}
@@ -0,0 +1,59 @@
+import org.dragons.neo4j.config.GraphBatchWorkConfig;
+import org.dragons.neo4j.config.NodeBatchWorkConfig;
+import org.dragons.neo4j.config.NodeImportConfig;
+import org.dragons.neo4j.utils.AdaptiveBatcher;
+import org.dragons.neo4j.utils.ImportPipeline;
+import org.dragons.neo4j.utils.LineSource;
+import org.dragons.neo4j.utils.WorkFunctions;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class ImportPipelineTest {
+
+    @Test(timeout = 10000)
+    public void testRuntimeFailureStopsPipeline() {
+
+        // setup
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            input.append(i).append('\n');
+        }
+        NodeImportConfig importConfig = new NodeImportConfig();
+        importConfig.label = "node";
+        importConfig.quote = '"';
+        GraphBatchWorkConfig config = new NodeBatchWorkConfig();
+        config.setBaseImportConfig(importConfig);
+        List<Integer> batches = new ArrayList<>();
+        int[] reads = new int[1];
+
+        // when
+        Exception failure = null;
+        try {
+            new ImportPipeline(2, 2).run("test",
+                    LineSource.of(new BufferedReader(new StringReader(input.toString()))),
+                    config,
+                    new AdaptiveBatcher(10, null),
+                    lines -> {
+                        if (++reads[0] == 5) {
+                            throw new IllegalStateException("checkpoint failed");
+                        }
+                        return reads[0];
+                    },
+                    (lines, c) -> lines.stream().map(line -> new WorkFunctions.ParsedRow()).collect(Collectors.toList()),
+                    (rows, readMark) -> batches.add(rows.size()));
+        } catch (Exception e) {
+            failure = e;
+        }
+
+        // then
+        Assert.assertNotNull(failure);
+        Assert.assertEquals("checkpoint failed", failure.getMessage());
+        Assert.assertTrue(batches.size() < 5);
+    }
+}
@@ -0,0 +1,128 @@
+import org.dragons.neo4j.config.ImportConfig;
+import org.dragons.neo4j.metrics.ImportStatus;
+import org.dragons.neo4j.metrics.StatusRow;
+import org.dragons.neo4j.procs.ImportProcedures;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Result;
+import org.neo4j.kernel.api.exceptions.KernelException;
+import org.neo4j.kernel.impl.proc.Procedures;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ImportStatusTest {
+
+    private GraphDatabaseService graphDatabaseService;
+
+    @Before
+    public void setup() throws KernelException {
+        graphDatabaseService = new TestGraphDatabaseFactory().newImpermanentDatabase();
+        final Procedures procedures = ((GraphDatabaseAPI) graphDatabaseService).getDependencyResolver().resolveDependency(Procedures.class);
+        procedures.registerProcedure(ImportProcedures.class);
+        procedures.registerFunction(ImportProcedures.class);
+    }
+
+    @After
+    public void teardown() {
+        graphDatabaseService.shutdown();
+    }
+
+    @Test
+    public void testImportStatusProcedure() throws Exception {
+
+        // setup (a bzip2 file is not supported, so its import fails)
+        Path dir = Files.createTempDirectory("status");
+        Files.write(dir.resolve("people-a.csv"), Arrays.asList("1,John", "2,Jane", "3,Bob"), StandardCharsets.UTF_8);
+        Files.write(dir.resolve("people-b.csv"), "BZh91AY&SY".getBytes(StandardCharsets.US_ASCII));
+        Files.write(dir.resolve("knows.csv"), Arrays.asList("1,2", "2,3"), StandardCharsets.UTF_8);
+        ImportConfig importConfig = new ImportConfig();
+        importConfig.nodeIdsCache = "off-heap";
+        importConfig.maxThreads = 1;
+        importConfig.nodes.add(RelationshipImportTest.nodesConfig(dir, "people-*.csv", "person", "id:int,name:string"));
+        importConfig.relationships.add(RelationshipImportTest.relationshipsConfig(dir, "knows.csv", "knows", "person", "person", "start:int,end:int"));
+
+        // when
+        graphDatabaseService.execute(String.format("call org.dragons.neo4j.procs.loadWithConfiguration('%s', 2)", NodesImportTest.writeConfig(importConfig)));
+        Map<String, Map<String, Object>> rows = new HashMap<>();
+        Result result = graphDatabaseService.execute("call org.dragons.neo4j.procs.importStatus()");
+        while (result.hasNext()) {
+            Map<String, Object> row = result.next();
+            rows.put(row.get("kind").equals("import") ? "import" : (String) row.get("name"), row);
+        }
+
+        // then
+        Map<String, Object> total = rows.get("import");
+        Assert.assertEquals(ImportStatus.PHASE_DONE, total.get("state"));
+        Assert.assertEquals(5L, total.get("rows"));
+        //no estimate once the import is done
+        Assert.assertEquals(-1L, total.get("etaSeconds"));
+
+        Map<String, Object> peopleA = rows.get(dir.resolve("people-a.csv").toString());
+        Assert.assertEquals("done", peopleA.get("state"));
+        Assert.assertEquals(3L, peopleA.get("rows"));
+        Assert.assertEquals(Files.size(dir.resolve("people-a.csv")), peopleA.get("bytes"));
+
+        Map<String, Object> peopleB = rows.get(dir.resolve("people-b.csv").toString());
+        Assert.assertEquals("failed", peopleB.get("state"));
+        Assert.assertEquals(0L, peopleB.get("rows"));
+
+        Map<String, Object> knows = rows.get(dir.resolve("knows.csv").toString());
+        Assert.assertEquals("done", knows.get("state"));
+        Assert.assertEquals(2L, knows.get("rows"));
+    }
+
+    @Test(timeout = 20000)
+    public void testEtaOnlyWhileImporting() throws Exception {
+
+        // setup
+        Path file = Files.createTempFile("status", ".csv");
+        Files.write(file, new byte[100000]);
+        ImportStatus status = ImportStatus.start();
+        ImportStatus.FileProgress progress = status.addFile(file.toString(), ImportStatus.PHASE_NODES);
+
+        // then (nothing read yet)
+        Assert.assertEquals(-1, total(status).etaSeconds);
+
+        // when (the file is read slowly during the nodes phase)
+        status.setPhase(ImportStatus.PHASE_NODES);
+        try (InputStream in = progress.track(Files.newInputStream(file))) {
+            byte[] buffer = new byte[100];
+            while (total(status).etaSeconds < 0) {
+                Assert.assertTrue(in.read(buffer) > 0);
+                Thread.sleep(10);
+            }
+        }
+
+        // then
+        Assert.assertTrue(total(status).etaSeconds > 0);
+        Assert.assertEquals("pending", status.rows().get(1).state);
+
+        // when (the relationships phase has no files left to read)
+        status.setPhase(ImportStatus.PHASE_RELATIONSHIPS);
+
+        // then
+        Assert.assertEquals(0, total(status).etaSeconds);
+
+        // when
+        status.finish();
+
+        // then
+        Assert.assertEquals(ImportStatus.PHASE_DONE, total(status).state);
+        Assert.assertEquals(-1, total(status).etaSeconds);
+    }
+
+    private static StatusRow total(ImportStatus status) {
+        return status.rows().get(0);
+    }
+}
@@ -0,0 +1,78 @@
+import org.dragons.neo4j.metrics.LatencyHistogram;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testPercentilesWithinBucketPrecision() {
+
+        // setup
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // when (1 to 100 microseconds)
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        // then
+        Assert.assertEquals(100, histogram.getCount());
+        Assert.assertEquals(5050000L, histogram.getTotalNanos());
+        Assert.assertEquals(50500, histogram.getMeanNanos(), 0);
+        Assert.assertEquals(100000L, histogram.getMaxNanos());
+        //percentiles are the middle of a bucket, within 12.5% of the recorded values
+        Assert.assertEquals(50000, histogram.getPercentileNanos(50), 50000 * 0.125);
+        Assert.assertEquals(99000, histogram.getPercentileNanos(99), 99000 * 0.125);
+        //never above the maximum
+        Assert.assertEquals(100000, histogram.getPercentileNanos(100), 0);
+    }
+
+    @Test
+    public void testEmptyAndTinyDurations() {
+
+        // setup
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // then
+        Assert.assertEquals(0, histogram.getPercentileNanos(50), 0);
+        Assert.assertEquals(0, histogram.getMeanNanos(), 0);
+
+        // when (durations below 1ns count as 1ns)
+        histogram.record(0);
+        histogram.record(3);
+
+        // then
+        Assert.assertEquals(1, histogram.getPercentileNanos(50), 0);
+        Assert.assertEquals(3, histogram.getPercentileNanos(100), 0);
+        Assert.assertEquals(3L, histogram.getMaxNanos());
+    }
+
+    @Test
+    public void testConcurrentRecords() throws InterruptedException {
+
+        // setup
+        LatencyHistogram histogram = new LatencyHistogram();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        // when
+        for (int t = 0; t < 4; t++) {
+            final long max = (t + 1) * 1000000L;
+            executor.execute(() -> {
+                for (int i = 0; i < 100000; i++) {
+                    histogram.record(i % 2 == 0 ? 1000 : max);
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        // then
+        Assert.assertEquals(400000, histogram.getCount());
+        Assert.assertEquals(4000000L, histogram.getMaxNanos());
+        Assert.assertEquals(1000, histogram.getPercentileNanos(50), 1000 * 0.125);
+    }
+}
@@ -1,10 +1,17 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dragons.neo4j.config.ImportConfig;
+import org.dragons.neo4j.config.NodeImportConfig;
+import org.dragons.neo4j.metrics.ImportMetrics;
 import org.dragons.neo4j.procs.ImportProcedures;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
 import org.neo4j.helpers.collection.Iterators;
 import org.neo4j.kernel.api.exceptions.KernelException;
 import org.neo4j.kernel.impl.proc.Procedures;
@@ -12,10 +19,14 @@ import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.test.TestGraphDatabaseFactory;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 
 /**
  * Created by eladw on 13/03/2017.
@@ -58,4 +69,92 @@ public class NodesImportTest {
 
     }
 
+    @Test
+    public void testTypedHeaderImport() throws IOException {
+
+        // setup
+        Path file = Files.createTempFile("typed", ".csv");
+        file.toFile().deleteOnExit();
+        Files.write(file, Arrays.asList(
+                "id,score,active,born,ratings,ignored",
+                "1,1.5,true,2017-03-13,4;5,x",
+                "2,,false,,,y"), StandardCharsets.UTF_8);
+        String cypher = String.format("call org.dragons.neo4j.procs.loadNodesFile('%s', 'typed', 'id:int,score:float,active:boolean,born:date,ratings:int[],ignored:skip', true, 10, null)",
+                file.toAbsolutePath().toString().replace("\\", "/"));
+
+        // when
+        graphDatabaseService.execute(cypher);
+
+        // then
+        try (Transaction tx = graphDatabaseService.beginTx()) {
+            Node first = graphDatabaseService.findNode(Label.label("typed"), "id", 1L);
+            Assert.assertNotNull(first);
+            Assert.assertEquals(1.5, (Double) first.getProperty("score"), 0);
+            Assert.assertEquals(true, first.getProperty("active"));
+            //dates are stored as milliseconds since the epoch (UTC)
+            Assert.assertEquals(1489363200000L, first.getProperty("born"));
+            Assert.assertArrayEquals(new long[]{4, 5}, (long[]) first.getProperty("ratings"));
+            Assert.assertFalse(first.hasProperty("ignored"));
+
+            Node second = graphDatabaseService.findNode(Label.label("typed"), "id", 2L);
+            Assert.assertNotNull(second);
+            Assert.assertEquals(false, second.getProperty("active"));
+            //empty cells of typed columns are not set
+            Assert.assertFalse(second.hasProperty("score"));
+            Assert.assertFalse(second.hasProperty("born"));
+            Assert.assertFalse(second.hasProperty("ratings"));
+            tx.success();
+        }
+    }
+
+    @Test
+    public void testKernelWritesImport() throws IOException {
+
+        // setup
+        Path dir = Files.createTempDirectory("kernel");
+        Files.write(dir.resolve("people.csv"), Arrays.asList(
+                "1,John,1.5,true,a;b",
+                "2,Jane,2.25,false,"), StandardCharsets.UTF_8);
+        NodeImportConfig nodes = new NodeImportConfig();
+        nodes.rootDir = dir.toString();
+        nodes.namePattern = "people.csv";
+        nodes.label = "person";
+        nodes.header = "id:int,name:string,score:float,active:boolean,tags:string[]";
+        ImportConfig importConfig = new ImportConfig();
+        importConfig.nodeIdsCache = "off-heap";
+        importConfig.maxThreads = 1;
+        importConfig.kernelWrites = true;
+        importConfig.nodes.add(nodes);
+
+        // when
+        graphDatabaseService.execute(String.format("call org.dragons.neo4j.procs.loadWithConfiguration('%s', 10)", writeConfig(importConfig)));
+
+        // then
+        try (Transaction tx = graphDatabaseService.beginTx()) {
+            Node john = graphDatabaseService.findNode(Label.label("person"), "id", 1L);
+            Assert.assertNotNull(john);
+            Assert.assertTrue(john.hasLabel(Label.label("person")));
+            Assert.assertEquals("John", john.getProperty("name"));
+            Assert.assertEquals(1.5, (Double) john.getProperty("score"), 0);
+            Assert.assertEquals(true, john.getProperty("active"));
+            Assert.assertArrayEquals(new String[]{"a", "b"}, (String[]) john.getProperty("tags"));
+
+            Node jane = graphDatabaseService.findNode(Label.label("person"), "id", 2L);
+            Assert.assertNotNull(jane);
+            Assert.assertEquals(2.25, (Double) jane.getProperty("score"), 0);
+            Assert.assertEquals(false, jane.getProperty("active"));
+            //an empty array cell is not set
+            Assert.assertFalse(jane.hasProperty("tags"));
+            tx.success();
+        }
+        Assert.assertEquals(2, ImportMetrics.get().getNodes());
+    }
+
+    static String writeConfig(ImportConfig importConfig) throws IOException {
+        File file = File.createTempFile("import", ".json");
+        file.deleteOnExit();
+        new ObjectMapper().writeValue(file, importConfig);
+        return file.getAbsolutePath().replace("\\", "/");
+    }
+
 }
@@ -0,0 +1,235 @@
+import org.dragons.neo4j.index.IgniteNodesIndex;
+import org.dragons.neo4j.index.MappedNodesIndex;
+import org.dragons.neo4j.index.NearCacheNodesIndex;
+import org.dragons.neo4j.index.NodeLookupCache;
+import org.dragons.neo4j.index.NodesIndexAPI;
+import org.dragons.neo4j.index.OffHeapNodesIndex;
+import org.dragons.neo4j.index.RedisNodesIndex;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class NodesIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private NodesIndexAPI index;
+
+    @Before
+    public void setup() {
+        index = new OffHeapNodesIndex();
+        index.prepareIndex("person");
+    }
+
+    @After
+    public void teardown() {
+        index.close();
+    }
+
+    @Test
+    public void testOffHeapIndexLookups() {
+
+        // when
+        index.addNodeToIndex("person", 17L, 3);
+        index.addNodeToIndex("person", "john", 4);
+        index.addNodeToIndex("person", 17L, 5);
+
+        // then
+        Assert.assertEquals(3, index.getNodeId("person", 17L));
+        Assert.assertEquals(4, index.getNodeId("person", "john"));
+        Assert.assertEquals(-1, index.getNodeId("person", 18L));
+        Assert.assertEquals(-1, index.getNodeId("person", "jane"));
+        Assert.assertEquals(-1, index.getNodeId("actor", 17L));
+        Assert.assertArrayEquals(new long[]{4, 3, -1, -1}, index.getNodeIds("person", new Object[]{"john", 17L, null, "jane"}));
+        Assert.assertArrayEquals(new long[]{-1}, index.getNodeIds("actor", new Object[]{17L}));
+    }
+
+    @Test
+    public void testOffHeapIndexConcurrentInserts() throws InterruptedException {
+
+        // setup
+        int threads = 4;
+        int count = 200000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        // when
+        for (int t = 0; t < threads; t++) {
+            final int first = t;
+            executor.execute(() -> {
+                for (int i = first; i < count; i += threads) {
+                    index.addNodeToIndex("person", (long) i, i * 2L);
+                    index.addNodeToIndex("person", "p" + i, i * 3L);
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        // then
+        for (int i = 0; i < count; i++) {
+            Assert.assertEquals(i * 2L, index.getNodeId("person", (long) i));
+            Assert.assertEquals(i * 3L, index.getNodeId("person", "p" + i));
+        }
+    }
+
+    @Test
+    public void testMappedIndexReopen() throws IOException {
+
+        // setup
+        String dir = folder.newFolder().getAbsolutePath();
+        NodesIndexAPI mapped = new MappedNodesIndex(dir);
+        mapped.prepareIndex("person");
+        for (int i = 0; i < 1000; i++) {
+            mapped.addNodeToIndex("person", (long) i, i + 100L);
+            mapped.addNodeToIndex("person", "p" + i, i + 200L);
+        }
+
+        // when
+        mapped.persist();
+        mapped.close();
+        NodesIndexAPI reopened = new MappedNodesIndex(dir);
+        reopened.addNodeToIndex("person", 1000L, 1100L);
+        reopened.addNodeToIndex("person", 5L, 1L);
+
+        // then
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(i + 100L, reopened.getNodeId("person", (long) i));
+            Assert.assertEquals(i + 200L, reopened.getNodeId("person", "p" + i));
+        }
+        Assert.assertEquals(1100L, reopened.getNodeId("person", 1000L));
+        Assert.assertEquals(-1, reopened.getNodeId("person", "p1000"));
+        reopened.close();
+    }
+
+    @Test
+    public void testMappedIndexRejectsTruncatedKeys() throws IOException {
+
+        // setup
+        String dir = folder.newFolder().getAbsolutePath();
+        NodesIndexAPI mapped = new MappedNodesIndex(dir);
+        mapped.prepareIndex("person");
+        for (int i = 0; i < 1000; i++) {
+            mapped.addNodeToIndex("person", (long) i, i + 100L);
+            mapped.addNodeToIndex("person", "p" + i, i + 200L);
+        }
+        mapped.persist();
+        mapped.close();
+
+        // when (the keys file lost its tail, as after a power loss before it reached the disk)
+        File keys = new File(dir, "person.keys.0");
+        try (RandomAccessFile file = new RandomAccessFile(keys, "rw")) {
+            file.setLength(file.length() / 2);
+        }
+        NodesIndexAPI reopened = new MappedNodesIndex(dir);
+
+        // then
+        Assert.assertEquals(-1, reopened.getNodeId("person", "p0"));
+        Assert.assertEquals(-1, reopened.getNodeId("person", "p999"));
+        Assert.assertEquals(100L, reopened.getNodeId("person", 0L));
+        reopened.close();
+    }
+
+    @Test
+    public void testRedisIndexBatchedInserts() {
+
+        // setup (skipped when no redis server is running locally)
+        RedisNodesIndex redis;
+        try {
+            redis = new RedisNodesIndex(RedisNodesIndex.DEFAULT_URI, 100);
+        } catch (Exception e) {
+            Assume.assumeNoException(e);
+            return;
+        }
+        String label = "person" + System.nanoTime();
+
+        // when
+        for (int i = 0; i < 1050; i++) {
+            redis.addNodeToIndex(label, "p" + i, i + 100L);
+        }
+        redis.persist();
+
+        // then
+        Assert.assertEquals(100L, redis.getNodeId(label, "p0"));
+        Assert.assertEquals(1149L, redis.getNodeId(label, "p1049"));
+        Assert.assertEquals(-1, redis.getNodeId(label, "p1050"));
+        redis.close();
+    }
+
+    @Test
+    public void testIgniteIndexTypedKeys() {
+
+        // setup (a local node, discovering only this machine)
+        IgniteNodesIndex ignite = new IgniteNodesIndex(64L * 1024 * 1024);
+        ignite.prepareIndex("person");
+
+        // when
+        ignite.addNodeToIndex("person", 17L, 3);
+        ignite.addNodeToIndex("person", "17", 4);
+        ignite.addNodeToIndex("person", "john", 5);
+        ignite.persist();
+
+        // then
+        Assert.assertEquals(3, ignite.getNodeId("person", 17));
+        Assert.assertEquals(4, ignite.getNodeId("person", "17"));
+        Assert.assertArrayEquals(new long[]{5, 3, -1, -1}, ignite.getNodeIds("person", new Object[]{"john", 17L, null, "jane"}));
+        Assert.assertEquals(-1, ignite.getNodeId("actor", "john"));
+        ignite.close();
+    }
+
+    @Test
+    public void testLookupCacheEvictsLeastRecentlyUsed() {
+
+        // setup (room for about 10 entries per segment)
+        NodeLookupCache cache = new NodeLookupCache(16 * 10 * 136);
+        long[] loads = {0};
+
+        // when
+        for (long i = 0; i < 1000; i++) {
+            final long id = i;
+            cache.get("person", "id", i, () -> { loads[0]++; return id; });
+            //a hot key stays cached
+            Assert.assertEquals(7, cache.get("person", "id", 7L, () -> { loads[0]++; return 7; }));
+        }
+
+        // then
+        Assert.assertEquals(1000, loads[0]);
+        Assert.assertEquals(1000, cache.getHits());
+        Assert.assertTrue(cache.size() <= 160);
+        Assert.assertEquals(1000 - cache.size(), cache.getEvictions());
+        Assert.assertEquals(-1, cache.get("person", "id", "missing", () -> -1));
+        Assert.assertEquals(-1, cache.get("person", "id", "missing", () -> { Assert.fail("cached miss was loaded again"); return 0; }));
+    }
+
+    @Test
+    public void testNearCacheKeepsHotKeys() {
+
+        // setup
+        NearCacheNodesIndex near = new NearCacheNodesIndex(index, 1000);
+        for (long i = 0; i < 100000; i++) {
+            near.addNodeToIndex("person", i, i + 1);
+        }
+        near.persist();
+
+        // when (a hot key looked up between long runs of keys seen once)
+        for (long i = 0; i < 100000; i++) {
+            Assert.assertEquals(i + 1, near.getNodeId("person", i));
+            Assert.assertEquals(8, near.getNodeId("person", 7L));
+        }
+
+        // then
+        Assert.assertTrue(near.getHits() >= 99990);
+        Assert.assertArrayEquals(new long[]{8, -1, 100000}, near.getNodeIds("person", new Object[]{7L, null, 99999L}));
+    }
+}
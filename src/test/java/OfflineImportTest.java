@@ -0,0 +1,99 @@
+import org.dragons.neo4j.config.ImportConfig;
+import org.dragons.neo4j.config.NodeImportConfig;
+import org.dragons.neo4j.offline.OfflineImport;
+import org.junit.Assert;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.graphdb.schema.IndexDefinition;
+import org.neo4j.unsafe.batchinsert.BatchInserter;
+import org.neo4j.unsafe.batchinsert.BatchInserters;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+public class OfflineImportTest {
+
+    @Test
+    public void testOfflineImport() throws Exception {
+
+        // setup
+        Path dir = Files.createTempDirectory("offline");
+        File storeDir = Files.createTempDirectory("offline-store").toFile();
+        Files.write(dir.resolve("people.csv"), Arrays.asList("1,John", "2,Jane", "3,Bob"), StandardCharsets.UTF_8);
+        Files.write(dir.resolve("knows.csv"), Arrays.asList(
+                "1,2,2016",
+                "2,3,2014",
+                "3,99,1999",
+                "98,1,1998"), StandardCharsets.UTF_8);
+        ImportConfig importConfig = new ImportConfig();
+        NodeImportConfig people = RelationshipImportTest.nodesConfig(dir, "people.csv", "person", "id:int,name:string");
+        people.indexedProps = Collections.singletonList("name");
+        importConfig.nodes.add(people);
+        importConfig.relationships.add(RelationshipImportTest.relationshipsConfig(dir, "knows.csv", "knows", "person", "person", "start:int,end:int,since:int"));
+
+        // when (batches of 2 rows)
+        BatchInserter inserter = BatchInserters.inserter(storeDir);
+        OfflineImport offlineImport = new OfflineImport(inserter, importConfig, 2);
+        try {
+            offlineImport.run();
+        } finally {
+            inserter.shutdown();
+        }
+
+        // then
+        Assert.assertEquals(3, offlineImport.getNodes());
+        Assert.assertEquals(2, offlineImport.getRelationships());
+        //the relationships to or from a missing node are counted as failed, the run goes on
+        Assert.assertEquals(2, offlineImport.getFailed());
+
+        GraphDatabaseService db = new GraphDatabaseFactory().newEmbeddedDatabase(storeDir);
+        try {
+            try (Transaction tx = db.beginTx()) {
+                db.schema().awaitIndexesOnline(1, TimeUnit.MINUTES);
+                tx.success();
+            }
+            try (Transaction tx = db.beginTx()) {
+                Map<String, Long> since = new HashMap<>();
+                for (Relationship knows : db.getAllRelationships()) {
+                    Assert.assertEquals("knows", knows.getType().name());
+                    since.put(knows.getStartNode().getProperty("id") + "->" + knows.getEndNode().getProperty("id"), (Long) knows.getProperty("since"));
+                }
+                Assert.assertEquals(Long.valueOf(2016), since.get("1->2"));
+                Assert.assertEquals(Long.valueOf(2014), since.get("2->3"));
+                Assert.assertEquals(2, since.size());
+
+                int nodes = 0;
+                for (Object ignored : db.getAllNodes()) {
+                    nodes++;
+                }
+                Assert.assertEquals(3, nodes);
+                Assert.assertEquals("Jane", db.findNode(Label.label("person"), "id", 2L).getProperty("name"));
+
+                //the deferred schema indexes, on the id column and on the indexed properties
+                Set<String> indexed = new HashSet<>();
+                for (IndexDefinition index : db.schema().getIndexes(Label.label("person"))) {
+                    for (String property : index.getPropertyKeys()) {
+                        indexed.add(property);
+                    }
+                }
+                Assert.assertEquals(new HashSet<>(Arrays.asList("id", "name")), indexed);
+                tx.success();
+            }
+        } finally {
+            db.shutdown();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+import org.dragons.neo4j.utils.OverlappedWriter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class OverlappedWriterTest {
+
+    @Test(timeout = 10000)
+    public void testBoundedInFlight() throws Exception {
+
+        // setup
+        CountDownLatch commit = new CountDownLatch(1);
+        List<Integer> written = Collections.synchronizedList(new ArrayList<>());
+        OverlappedWriter writer = new OverlappedWriter("test", 2);
+
+        // when (the first batch commits while the next ones are submitted)
+        writer.submit(() -> {
+            commit.await();
+            written.add(0);
+        });
+        writer.submit(() -> written.add(1));
+        CountDownLatch thirdSubmitted = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            try {
+                writer.submit(() -> written.add(2));
+                thirdSubmitted.countDown();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        producer.start();
+
+        // then
+        Assert.assertFalse(thirdSubmitted.await(200, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(2, writer.getInFlight());
+        Assert.assertTrue(written.isEmpty());
+
+        commit.countDown();
+        Assert.assertTrue(thirdSubmitted.await(5, TimeUnit.SECONDS));
+        producer.join();
+        writer.close();
+        Assert.assertEquals(0, writer.getInFlight());
+        //batches are written in the order they were submitted
+        Assert.assertEquals(Arrays.asList(0, 1, 2), written);
+    }
+
+    @Test(timeout = 10000)
+    public void testFailureRethrownOnce() throws Exception {
+
+        // setup
+        CountDownLatch failed = new CountDownLatch(1);
+        List<Integer> written = Collections.synchronizedList(new ArrayList<>());
+        OverlappedWriter writer = new OverlappedWriter("test", 4);
+
+        // when
+        writer.submit(() -> written.add(0));
+        writer.submit(() -> {
+            try {
+                throw new IllegalStateException("commit failed");
+            } finally {
+                failed.countDown();
+            }
+        });
+        failed.await();
+        //may still be accepted before the failure is recorded, but is skipped
+        Exception thrown = null;
+        int rethrown = 0;
+        for (int i = 2; i < 10; i++) {
+            final int batch = i;
+            try {
+                writer.submit(() -> written.add(batch));
+            } catch (IllegalStateException e) {
+                thrown = e;
+                rethrown++;
+            }
+        }
+        try {
+            writer.close();
+        } catch (IllegalStateException e) {
+            thrown = e;
+            rethrown++;
+        }
+
+        // then
+        Assert.assertNotNull(thrown);
+        Assert.assertEquals("commit failed", thrown.getMessage());
+        Assert.assertEquals(1, rethrown);
+        Assert.assertEquals(Collections.singletonList(0), written);
+    }
+
+    @Test(timeout = 10000)
+    public void testNoHangAfterFailure() throws Exception {
+
+        // setup (a single batch in flight, so every submit waits for the previous batch)
+        OverlappedWriter writer = new OverlappedWriter("test", 1);
+        int[] written = {0};
+
+        // when (the producer ignores the failure and keeps submitting)
+        writer.submit(() -> {
+            throw new IllegalStateException("commit failed");
+        });
+        int failures = 0;
+        for (int i = 0; i < 1000; i++) {
+            try {
+                writer.submit(() -> written[0]++);
+            } catch (IllegalStateException e) {
+                failures++;
+            }
+        }
+        try {
+            writer.close();
+        } catch (IllegalStateException e) {
+            failures++;
+        }
+
+        // then
+        Assert.assertEquals(1, failures);
+        Assert.assertEquals(0, written[0]);
+        Assert.assertEquals(0, writer.getInFlight());
+    }
+}
@@ -1,19 +1,37 @@
+import org.dragons.neo4j.config.ImportConfig;
+import org.dragons.neo4j.config.NodeImportConfig;
+import org.dragons.neo4j.config.RelationshipImportConfig;
+import org.dragons.neo4j.metrics.ImportMetrics;
 import org.dragons.neo4j.procs.ImportProcedures;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
 import org.neo4j.helpers.collection.Iterators;
 import org.neo4j.kernel.api.exceptions.KernelException;
 import org.neo4j.kernel.impl.proc.Procedures;
 import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.test.TestGraphDatabaseFactory;
 
+import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Created by eladw on 13/03/2017.
@@ -61,4 +79,127 @@ public class RelationshipImportTest {
 
     }
 
+    @Test
+    public void testKernelWritesImport() throws IOException {
+
+        // setup
+        //a node imported before, found in the database rather than in the nodes index
+        graphDatabaseService.execute("create (:person {id: 0})");
+        Path dir = Files.createTempDirectory("kernel");
+        Files.write(dir.resolve("people.csv"), Arrays.asList("1,John", "2,Jane", "3,Bob"), StandardCharsets.UTF_8);
+        Files.write(dir.resolve("knows.csv"), Arrays.asList(
+                "1,2,2016",
+                "2,3,2014",
+                "0,1,2001",
+                "3,99,1999"), StandardCharsets.UTF_8);
+        ImportConfig importConfig = new ImportConfig();
+        importConfig.nodeIdsCache = "off-heap";
+        importConfig.maxThreads = 1;
+        importConfig.kernelWrites = true;
+        importConfig.nodes.add(nodesConfig(dir, "people.csv", "person", "id:int,name:string"));
+        importConfig.relationships.add(relationshipsConfig(dir, "knows.csv", "knows", "person", "person", "start:int,end:int,since:int"));
+
+        // when
+        graphDatabaseService.execute(String.format("call org.dragons.neo4j.procs.loadWithConfiguration('%s', 10)", NodesImportTest.writeConfig(importConfig)));
+
+        // then
+        Map<String, Long> since = new HashMap<>();
+        try (Transaction tx = graphDatabaseService.beginTx()) {
+            for (Relationship knows : graphDatabaseService.getAllRelationships()) {
+                Assert.assertEquals("knows", knows.getType().name());
+                Assert.assertTrue(knows.getStartNode().hasLabel(Label.label("person")));
+                Assert.assertTrue(knows.getEndNode().hasLabel(Label.label("person")));
+                since.put(knows.getStartNode().getProperty("id") + "->" + knows.getEndNode().getProperty("id"), (Long) knows.getProperty("since"));
+            }
+            tx.success();
+        }
+        Assert.assertEquals(3, since.size());
+        Assert.assertEquals(Long.valueOf(2016), since.get("1->2"));
+        Assert.assertEquals(Long.valueOf(2014), since.get("2->3"));
+        Assert.assertEquals(Long.valueOf(2001), since.get("0->1"));
+        //the relationship to a missing node is not created
+        Assert.assertEquals(3, ImportMetrics.get().getRelationships());
+    }
+
+    @Test
+    public void testOverlappedLoad() throws IOException {
+
+        // setup (the person label is imported by two groups, the relationships groups depend on both labels)
+        Path dir = Files.createTempDirectory("overlapped");
+        Path indexDir = Files.createTempDirectory("overlapped-index");
+        List<String> people = new ArrayList<>();
+        List<String> morePeople = new ArrayList<>();
+        List<String> works = new ArrayList<>();
+        List<String> knows = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            (i < 1000 ? people : morePeople).add(i + ",person " + i);
+            works.add(i + "," + i % 10);
+            if (i > 0) {
+                knows.add((i - 1) + "," + i);
+            }
+        }
+        List<String> companies = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            companies.add(i + ",company " + i);
+        }
+        Files.write(dir.resolve("people.csv"), people, StandardCharsets.UTF_8);
+        Files.write(dir.resolve("more-people.csv"), morePeople, StandardCharsets.UTF_8);
+        Files.write(dir.resolve("companies.csv"), companies, StandardCharsets.UTF_8);
+        Files.write(dir.resolve("works.csv"), works, StandardCharsets.UTF_8);
+        Files.write(dir.resolve("knows.csv"), knows, StandardCharsets.UTF_8);
+        ImportConfig importConfig = new ImportConfig();
+        importConfig.nodeIdsCache = "mmap";
+        importConfig.nodeIdsCacheDir = indexDir.toString();
+        importConfig.maxThreads = 4;
+        importConfig.overlapPhases = true;
+        importConfig.nodesParallelLevel = "all";
+        importConfig.relsParallelLevel = "all";
+        importConfig.nodes.add(nodesConfig(dir, "people.csv", "person", "id:int,name:string"));
+        importConfig.nodes.add(nodesConfig(dir, "more-people.csv", "person", "id:int,name:string"));
+        importConfig.nodes.add(nodesConfig(dir, "companies.csv", "company", "id:int,name:string"));
+        importConfig.relationships.add(relationshipsConfig(dir, "works.csv", "works", "person", "company", "start:int,end:int"));
+        importConfig.relationships.add(relationshipsConfig(dir, "knows.csv", "knows", "person", "person", "start:int,end:int"));
+
+        // when
+        graphDatabaseService.execute(String.format("call org.dragons.neo4j.procs.loadWithConfiguration('%s', 100)", NodesImportTest.writeConfig(importConfig)));
+
+        // then
+        //every endpoint was found: no relationships group started before the nodes of its labels were flushed
+        Object worksCount = Iterators.single(graphDatabaseService.execute("match (:person)-[r:works]->(:company) return count(r) as n").columnAs("n"));
+        Object knowsCount = Iterators.single(graphDatabaseService.execute("match (:person)-[r:knows]->(:person) return count(r) as n").columnAs("n"));
+        Assert.assertEquals(3000L, worksCount);
+        Assert.assertEquals(2999L, knowsCount);
+        Assert.assertEquals(0, ImportMetrics.get().getFailed());
+
+        //every label was flushed once, after all its groups: a single generation of its index
+        List<String> indexFiles = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(indexDir)) {
+            stream.forEach(file -> indexFiles.add(file.getFileName().toString()));
+        }
+        Collections.sort(indexFiles);
+        Assert.assertEquals(Arrays.asList("company.longs.0", "person.longs.0"), indexFiles);
+    }
+
+    static NodeImportConfig nodesConfig(Path dir, String namePattern, String label, String header) {
+        NodeImportConfig nodes = new NodeImportConfig();
+        nodes.rootDir = dir.toString();
+        nodes.namePattern = namePattern;
+        nodes.label = label;
+        nodes.header = header;
+        return nodes;
+    }
+
+    static RelationshipImportConfig relationshipsConfig(Path dir, String namePattern, String label, String startLabel, String endLabel, String header) {
+        RelationshipImportConfig relationships = new RelationshipImportConfig();
+        relationships.rootDir = dir.toString();
+        relationships.namePattern = namePattern;
+        relationships.label = label;
+        relationships.startNodeLabel = startLabel;
+        relationships.startNodeMatchPropName = "id";
+        relationships.endNodeLabel = endLabel;
+        relationships.endNodeMatchPropName = "id";
+        relationships.header = header;
+        return relationships;
+    }
+
 }
@@ -0,0 +1,67 @@
+import org.dragons.neo4j.utils.RelationshipPartitioner;
+import org.dragons.neo4j.utils.ResolvedRelationship;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+public class RelationshipPartitionerTest {
+
+    @Test
+    public void testPartitionsAndCrossPartition() throws IOException {
+
+        // setup
+        Path tempDir = Files.createTempDirectory("partitioner");
+        //node ids 0-99, split into 4 ranges of 25 ids
+        long maxNodeId = 99;
+        int count = 0;
+
+        try (RelationshipPartitioner partitioner = new RelationshipPartitioner(tempDir)) {
+            for (long start = 0; start <= maxNodeId; start += 3) {
+                for (long end = 0; end <= maxNodeId; end += 7) {
+                    partitioner.add(new ResolvedRelationship(start, end, 1, start + "," + end));
+                    count++;
+                }
+            }
+
+            // when
+            partitioner.partition(4);
+
+            // then
+            Assert.assertEquals(4, partitioner.getPartitionsCount());
+            Set<String> lines = new HashSet<>();
+            long partitioned = 0;
+            for (int i = 0; i < 4; i++) {
+                long size = 0;
+                Iterator<ResolvedRelationship> partition = partitioner.readPartition(i);
+                while (partition.hasNext()) {
+                    ResolvedRelationship relationship = partition.next();
+                    Assert.assertEquals(i, relationship.startNodeId / 25);
+                    Assert.assertEquals(i, relationship.endNodeId / 25);
+                    Assert.assertEquals(1, relationship.source);
+                    Assert.assertTrue(lines.add(relationship.line));
+                    size++;
+                }
+                Assert.assertEquals(partitioner.getPartitionSize(i), size);
+                partitioned += size;
+            }
+            long crossing = 0;
+            Iterator<ResolvedRelationship> cross = partitioner.readCrossPartition();
+            while (cross.hasNext()) {
+                ResolvedRelationship relationship = cross.next();
+                Assert.assertTrue(relationship.startNodeId / 25 != relationship.endNodeId / 25);
+                Assert.assertTrue(lines.add(relationship.line));
+                crossing++;
+            }
+            Assert.assertEquals(partitioner.getCrossSize(), crossing);
+            Assert.assertTrue(crossing > 0 && partitioned > 0);
+            Assert.assertEquals(count, partitioned + crossing);
+            Assert.assertEquals(count, lines.size());
+        }
+    }
+}
@@ -0,0 +1,50 @@
+import org.dragons.neo4j.utils.RelationshipSorter;
+import org.dragons.neo4j.utils.ResolvedRelationship;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Random;
+
+public class RelationshipSorterTest {
+
+    @Test
+    public void testSpilledRunsAreMergedInOrder() throws IOException {
+
+        // setup
+        Path tempDir = Files.createTempDirectory("sorter");
+        Random random = new Random(42);
+        int count = 1000;
+
+        try (RelationshipSorter sorter = new RelationshipSorter(tempDir, 64)) {
+
+            // when
+            for (int i = 0; i < count; i++) {
+                long start = random.nextInt(100);
+                long end = random.nextInt(100);
+                sorter.add(new ResolvedRelationship(start, end, i % 3, start + "," + end + "," + i));
+            }
+            Iterator<ResolvedRelationship> sorted = sorter.sorted();
+
+            // then
+            Assert.assertTrue(sorter.getRunsCount() >= count / 64);
+            int read = 0;
+            ResolvedRelationship previous = null;
+            while (sorted.hasNext()) {
+                ResolvedRelationship relationship = sorted.next();
+                Assert.assertEquals(relationship.startNodeId + "," + relationship.endNodeId, relationship.line.substring(0, relationship.line.lastIndexOf(',')));
+                Assert.assertEquals(Integer.parseInt(relationship.line.substring(relationship.line.lastIndexOf(',') + 1)) % 3, relationship.source);
+                if (previous != null) {
+                    Assert.assertTrue(previous.startNodeId < relationship.startNodeId
+                            || previous.startNodeId == relationship.startNodeId && previous.endNodeId <= relationship.endNodeId);
+                }
+                previous = relationship;
+                read++;
+            }
+            Assert.assertEquals(count, read);
+        }
+    }
+}